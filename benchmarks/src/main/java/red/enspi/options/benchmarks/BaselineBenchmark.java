@@ -0,0 +1,135 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options.benchmarks;
+
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The same operations as OptionSetBenchmark, using EnumSet and raw long bit twiddling.
+ *
+ * <p>Compare like-named benchmarks: these are the floor OptionSet should be measured against.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class BaselineBenchmark {
+
+  @Param({"4", "16", "64"})
+  public int size;
+
+  private EnumSet enumSet;
+
+  private Enum present;
+
+  private Enum absent;
+
+  private EnumSet pair;
+
+  private long mask;
+
+  private long presentBit;
+
+  private long absentBit;
+
+  @Setup
+  public void setup() {
+    var type = Enums.ofSize(this.size);
+    var constants = (Enum[]) type.getEnumConstants();
+    this.mask = Enums.everyOther(this.size);
+    this.enumSet = EnumSet.noneOf(type);
+    for (var constant : constants) {
+      if ((this.mask & (1L << constant.ordinal())) != 0) {
+        this.enumSet.add(constant);
+      }
+    }
+    this.present = constants[constants.length - 2];
+    this.absent = constants[constants.length - 1];
+    this.pair = EnumSet.of(this.present, this.absent);
+    this.presentBit = 1L << this.present.ordinal();
+    this.absentBit = 1L << this.absent.ordinal();
+  }
+
+  @Benchmark
+  public boolean enumSetHas() {
+    return this.enumSet.contains(this.present);
+  }
+
+  @Benchmark
+  public boolean enumSetHasTwo() {
+    return this.enumSet.containsAll(this.pair);
+  }
+
+  @Benchmark
+  public EnumSet enumSetOr() {
+    var copy = this.enumSet.clone();
+    copy.add(this.absent);
+    return copy;
+  }
+
+  @Benchmark
+  public void enumSetToOptions(Blackhole blackhole) {
+    for (var option : this.enumSet) {
+      blackhole.consume(option);
+    }
+  }
+
+  @Benchmark
+  public EnumSet enumSetOf() {
+    return EnumSet.of(this.present, this.absent);
+  }
+
+  @Benchmark
+  public boolean longHas() {
+    return (this.mask & this.presentBit) != 0;
+  }
+
+  @Benchmark
+  public boolean longHasTwo() {
+    var bits = this.presentBit | this.absentBit;
+    return (this.mask & bits) == bits;
+  }
+
+  @Benchmark
+  public long longOr() {
+    return this.mask | this.absentBit;
+  }
+
+  @Benchmark
+  public void longToOptions(Blackhole blackhole) {
+    for (var bits = this.mask; bits != 0; bits &= bits - 1) {
+      blackhole.consume(Long.numberOfTrailingZeros(bits));
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options.benchmarks;
+
+import red.enspi.options.Option;
+
+/** Option enums of the sizes benchmarked (4, 16 and 64 options). */
+final class Enums {
+
+  enum E4 implements Option { O0, O1, O2, O3; }
+
+  enum E16 implements Option {
+    O0, O1, O2, O3, O4, O5, O6, O7, O8, O9, O10, O11, O12, O13, O14, O15;
+  }
+
+  enum E64 implements Option {
+    O0, O1, O2, O3, O4, O5, O6, O7, O8, O9, O10, O11, O12, O13, O14, O15,
+    O16, O17, O18, O19, O20, O21, O22, O23, O24, O25, O26, O27, O28, O29, O30, O31,
+    O32, O33, O34, O35, O36, O37, O38, O39, O40, O41, O42, O43, O44, O45, O46, O47,
+    O48, O49, O50, O51, O52, O53, O54, O55, O56, O57, O58, O59, O60, O61, O62, O63;
+  }
+
+  /** Gets the enum with the given number of options. */
+  @SuppressWarnings("rawtypes")
+  static Class<? extends Enum> ofSize(int size) {
+    return switch (size) {
+      case 4 -> E4.class;
+      case 16 -> E16.class;
+      case 64 -> E64.class;
+      default -> throw new IllegalArgumentException("no benchmark enum with " + size + " options");
+    };
+  }
+
+  /** A mask with every other option set (so sets are half full). */
+  static long everyOther(int size) {
+    return 0x5555_5555_5555_5555L & ((size == Long.SIZE) ? -1L : (1L << size) - 1);
+  }
+
+  private Enums() {}
+}
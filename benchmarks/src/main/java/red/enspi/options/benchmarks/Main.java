@@ -0,0 +1,39 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Runs JMH with the GC profiler enabled, so every run reports allocation rates ({@code gc.alloc.rate.norm}).
+ *
+ * <p>Accepts the usual JMH arguments; e.g., {@code java -jar target/benchmarks.jar OptionSetBenchmark -p size=64}.
+ */
+public final class Main {
+
+  public static void main(String[] args) throws Exception {
+    var jmhArgs = new ArrayList<String>(Arrays.asList(args));
+    if (! jmhArgs.contains("-prof")) {
+      jmhArgs.add("-prof");
+      jmhArgs.add("gc");
+    }
+    org.openjdk.jmh.Main.main(jmhArgs.toArray(String[]::new));
+  }
+
+  private Main() {}
+}
@@ -0,0 +1,67 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import red.enspi.options.Option;
+
+/** Option.value() and Option.in(). */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class OptionBenchmark {
+
+  @Param({"4", "16", "64"})
+  public int size;
+
+  private Option option;
+
+  private long mask;
+
+  @Setup
+  public void setup() {
+    var constants = (Option[]) Enums.ofSize(this.size).getEnumConstants();
+    this.option = constants[constants.length - 1];
+    this.mask = Enums.everyOther(this.size);
+  }
+
+  @Benchmark
+  public long value() {
+    return this.option.value();
+  }
+
+  @Benchmark
+  public boolean in() {
+    return this.option.in(this.mask);
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import red.enspi.options.Option;
+import red.enspi.options.OptionSet;
+
+/**
+ * OptionSet queries and mutators.
+ *
+ * <p>Raw types are used so a single benchmark can run against enums of different sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class OptionSetBenchmark {
+
+  @Param({"4", "16", "64"})
+  public int size;
+
+  private Class type;
+
+  private OptionSet set;
+
+  /** An option in the set. */
+  private Enum present;
+
+  /** An option not in the set. */
+  private Enum absent;
+
+  private Enum[] varargs;
+
+  private long mask;
+
+  @Setup
+  public void setup() {
+    this.type = Enums.ofSize(this.size);
+    var constants = (Enum[]) this.type.getEnumConstants();
+    this.mask = Enums.everyOther(this.size);
+    this.set = OptionSet.of(this.type, this.mask);
+    this.present = constants[constants.length - 2];
+    this.absent = constants[constants.length - 1];
+    this.varargs = new Enum[] {constants[0], constants[1], constants[2], constants[3], this.present};
+  }
+
+  @Benchmark
+  public boolean has() {
+    return this.set.has(this.present);
+  }
+
+  @Benchmark
+  public boolean hasTwo() {
+    return this.set.has(this.present, this.absent);
+  }
+
+  @Benchmark
+  public boolean hasVarargs() {
+    return this.set.has(this.varargs);
+  }
+
+  @Benchmark
+  public boolean hasMask() {
+    return this.set.hasMask(this.mask);
+  }
+
+  @Benchmark
+  public boolean hasAny() {
+    return this.set.hasAny(this.absent);
+  }
+
+  @Benchmark
+  public boolean hasAnyTwo() {
+    return this.set.hasAny(this.absent, this.present);
+  }
+
+  @Benchmark
+  public OptionSet or() {
+    return this.set.or(this.absent);
+  }
+
+  @Benchmark
+  public OptionSet xor() {
+    return this.set.xor(this.present);
+  }
+
+  @Benchmark
+  public List toOptions() {
+    return this.set.toOptions();
+  }
+
+  @Benchmark
+  public List options() {
+    return this.set.options();
+  }
+
+  @Benchmark
+  public OptionSet of() {
+    return OptionSet.of((Enum & Option) this.present, (Enum & Option) this.absent);
+  }
+
+  @Benchmark
+  public OptionSet ofMask() {
+    return OptionSet.of(this.type, this.mask);
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import red.enspi.options.OptionSet;
+
+/**
+ * The cost of OptionStats instrumentation.
+ *
+ * <p>The plain benchmarks run with stats disabled (the default), and should match the same operations in
+ * OptionSetBenchmark; the {@code *Enabled} ones fork with {@code -Dred.enspi.options.stats=true}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class OptionStatsBenchmark {
+
+  @Param({"16"})
+  public int size;
+
+  private OptionSet set;
+
+  private Enum present;
+
+  private Enum absent;
+
+  @Setup
+  public void setup() {
+    Class type = Enums.ofSize(this.size);
+    var constants = (Enum[]) type.getEnumConstants();
+    this.set = OptionSet.of(type, Enums.everyOther(this.size));
+    this.present = constants[constants.length - 2];
+    this.absent = constants[constants.length - 1];
+  }
+
+  @Benchmark
+  public boolean has() {
+    return this.set.has(this.present, this.absent);
+  }
+
+  @Benchmark
+  @Fork(value = 2, jvmArgsAppend = "-Dred.enspi.options.stats=true")
+  public boolean hasEnabled() {
+    return this.set.has(this.present, this.absent);
+  }
+
+  @Benchmark
+  public OptionSet or() {
+    return this.set.or(this.absent);
+  }
+
+  @Benchmark
+  @Fork(value = 2, jvmArgsAppend = "-Dred.enspi.options.stats=true")
+  public OptionSet orEnabled() {
+    return this.set.or(this.absent);
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * A mutable, thread-safe collection of options.
+ *
+ * <p>Meant for flags shared across threads (e.g., runtime feature flags): reads never lock,
+ * and writes are single atomic operations (or CAS loops, for arbitrary updates).
+ *
+ * <p>Pick the read that fits:
+ * <ul>
+ * <li>{@link #getPlain()}: no ordering at all; fine for a value that only this thread writes.
+ * <li>{@link #getOpaque()}: sees other threads' writes eventually, with no fences; fine for standalone flags.
+ * <li>{@link #getAcquire()} (and has/hasAny): also sees everything written before the flag was set.
+ * <li>{@link #get()}: full volatile read.
+ * </ul>
+ */
+public final class AtomicOptionSet<T extends Enum<?> & Option> {
+
+  private static final VarHandle MASK;
+  static {
+    try {
+      MASK = MethodHandles.lookup().findVarHandle(AtomicOptionSet.class, "mask", long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final OptionMetadata<T> metadata;
+
+  /** Accessed only through MASK. */
+  private long mask;
+
+  /** Builds an empty set for the given Option enum. */
+  public AtomicOptionSet(Class<T> type) {
+    this(type, 0L);
+  }
+
+  /** Builds a set for the given Option enum, with the given initial mask. */
+  public AtomicOptionSet(Class<T> type, long mask) {
+    this.metadata = OptionMetadata.of(type);
+    // the field is only ever read through MASK, so publish it the same way.
+    MASK.setRelease(this, mask);
+  }
+
+  /** Builds a set with the same options as the given set. */
+  public AtomicOptionSet(OptionSet<T> initial) {
+    this(initial.metadata().type, initial.mask);
+  }
+
+  /** Adds the given option; returns true if it was not already set. */
+  public boolean set(T option) {
+    var value = option.value();
+    return ((long) MASK.getAndBitwiseOr(this, value) & value) == 0;
+  }
+
+  /** Removes the given option; returns true if it was set. */
+  public boolean clear(T option) {
+    var value = option.value();
+    return ((long) MASK.getAndBitwiseAnd(this, ~ value) & value) != 0;
+  }
+
+  /** Flips the given option; returns true if it is now set. */
+  public boolean toggle(T option) {
+    var value = option.value();
+    return ((long) MASK.getAndBitwiseXor(this, value) & value) == 0;
+  }
+
+  /** ORs the given mask in; returns the previous mask. */
+  public long getAndOr(long mask) {
+    return (long) MASK.getAndBitwiseOr(this, mask);
+  }
+
+  /** ANDs the given mask in; returns the previous mask. */
+  public long getAndAnd(long mask) {
+    return (long) MASK.getAndBitwiseAnd(this, mask);
+  }
+
+  /** XORs the given mask in; returns the previous mask. */
+  public long getAndXor(long mask) {
+    return (long) MASK.getAndBitwiseXor(this, mask);
+  }
+
+  /** Replaces the mask; returns the previous mask. */
+  public long getAndSetMask(long mask) {
+    return (long) MASK.getAndSet(this, mask);
+  }
+
+  /** Replaces the mask, if it is currently the expected mask. */
+  public boolean compareAndSetMask(long expected, long mask) {
+    return MASK.compareAndSet(this, expected, mask);
+  }
+
+  /** Applies the given function (which may be called more than once) to the mask; returns the previous mask. */
+  public long getAndUpdate(LongUnaryOperator update) {
+    long previous;
+    do {
+      previous = (long) MASK.getVolatile(this);
+    } while (! MASK.weakCompareAndSet(this, previous, update.applyAsLong(previous)));
+    return previous;
+  }
+
+  /** Applies the given function (which may be called more than once) to the mask; returns the new mask. */
+  public long updateAndGet(LongUnaryOperator update) {
+    long previous;
+    long next;
+    do {
+      previous = (long) MASK.getVolatile(this);
+      next = update.applyAsLong(previous);
+    } while (! MASK.weakCompareAndSet(this, previous, next));
+    return next;
+  }
+
+  /** Replaces the mask (volatile write). */
+  public void setMask(long mask) {
+    MASK.setVolatile(this, mask);
+  }
+
+  /** Replaces the mask (release write; pairs with getAcquire). */
+  public void setMaskRelease(long mask) {
+    MASK.setRelease(this, mask);
+  }
+
+  /** Volatile read of the mask. */
+  public long get() {
+    return (long) MASK.getVolatile(this);
+  }
+
+  /** Acquire read of the mask. */
+  public long getAcquire() {
+    return (long) MASK.getAcquire(this);
+  }
+
+  /** Opaque read of the mask. */
+  public long getOpaque() {
+    return (long) MASK.getOpaque(this);
+  }
+
+  /** Plain read of the mask. */
+  public long getPlain() {
+    return (long) MASK.get(this);
+  }
+
+  /** Does this option set currently include the given option? */
+  public boolean has(T option) {
+    return option.in((long) MASK.getAcquire(this));
+  }
+
+  /** Does this option set currently include (all of) the given option(s)? */
+  @SafeVarargs
+  public final boolean has(T ...options) {
+    var current = (long) MASK.getAcquire(this);
+    for (var option : options) {
+      if (! option.in(current)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Does this option set currently include (any of) the given option(s)? */
+  @SafeVarargs
+  public final boolean hasAny(T ...options) {
+    var current = (long) MASK.getAcquire(this);
+    for (var option : options) {
+      if (option.in(current)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Does this option set currently include (all of) the options in the given mask? */
+  public boolean hasMask(long mask) {
+    return Masks.has((long) MASK.getAcquire(this), mask);
+  }
+
+  /** Does this option set currently include (any of) the options in the given mask? */
+  public boolean hasAnyMask(long mask) {
+    return Masks.hasAny((long) MASK.getAcquire(this), mask);
+  }
+
+  /** An immutable copy of the current options. */
+  public OptionSet<T> snapshot() {
+    return this.metadata.cache().get((long) MASK.getAcquire(this));
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+
+package red.enspi.options;
+
+/**
+ * Option masks for enums whose values fit in 8 bits, stored one byte per row.
+ *
+ * <p>The static methods work on single {@code byte} masks.
+ * Instances are packed columns of masks, with the same query API as {@link OptionSetColumn}
+ * in one eighth of the memory; filters return the same row bitmaps.
+ * {@link OptionSetArray#of} picks the narrowest width for a given enum.
+ *
+ * <p>Masks are zero-extended to {@code long} when read. Bits that don't fit are dropped when written
+ * (they can't belong to any option, since constructing the column checks that the enum fits).
+ */
+public final class ByteOptionSet<T extends Enum<?> & Option> extends PackedOptionSet<T> {
+
+  /** The number of bits in each mask. */
+  public static final int WIDTH = Byte.SIZE;
+
+  /** Does the mask include all of the given bits? */
+  public static boolean has(byte mask, byte bits) {
+    return (mask & bits) == bits;
+  }
+
+  /** Does the mask include any of the given bits? */
+  public static boolean hasAny(byte mask, byte bits) {
+    return (mask & bits) != 0;
+  }
+
+  /** Does the mask include none of the given bits? */
+  public static boolean hasNone(byte mask, byte bits) {
+    return (mask & bits) == 0;
+  }
+
+  /** Builds a mask from the given option(s). */
+  public static byte of(Option ...options) {
+    return (byte) Masks.of(options);
+  }
+
+  /** Gets the (canonical) option set for the given Option enum and mask. */
+  public static <T extends Enum<?> & Option> OptionSet<T> toOptionSet(Class<T> type, byte mask) {
+    return OptionSet.of(type, Byte.toUnsignedLong(mask));
+  }
+
+  private final byte[] masks;
+
+  /** Builds an empty column with the given number of rows. */
+  public ByteOptionSet(Class<T> type, int rows) {
+    this(type, new byte[rows]);
+  }
+
+  /** Builds a column over the given masks (the array is used directly, not copied). */
+  public ByteOptionSet(Class<T> type, byte[] masks) {
+    super(type, WIDTH);
+    this.masks = masks;
+  }
+
+  @Override
+  public int size() {
+    return this.masks.length;
+  }
+
+  @Override
+  public long get(int row) {
+    return Byte.toUnsignedLong(this.masks[row]);
+  }
+
+  @Override
+  public void set(int row, long mask) {
+    this.masks[row] = (byte) mask;
+  }
+
+  @Override
+  public void orAll(long mask) {
+    var bits = (byte) mask;
+    for (int i = 0; i < this.masks.length; i++) {
+      this.masks[i] |= bits;
+    }
+  }
+
+  @Override
+  public void andAll(long mask) {
+    var bits = (byte) mask;
+    for (int i = 0; i < this.masks.length; i++) {
+      this.masks[i] &= bits;
+    }
+  }
+
+  @Override
+  long match(int from, int to, long mask, long target, int flip) {
+    var bits = (byte) mask;
+    var expected = (byte) target;
+    var word = 0L;
+    for (int i = from; i < to; i++) {
+      var difference = (this.masks[i] & bits) ^ expected;
+      word |= (long) (((difference | - difference) >>> 31) ^ flip) << (i - from);
+    }
+    return word;
+  }
+
+  @Override
+  long count(long mask, long target, int flip) {
+    var bits = (byte) mask;
+    var expected = (byte) target;
+    var count = 0L;
+    for (int i = 0; i < this.masks.length; i++) {
+      var difference = (this.masks[i] & bits) ^ expected;
+      count += ((difference | - difference) >>> 31) ^ flip;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+/**
+ * Byte-wise lookup tables over masks: given a mask for each bit, the OR of the masks for every bit set in a
+ * mask is found with eight lookups (one per byte) instead of a loop over the bits.
+ *
+ * <p>Tables are {@code long[8 * 256]}, indexed by {@code (byte << 8) | value}.
+ */
+final class ByteTables {
+
+  /** Builds the table for the given per-bit masks (indexed by bit). */
+  static long[] build(long[] perBit) {
+    var table = new long[8 << 8];
+    for (int b = 0; b < 8; b++) {
+      for (int value = 1; value < 256; value++) {
+        // each entry is the entry without its lowest bit, plus that bit's mask
+        table[(b << 8) | value] = table[(b << 8) | (value & (value - 1))]
+          | perBit[(b << 3) + Integer.numberOfTrailingZeros(value)];
+      }
+    }
+    return table;
+  }
+
+  /** ORs together the per-bit masks for every bit set in the given mask. */
+  static long lookup(long[] table, long mask) {
+    return table[(int) mask & 0xFF]
+      | table[0x100 | (int) (mask >>> 8) & 0xFF]
+      | table[0x200 | (int) (mask >>> 16) & 0xFF]
+      | table[0x300 | (int) (mask >>> 24) & 0xFF]
+      | table[0x400 | (int) (mask >>> 32) & 0xFF]
+      | table[0x500 | (int) (mask >>> 40) & 0xFF]
+      | table[0x600 | (int) (mask >>> 48) & 0xFF]
+      | table[0x700 | (int) (mask >>> 56)];
+  }
+
+  private ByteTables() {}
+}
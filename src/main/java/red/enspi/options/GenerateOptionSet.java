@@ -0,0 +1,57 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a specialized, reflection-free OptionSet class for the annotated Option enum.
+ *
+ * <p>For {@code enum Color implements Option { Red, Blue; }}, this generates {@code final class ColorOptionSet},
+ * in the same package, with:
+ * <ul>
+ * <li>mask constants ({@code RED}, {@code BLUE}, {@code ALL_MASK})
+ * <li>named predicates ({@code hasRed()}, {@code hasBlue()})
+ * <li>shared {@code ALL} and {@code NONE} instances
+ * <li>typed {@code with}/{@code without}/{@code withMask} mutators
+ * </ul>
+ *
+ * <p>Like {@link OptionSet#of(Class, long)}, {@code of(long)} (and so the mutators) returns shared instances.
+ * For enums with up to 12 options, every set is interned when the class is initialized,
+ * so equal sets are always the same instance.
+ * For larger enums, sets go through a bounded cache of weak references, so only {@code ALL} and {@code NONE}
+ * are guaranteed to be canonical; don't rely on identity for the others.
+ *
+ * <p>The processor ({@code red.enspi.options.processor.OptionSetProcessor}) ships with this library,
+ * but javac doesn't run processors it merely finds on the classpath by default (as of JDK 23; JDK 21 and 22 warn).
+ * Enable it explicitly: with Maven, list this library under the compiler plugin's
+ * {@code annotationProcessorPaths}; with Gradle, add it to the {@code annotationProcessor} configuration;
+ * with plain javac, pass {@code -processor red.enspi.options.processor.OptionSetProcessor} (or {@code -proc:full}).
+ *
+ * <p>Options whose generated names would collide (with each other, or with OptionSet's members) are reported as
+ * compile errors.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateOptionSet {
+
+  /** The generated class' simple name; defaults to the enum's simple name, plus "OptionSet". */
+  String name() default "";
+}
@@ -0,0 +1,248 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Represents a collection of options, for Option enums with any number of options.
+ *
+ * <p>Option sets are immutable: and/or/xor all return new instances.
+ *
+ * <p>N.B.;
+ * <ul>
+ * <li>Options are stored by ordinal (bit {@code ordinal % 64} of word {@code ordinal / 64});
+ *     {@code Option.value()} is not used.
+ * <li>Sets of enums with 64 or fewer options are a single word, and skip the loops entirely.
+ * </ul>
+ */
+public final class LargeOptionSet<T extends Enum<?> & Option> {
+
+  /** Builds a set from the given option(s). */
+  @SafeVarargs
+  public static <T extends Enum<?> & Option> LargeOptionSet<T> of(T ...options) {
+    @SuppressWarnings("unchecked")
+    var type = (Class<T>) options[0].getDeclaringClass();
+    var metadata = OptionMetadata.wide(type);
+    var words = new long[LargeOptionSet.wordCount(metadata)];
+    for (var option : options) {
+      words[option.ordinal() >>> 6] |= 1L << option.ordinal();
+    }
+    return new LargeOptionSet<>(metadata, words);
+  }
+
+  /** Builds a set from the given Option enum and words (which are copied). */
+  public static <T extends Enum<?> & Option> LargeOptionSet<T> of(Class<T> type, long ...words) {
+    var metadata = OptionMetadata.wide(type);
+    var copy = new long[LargeOptionSet.wordCount(metadata)];
+    System.arraycopy(words, 0, copy, 0, Math.min(words.length, copy.length));
+    copy[copy.length - 1] &= LargeOptionSet.lastWordMask(metadata);
+    return new LargeOptionSet<>(metadata, copy);
+  }
+
+  /** The number of words needed for the given Option enum. */
+  public static <T extends Enum<?> & Option> int wordCount(Class<T> type) {
+    return LargeOptionSet.wordCount(OptionMetadata.wide(type));
+  }
+
+  private static int wordCount(OptionMetadata<?> metadata) {
+    return Math.max(1, (metadata.constants.length + Long.SIZE - 1) >>> 6);
+  }
+
+  private static long lastWordMask(OptionMetadata<?> metadata) {
+    var remainder = metadata.constants.length & (Long.SIZE - 1);
+    return (remainder == 0) ? -1L : (1L << remainder) - 1;
+  }
+
+  private final OptionMetadata<T> metadata;
+
+  private final long[] words;
+
+  private LargeOptionSet(OptionMetadata<T> metadata, long[] words) {
+    this.metadata = metadata;
+    this.words = words;
+  }
+
+  /** ANDs this set with the given option(s): keeps whichever of them are in this set. */
+  @SafeVarargs
+  public final LargeOptionSet<T> and(T ...options) {
+    var words = new long[this.words.length];
+    for (var option : options) {
+      var word = option.ordinal() >>> 6;
+      words[word] |= this.words[word] & (1L << option.ordinal());
+    }
+    return new LargeOptionSet<>(this.metadata, words);
+  }
+
+  /** ANDs this set with the given set, word-at-a-time. */
+  public final LargeOptionSet<T> and(LargeOptionSet<T> other) {
+    var a = this.words;
+    var b = other.words;
+    if (a.length == 1) {
+      return new LargeOptionSet<>(this.metadata, new long[] {a[0] & b[0]});
+    }
+    var words = new long[a.length];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = a[i] & b[i];
+    }
+    return new LargeOptionSet<>(this.metadata, words);
+  }
+
+  /** Does this option set include (all of) the given option(s)? */
+  @SafeVarargs
+  public final boolean has(T ...options) {
+    for (var option : options) {
+      if ((this.words[option.ordinal() >>> 6] & (1L << option.ordinal())) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Does this option set include (all of) the options in the given set? */
+  public final boolean has(LargeOptionSet<T> other) {
+    var a = this.words;
+    var b = other.words;
+    if (a.length == 1) {
+      return (a[0] & b[0]) == b[0];
+    }
+    var missing = 0L;
+    for (int i = 0; i < a.length; i++) {
+      missing |= b[i] & ~ a[i];
+    }
+    return missing == 0;
+  }
+
+  /** Does this option set include (any of) the given option(s)? */
+  @SafeVarargs
+  public final boolean hasAny(T ...options) {
+    for (var option : options) {
+      if ((this.words[option.ordinal() >>> 6] & (1L << option.ordinal())) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Does this option set include (any of) the options in the given set? */
+  public final boolean hasAny(LargeOptionSet<T> other) {
+    var a = this.words;
+    var b = other.words;
+    if (a.length == 1) {
+      return (a[0] & b[0]) != 0;
+    }
+    var common = 0L;
+    for (int i = 0; i < a.length; i++) {
+      common |= a[i] & b[i];
+    }
+    return common != 0;
+  }
+
+  /** NOTs this set (restricted to the enum's options). */
+  public final LargeOptionSet<T> not() {
+    var a = this.words;
+    var words = new long[a.length];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = ~ a[i];
+    }
+    words[words.length - 1] &= LargeOptionSet.lastWordMask(this.metadata);
+    return new LargeOptionSet<>(this.metadata, words);
+  }
+
+  /** Lists all options that can be included in this set. */
+  public final List<T> options() {
+    return this.metadata.options;
+  }
+
+  /** ORs this set with the given option(s). */
+  @SafeVarargs
+  public final LargeOptionSet<T> or(T ...options) {
+    var words = this.words.clone();
+    for (var option : options) {
+      words[option.ordinal() >>> 6] |= 1L << option.ordinal();
+    }
+    return new LargeOptionSet<>(this.metadata, words);
+  }
+
+  /** ORs this set with the given set, word-at-a-time. */
+  public final LargeOptionSet<T> or(LargeOptionSet<T> other) {
+    var a = this.words;
+    var b = other.words;
+    if (a.length == 1) {
+      return new LargeOptionSet<>(this.metadata, new long[] {a[0] | b[0]});
+    }
+    var words = new long[a.length];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = a[i] | b[i];
+    }
+    return new LargeOptionSet<>(this.metadata, words);
+  }
+
+  /** Lists the options included in this set. */
+  public final List<T> toOptions() {
+    var list = new ArrayList<T>();
+    for (int i = 0; i < this.words.length; i++) {
+      for (var word = this.words[i]; word != 0; word &= word - 1) {
+        list.add(this.metadata.constants[(i << 6) + Long.numberOfTrailingZeros(word)]);
+      }
+    }
+    return list;
+  }
+
+  /** A copy of this set's words. */
+  public final long[] words() {
+    return this.words.clone();
+  }
+
+  /** XORs this set with the given option(s). */
+  @SafeVarargs
+  public final LargeOptionSet<T> xor(T ...options) {
+    var words = this.words.clone();
+    for (var option : options) {
+      words[option.ordinal() >>> 6] ^= 1L << option.ordinal();
+    }
+    return new LargeOptionSet<>(this.metadata, words);
+  }
+
+  /** XORs this set with the given set, word-at-a-time. */
+  public final LargeOptionSet<T> xor(LargeOptionSet<T> other) {
+    var a = this.words;
+    var b = other.words;
+    if (a.length == 1) {
+      return new LargeOptionSet<>(this.metadata, new long[] {a[0] ^ b[0]});
+    }
+    var words = new long[a.length];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = a[i] ^ b[i];
+    }
+    return new LargeOptionSet<>(this.metadata, words);
+  }
+
+  @Override
+  public final boolean equals(Object other) {
+    return other instanceof LargeOptionSet<?> set
+      && set.metadata == this.metadata
+      && Arrays.equals(set.words, this.words);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * this.metadata.type.hashCode() + Arrays.hashCode(this.words);
+  }
+}
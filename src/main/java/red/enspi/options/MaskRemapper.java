@@ -0,0 +1,97 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.util.HashMap;
+
+/**
+ * Translates masks written under one schema into masks for another (e.g., after an Option enum was reordered).
+ *
+ * <p>Options are matched by name. Translation uses eight precomputed 256-entry tables (one per byte of the mask),
+ * so each mask costs eight lookups and ORs, regardless of how many options are set.
+ * Options that no longer exist are dropped; see {@link #dropped()}.
+ */
+public final class MaskRemapper {
+
+  /** Builds a remapper from masks written under one schema, to masks under another. */
+  public static MaskRemapper between(OptionSchema from, OptionSchema to) {
+    var bitsByName = new HashMap<String, Integer>();
+    for (int i = 0; i < to.names().size(); i++) {
+      bitsByName.put(to.names().get(i), to.bits().get(i));
+    }
+    var targets = new long[Long.SIZE];
+    var identity = true;
+    var dropped = 0L;
+    for (int i = 0; i < from.names().size(); i++) {
+      var bit = from.bits().get(i);
+      var target = bitsByName.get(from.names().get(i));
+      if (target == null) {
+        dropped |= 1L << bit;
+      } else {
+        targets[bit] = 1L << target;
+        identity &= target.equals(bit);
+      }
+    }
+    return new MaskRemapper(targets, dropped, identity && dropped == 0);
+  }
+
+  /** Builds a remapper from masks written under the given schema, to masks for the given Option enum. */
+  public static <T extends Enum<?> & Option> MaskRemapper to(OptionSchema from, Class<T> type) {
+    return MaskRemapper.between(from, OptionSchema.of(type));
+  }
+
+  /** Translated bits; see {@link ByteTables}. */
+  private final long[] table;
+
+  private final long dropped;
+
+  private final boolean identity;
+
+  private MaskRemapper(long[] targets, long dropped, boolean identity) {
+    this.identity = identity;
+    this.dropped = dropped;
+    this.table = ByteTables.build(targets);
+  }
+
+  /** Bits (under the source schema) whose options don't exist in the target schema. */
+  public long dropped() {
+    return this.dropped;
+  }
+
+  /**
+   * Do both schemas put every option on the same bit?
+   * If so, {@link #remap(long[], int, int)} leaves masks as they are (including any bits no option uses).
+   */
+  public boolean isIdentity() {
+    return this.identity;
+  }
+
+  /** Translates the given mask. */
+  public long remap(long mask) {
+    return ByteTables.lookup(this.table, mask);
+  }
+
+  /** Translates masks [from, to) of the given array, in place. */
+  public void remap(long[] masks, int from, int to) {
+    if (this.identity) {
+      return;
+    }
+    for (int i = from; i < to; i++) {
+      masks[i] = this.remap(masks[i]);
+    }
+  }
+}
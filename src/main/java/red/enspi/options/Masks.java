@@ -0,0 +1,98 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+/**
+ * Static helpers for working with raw option masks.
+ *
+ * <p>Nothing here allocates; use these where you keep masks as plain longs rather than OptionSets.
+ */
+public final class Masks {
+
+  /** Does the mask include all of the given bits? */
+  public static boolean has(long mask, long bits) {
+    return (mask & bits) == bits;
+  }
+
+  /** Does the mask include any of the given bits? */
+  public static boolean hasAny(long mask, long bits) {
+    return (mask & bits) != 0;
+  }
+
+  /** Does the mask include none of the given bits? */
+  public static boolean hasNone(long mask, long bits) {
+    return (mask & bits) == 0;
+  }
+
+  /** A well-mixed hash of the given mask (the murmur3 finalizer); every input bit affects every output bit. */
+  public static long hash(long mask) {
+    mask = (mask ^ (mask >>> 33)) * 0xFF51AFD7ED558CCDL;
+    mask = (mask ^ (mask >>> 33)) * 0xC4CEB9FE1A85EC53L;
+    return mask ^ (mask >>> 33);
+  }
+
+  /** The bits set in all of the given masks (-1 if there are none). */
+  public static long intersection(long ...masks) {
+    return Masks.intersection(masks, 0, masks.length);
+  }
+
+  /** The bits set in all of masks [from, to) of the given array (-1 if the range is empty). */
+  public static long intersection(long[] masks, int from, int to) {
+    var mask = -1L;
+    for (int i = from; i < to; i++) {
+      mask &= masks[i];
+    }
+    return mask;
+  }
+
+  /** Builds a mask from the given option(s). */
+  public static long of(Option option) {
+    return option.value();
+  }
+  public static long of(Option a, Option b) {
+    return a.value() | b.value();
+  }
+  public static long of(Option a, Option b, Option c) {
+    return a.value() | b.value() | c.value();
+  }
+  public static long of(Option a, Option b, Option c, Option d) {
+    return a.value() | b.value() | c.value() | d.value();
+  }
+  public static long of(Option ...options) {
+    var mask = 0L;
+    for (var option : options) {
+      mask |= option.value();
+    }
+    return mask;
+  }
+
+  /** The bits set in any of the given masks. */
+  public static long union(long ...masks) {
+    return Masks.union(masks, 0, masks.length);
+  }
+
+  /** The bits set in any of masks [from, to) of the given array. */
+  public static long union(long[] masks, int from, int to) {
+    var mask = 0L;
+    for (int i = from; i < to; i++) {
+      mask |= masks[i];
+    }
+    return mask;
+  }
+
+  private Masks() {}
+}
@@ -21,7 +21,8 @@ package red.enspi.options;
  *
  * <p>N.B.;
  * <ul>
- * <li>Each subtype of this interface can support up to 64 distinct options.
+ * <li>Each subtype of this interface can support up to 64 distinct options in an OptionSet.
+ *     Larger enums can be used with LargeOptionSet (which ignores {@code value()}, and uses ordinals instead).
  * <li>This interface is meant to be implemented as an enum.
  *     Options that are not Enums **will not work correctly** with OptionSets.
  * </ul>
@@ -39,6 +40,9 @@ public interface Option {
 
   /** Checks whether this option's value is included the given mask. */
   default boolean in(long mask) {
+    if (OptionStats.ENABLED) {
+      OptionStats.checked(this);
+    }
     var value = this.value();
     return (value & mask) == value;
   }
@@ -70,10 +74,11 @@ public interface Option {
   /**
    * This option's longeger value.
    *
-   * <p>If you override this method, you must insure every value returned is a power of 2.
+   * <p>If you override this method, you must insure every value returned is a power of 2,
+   * and that the same value is returned every time.
    */
   default long value() {
-    return (long) Math.pow(2, this.ordinal());
+    return 1L << this.ordinal();
   }
 
   /** See Enum.ordinal(). */
@@ -0,0 +1,199 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.util.Arrays;
+
+import red.enspi.exceptable.Exceptable.Signal;
+
+/**
+ * Rules about which options may (or must) appear together, for a single Option enum.
+ *
+ * <p>Supported rules:
+ * <ul>
+ * <li>{@code atMostOne(a, b, c)}: a mutually exclusive group (e.g., "loud" and "quiet").
+ * <li>{@code excludes(a, b, c)}: {@code a} can't appear with {@code b} or {@code c} (but they may appear together).
+ * <li>{@code implies(a, b, c)}: if {@code a} is present, {@code b} and {@code c} must be too (transitively).
+ * <li>{@code atLeastOne(a, b, c)}: a required group (up to 64 such groups).
+ * </ul>
+ *
+ * <p>Rules are compiled into byte-wise lookup tables (8 tables of 256 entries each, for conflicts, implications,
+ * and satisfied groups), so validating a mask costs the same handful of lookups and bitwise ops no matter how many
+ * rules there are. {@link #normalize} adds implied options using the transitive closure of the implications.
+ *
+ * <p>Constraints are immutable; each rule method returns a new instance.
+ */
+public final class OptionConstraints<T extends Enum<?> & Option> {
+
+  /** No rules, for the given Option enum. */
+  public static <T extends Enum<?> & Option> OptionConstraints<T> of(Class<T> type) {
+    return new OptionConstraints<>(OptionMetadata.of(type), new long[Long.SIZE], new long[Long.SIZE], new long[0]);
+  }
+
+  private final OptionMetadata<T> metadata;
+
+  /** Options that conflict with each bit. */
+  private final long[] conflicts;
+
+  /** Options directly implied by each bit. */
+  private final long[] implies;
+
+  /** At-least-one groups. */
+  private final long[] groups;
+
+  /** Lookup tables, indexed by {@code (byte << 8) | value}. */
+  private final long[] conflictTable;
+  private final long[] impliedTable;
+  private final long[] groupTable;
+
+  /** One bit per at-least-one group. */
+  private final long required;
+
+  private OptionConstraints(OptionMetadata<T> metadata, long[] conflicts, long[] implies, long[] groups) {
+    if (groups.length > Long.SIZE) {
+      throw OptionConstraints.Error.TooManyGroups.throwable();
+    }
+    this.metadata = metadata;
+    this.conflicts = conflicts;
+    this.implies = implies;
+    this.groups = groups;
+    var closure = implies.clone();
+    for (var changed = true; changed; ) {
+      changed = false;
+      for (int bit = 0; bit < Long.SIZE; bit++) {
+        var implied = closure[bit];
+        for (var bits = closure[bit]; bits != 0; bits &= bits - 1) {
+          implied |= closure[Long.numberOfTrailingZeros(bits)];
+        }
+        changed |= implied != closure[bit];
+        closure[bit] = implied;
+      }
+    }
+    var satisfies = new long[Long.SIZE];
+    for (int group = 0; group < groups.length; group++) {
+      for (var bits = groups[group]; bits != 0; bits &= bits - 1) {
+        satisfies[Long.numberOfTrailingZeros(bits)] |= 1L << group;
+      }
+    }
+    this.conflictTable = ByteTables.build(conflicts);
+    this.impliedTable = ByteTables.build(closure);
+    this.groupTable = ByteTables.build(satisfies);
+    this.required = (groups.length == Long.SIZE) ? -1L : (1L << groups.length) - 1;
+  }
+
+  /** Requires at least one of the given options. */
+  @SafeVarargs
+  public final OptionConstraints<T> atLeastOne(T ...options) {
+    var groups = Arrays.copyOf(this.groups, this.groups.length + 1);
+    groups[this.groups.length] = Masks.of(options);
+    return new OptionConstraints<>(this.metadata, this.conflicts, this.implies, groups);
+  }
+
+  /** Allows at most one of the given options (a mutually exclusive group). */
+  @SafeVarargs
+  public final OptionConstraints<T> atMostOne(T ...options) {
+    var group = Masks.of(options);
+    var conflicts = this.conflicts.clone();
+    for (var bits = group; bits != 0; bits &= bits - 1) {
+      var bit = Long.numberOfTrailingZeros(bits);
+      conflicts[bit] |= group & ~ (1L << bit);
+    }
+    return new OptionConstraints<>(this.metadata, conflicts, this.implies, this.groups);
+  }
+
+  /** Forbids the given option from appearing with any of the others. */
+  @SafeVarargs
+  public final OptionConstraints<T> excludes(T option, T ...others) {
+    var value = option.value();
+    var excluded = Masks.of(others) & ~ value;
+    var conflicts = this.conflicts.clone();
+    conflicts[Long.numberOfTrailingZeros(value)] |= excluded;
+    for (var bits = excluded; bits != 0; bits &= bits - 1) {
+      conflicts[Long.numberOfTrailingZeros(bits)] |= value;
+    }
+    return new OptionConstraints<>(this.metadata, conflicts, this.implies, this.groups);
+  }
+
+  /** Requires the other options whenever the given option is present. */
+  @SafeVarargs
+  public final OptionConstraints<T> implies(T option, T ...others) {
+    var implies = this.implies.clone();
+    implies[Long.numberOfTrailingZeros(option.value())] |= Masks.of(others);
+    return new OptionConstraints<>(this.metadata, this.conflicts, implies, this.groups);
+  }
+
+  /** Rows (of the given masks) that break any rule, as a row bitmap (bit {@code i % 64} of word {@code i / 64}). */
+  public long[] filterInvalid(long[] masks) {
+    var bitmap = new long[(masks.length + Long.SIZE - 1) >>> 6];
+    for (int base = 0; base < masks.length; base += Long.SIZE) {
+      var end = Math.min(base + Long.SIZE, masks.length);
+      var word = 0L;
+      for (int i = base; i < end; i++) {
+        word |= (this.isValid(masks[i]) ? 0L : 1L) << (i - base);
+      }
+      bitmap[base >>> 6] = word;
+    }
+    return bitmap;
+  }
+
+  /** Does the given mask follow every rule? */
+  public boolean isValid(long mask) {
+    var broken = (mask & ByteTables.lookup(this.conflictTable, mask))
+      | (ByteTables.lookup(this.impliedTable, mask) & ~ mask)
+      | (ByteTables.lookup(this.groupTable, mask) ^ this.required);
+    return broken == 0;
+  }
+  public boolean isValid(OptionSet<T> options) {
+    return this.isValid(options.mask);
+  }
+
+  /** Adds every option implied (directly or transitively) by the options in the given mask. */
+  public long normalize(long mask) {
+    return mask | ByteTables.lookup(this.impliedTable, mask);
+  }
+  public OptionSet<T> normalize(OptionSet<T> options) {
+    return this.metadata.cache().get(this.normalize(options.mask));
+  }
+
+  /** Returns the given set if it follows every rule; throws otherwise. */
+  public OptionSet<T> requireValid(OptionSet<T> options) {
+    if (! this.isValid(options.mask)) {
+      throw OptionConstraints.Error.ConstraintViolation.throwable();
+    }
+    return options;
+  }
+
+  /** You're doing it wrong. */
+  public enum Error implements Signal<RuntimeException> {
+
+    /** Thrown by requireValid when a set breaks a rule. */
+    ConstraintViolation {
+      @Override
+      public final String description() {
+        return "The option set breaks one or more of the Option enum's constraints.";
+      }
+    },
+
+    /** Thrown when more than 64 at-least-one groups are added. */
+    TooManyGroups {
+      @Override
+      public final String description() {
+        return "At most 64 at-least-one groups are supported.";
+      }
+    };
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Per-enum lookup tables, built once per Option enum and shared by every OptionSet of that type.
+ *
+ * <p>N.B.; values are read from {@code Option.value()} exactly once, when the tables are built.
+ * Overridden values must therefore be constant.
+ * Enums with more than 64 options get no value tables (they can only be used with LargeOptionSet).
+ */
+final class OptionMetadata<T extends Enum<?> & Option> {
+
+  private static final ClassValue<OptionMetadata<?>> REGISTRY = new ClassValue<>() {
+    @Override
+    protected OptionMetadata<?> computeValue(Class<?> type) {
+      return OptionMetadata.build(type);
+    }
+  };
+
+  /** Looks up (building if needed) the metadata for the given Option enum. */
+  static <T extends Enum<?> & Option> OptionMetadata<T> of(Class<T> type) {
+    return OptionMetadata.narrow(OptionMetadata.wide(type));
+  }
+
+  /** Looks up the metadata for the enum the given option belongs to. */
+  @SuppressWarnings("unchecked")
+  static <T extends Enum<?> & Option> OptionMetadata<T> of(T option) {
+    return OptionMetadata.narrow((OptionMetadata<T>) REGISTRY.get(option.getDeclaringClass()));
+  }
+
+  /** Looks up the metadata for the given Option enum, without requiring it to fit in a single mask. */
+  @SuppressWarnings("unchecked")
+  static <T extends Enum<?> & Option> OptionMetadata<T> wide(Class<T> type) {
+    return (OptionMetadata<T>) REGISTRY.get(type);
+  }
+
+  private static <T extends Enum<?> & Option> OptionMetadata<T> narrow(OptionMetadata<T> metadata) {
+    if (metadata.values == null) {
+      throw OptionSet.Error.TooManyOptions.throwable();
+    }
+    return metadata;
+  }
+
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static OptionMetadata<?> build(Class<?> type) {
+    if (! type.isEnum() || ! Option.class.isAssignableFrom(type)) {
+      throw OptionSet.Error.InvalidOptionImplementation.throwable();
+    }
+    return new OptionMetadata(type);
+  }
+
+  /** The Option enum. */
+  final Class<T> type;
+
+  /** The enum's constants, in ordinal order. Never hand this array out. */
+  final T[] constants;
+
+  /** Unmodifiable view of the enum's constants, in ordinal order. */
+  final List<T> options;
+
+  /** Option values, indexed by ordinal (null if the enum has more than 64 options). */
+  final long[] values;
+
+  /** Option ordinals, indexed by bit position; -1 where no option uses the bit (null if more than 64 options). */
+  final int[] ordinalByBit;
+
+  /** Mask of every option in the enum (0 if more than 64 options). */
+  final long all;
+
+  private volatile OptionSetCache<T> cache;
+
+  private OptionMetadata(Class<T> type) {
+    this.type = type;
+    this.constants = type.getEnumConstants();
+    this.options = Collections.unmodifiableList(Arrays.asList(this.constants));
+    if (this.constants.length > Long.SIZE) {
+      this.values = null;
+      this.ordinalByBit = null;
+      this.all = 0L;
+      return;
+    }
+    this.values = new long[this.constants.length];
+    this.ordinalByBit = new int[Long.SIZE];
+    Arrays.fill(this.ordinalByBit, -1);
+    var all = 0L;
+    for (var option : this.constants) {
+      var value = option.value();
+      if (Long.bitCount(value) != 1 || (all & value) != 0) {
+        throw OptionSet.Error.InvalidOptionValue.throwable();
+      }
+      this.values[option.ordinal()] = value;
+      this.ordinalByBit[Long.numberOfTrailingZeros(value)] = option.ordinal();
+      all |= value;
+    }
+    this.all = all;
+  }
+
+  /** The canonical OptionSet instances for this enum (built on first use). */
+  OptionSetCache<T> cache() {
+    var cache = this.cache;
+    if (cache == null) {
+      synchronized (this) {
+        cache = this.cache;
+        if (cache == null) {
+          this.cache = cache = new OptionSetCache<>(this);
+        }
+      }
+    }
+    return cache;
+  }
+
+  /** Gets the option that uses the given bit position, or null if there is none. */
+  T option(int bit) {
+    var ordinal = this.ordinalByBit[bit];
+    return (ordinal < 0) ? null : this.constants[ordinal];
+  }
+}
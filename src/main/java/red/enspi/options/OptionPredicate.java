@@ -0,0 +1,460 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.function.Predicate;
+
+import red.enspi.exceptable.Exceptable.Signal;
+
+/**
+ * A boolean expression over the options of a single Option enum, compiled to mask tests.
+ *
+ * <p>Predicates are built with the fluent API ({@code has/hasAny/hasNone}, then {@code and/or/negate}),
+ * or parsed from expressions like {@code "Red & !Blue & (Yellow | Green)"}.
+ * Either way, they're normalized once into an OR of clauses, each of which is a {@code require} mask,
+ * a {@code forbid} mask, and zero or more "any-of" masks.
+ * A mask matches a clause when {@code (mask & require) == require}, {@code (mask & forbid) == 0},
+ * and {@code (mask & anyOf) != 0} for each any-of mask.
+ *
+ * <p>Testing does not allocate. Most real rules normalize to a single clause with at most one any-of mask,
+ * which is tested with a handful of bitwise ops and no loops at all.
+ *
+ * <p>Expression syntax: option names (as declared), {@code !} (not), {@code &} (and), {@code |} (or),
+ * and parentheses. {@code !} binds tightest, then {@code &}, then {@code |}.
+ */
+public final class OptionPredicate<T extends Enum<?> & Option> implements Predicate<OptionSet<T>> {
+
+  /** Matches sets that include (all of) the given option(s). */
+  @SafeVarargs
+  public static <T extends Enum<?> & Option> OptionPredicate<T> has(T ...options) {
+    return OptionPredicate.of(OptionPredicate.typeOf(options[0]), Masks.of(options), 0L);
+  }
+
+  /** Matches sets that include (any of) the given option(s). */
+  @SafeVarargs
+  public static <T extends Enum<?> & Option> OptionPredicate<T> hasAny(T ...options) {
+    return OptionPredicate.of(OptionPredicate.typeOf(options[0]), 0L, 0L, Masks.of(options));
+  }
+
+  /** Matches sets that include none of the given option(s). */
+  @SafeVarargs
+  public static <T extends Enum<?> & Option> OptionPredicate<T> hasNone(T ...options) {
+    return OptionPredicate.of(OptionPredicate.typeOf(options[0]), 0L, Masks.of(options));
+  }
+
+  /** Builds a single-clause predicate from raw masks. */
+  public static <T extends Enum<?> & Option> OptionPredicate<T> of(
+    Class<T> type,
+    long require,
+    long forbid,
+    long ...anyOf
+  ) {
+    var clause = Clause.of(require, forbid, anyOf);
+    return new OptionPredicate<>(
+      OptionMetadata.of(type),
+      (clause == null) ? List.of() : List.of(clause));
+  }
+
+  /** Parses the given expression. */
+  public static <T extends Enum<?> & Option> OptionPredicate<T> parse(Class<T> type, CharSequence expression) {
+    var metadata = OptionMetadata.of(type);
+    return new OptionPredicate<>(metadata, new Parser(metadata, expression).parse());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends Enum<?> & Option> Class<T> typeOf(T option) {
+    return (Class<T>) option.getDeclaringClass();
+  }
+
+  private final OptionMetadata<T> metadata;
+
+  /** The normalized clauses (kept for combining predicates; not used for testing). */
+  private final List<Clause> clauses;
+
+  /** Per-clause masks; null when {@link #simple}. */
+  private final long[] require;
+  private final long[] forbid;
+  private final long[] anyOf;
+  /** End offset (exclusive) of each clause's any-of masks in {@link #anyOf}. */
+  private final int[] anyOfEnd;
+
+  /** The single clause, when there is exactly one with at most one any-of mask (0 meaning none). */
+  private final boolean simple;
+  private final long require0;
+  private final long forbid0;
+  private final long anyOf0;
+
+  private OptionPredicate(OptionMetadata<T> metadata, List<Clause> clauses) {
+    this.metadata = metadata;
+    this.clauses = clauses;
+    if (clauses.size() == 1 && clauses.get(0).anyOf.length <= 1) {
+      var clause = clauses.get(0);
+      this.simple = true;
+      this.require0 = clause.require;
+      this.forbid0 = clause.forbid;
+      this.anyOf0 = (clause.anyOf.length == 0) ? 0L : clause.anyOf[0];
+      this.require = this.forbid = this.anyOf = null;
+      this.anyOfEnd = null;
+      return;
+    }
+    this.simple = false;
+    this.require0 = this.forbid0 = this.anyOf0 = 0L;
+    this.require = new long[clauses.size()];
+    this.forbid = new long[clauses.size()];
+    this.anyOfEnd = new int[clauses.size()];
+    var anyOf = new ArrayList<Long>();
+    for (int i = 0; i < this.require.length; i++) {
+      var clause = clauses.get(i);
+      this.require[i] = clause.require;
+      this.forbid[i] = clause.forbid;
+      for (var mask : clause.anyOf) {
+        anyOf.add(mask);
+      }
+      this.anyOfEnd[i] = anyOf.size();
+    }
+    this.anyOf = anyOf.stream().mapToLong(Long::longValue).toArray();
+  }
+
+  /** Matches sets that match both this predicate and the given one. */
+  public final OptionPredicate<T> and(OptionPredicate<T> other) {
+    return new OptionPredicate<>(this.metadata, Clause.and(this.clauses, other.clauses));
+  }
+
+  /** Matches sets that don't match this predicate. */
+  @Override
+  public final OptionPredicate<T> negate() {
+    return new OptionPredicate<>(this.metadata, Clause.not(this.clauses));
+  }
+
+  /** Matches sets that match either this predicate or the given one. */
+  public final OptionPredicate<T> or(OptionPredicate<T> other) {
+    return new OptionPredicate<>(this.metadata, Clause.or(this.clauses, other.clauses));
+  }
+
+  /** Does the given set match this predicate? */
+  @Override
+  public final boolean test(OptionSet<T> options) {
+    return this.test(options.mask);
+  }
+
+  /** Does the given mask match this predicate? */
+  public final boolean test(long mask) {
+    if (this.simple) {
+      return ((((mask & this.require0) ^ this.require0) | (mask & this.forbid0)) == 0)
+        & (((mask & this.anyOf0) != 0) | (this.anyOf0 == 0));
+    }
+    var start = 0;
+    for (int i = 0; i < this.require.length; i++) {
+      var end = this.anyOfEnd[i];
+      var match = (((mask & this.require[i]) ^ this.require[i]) | (mask & this.forbid[i])) == 0;
+      for (int j = start; j < end; j++) {
+        match &= (mask & this.anyOf[j]) != 0;
+      }
+      if (match) {
+        return true;
+      }
+      start = end;
+    }
+    return false;
+  }
+
+  /** Tests each of the given masks; bit {@code i % 64} of word {@code i / 64} is set where masks[i] matches. */
+  public final long[] test(long[] masks) {
+    return this.test(masks, new long[(masks.length + Long.SIZE - 1) >>> 6]);
+  }
+
+  /** Tests each of the given masks, writing results into (and returning) the given bitmap. */
+  public final long[] test(long[] masks, long[] results) {
+    for (int word = 0, row = 0; row < masks.length; word++) {
+      var end = Math.min(row + Long.SIZE, masks.length);
+      var bits = 0L;
+      for (int bit = 0; row < end; bit++, row++) {
+        bits |= (this.test(masks[row]) ? 1L : 0L) << bit;
+      }
+      results[word] = bits;
+    }
+    return results;
+  }
+
+  @Override
+  public final boolean equals(Object other) {
+    return other instanceof OptionPredicate<?> predicate
+      && predicate.metadata == this.metadata
+      && predicate.clauses.equals(this.clauses);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * this.metadata.type.hashCode() + this.clauses.hashCode();
+  }
+
+  /** The normalized expression. */
+  @Override
+  public String toString() {
+    if (this.clauses.isEmpty()) {
+      return "false";
+    }
+    var expression = new StringJoiner(" | ");
+    for (var clause : this.clauses) {
+      var terms = new StringJoiner(" & ");
+      for (var bits = clause.require; bits != 0; bits &= bits - 1) {
+        terms.add(this.metadata.option(Long.numberOfTrailingZeros(bits)).name());
+      }
+      for (var bits = clause.forbid; bits != 0; bits &= bits - 1) {
+        terms.add("!" + this.metadata.option(Long.numberOfTrailingZeros(bits)).name());
+      }
+      for (var mask : clause.anyOf) {
+        var group = new StringJoiner(" | ", "(", ")");
+        for (var bits = mask; bits != 0; bits &= bits - 1) {
+          group.add(this.metadata.option(Long.numberOfTrailingZeros(bits)).name());
+        }
+        terms.add(group.toString());
+      }
+      var term = (terms.length() == 0) ? "true" : terms.toString();
+      expression.add((this.clauses.size() > 1 && term.contains(" & ")) ? "(" + term + ")" : term);
+    }
+    return expression.toString();
+  }
+
+  /** One conjunction: all of require, none of forbid, and at least one of each anyOf. */
+  private record Clause(long require, long forbid, long[] anyOf) {
+
+    private static final Clause TRUE = new Clause(0L, 0L, new long[0]);
+
+    /** Normalizes the given masks into a clause, or returns null if it can never match. */
+    static Clause of(long require, long forbid, long ...anyOf) {
+      if ((require & forbid) != 0) {
+        return null;
+      }
+      // drop forbidden options from any-of masks; a single option left over is simply required
+      var groups = new long[anyOf.length];
+      var count = 0;
+      for (var mask : anyOf) {
+        mask &= ~ forbid;
+        if (mask == 0) {
+          return null;
+        }
+        if (Long.bitCount(mask) == 1) {
+          require |= mask;
+        } else {
+          groups[count++] = mask;
+        }
+      }
+      // any-of masks that are already satisfied by require, or by a narrower any-of mask, are redundant
+      var kept = 0;
+      outer:
+      for (int i = 0; i < count; i++) {
+        var mask = groups[i];
+        if ((mask & require) != 0) {
+          continue;
+        }
+        for (int j = 0; j < count; j++) {
+          var narrower = groups[j];
+          if (j != i && (narrower & ~ mask) == 0 && (narrower != mask || j < i)) {
+            continue outer;
+          }
+        }
+        groups[kept++] = mask;
+      }
+      groups = Arrays.copyOf(groups, kept);
+      Arrays.sort(groups);
+      return new Clause(require, forbid, groups);
+    }
+
+    static List<Clause> and(List<Clause> a, List<Clause> b) {
+      var clauses = new ArrayList<Clause>();
+      for (var x : a) {
+        for (var y : b) {
+          var anyOf = Arrays.copyOf(x.anyOf, x.anyOf.length + y.anyOf.length);
+          System.arraycopy(y.anyOf, 0, anyOf, x.anyOf.length, y.anyOf.length);
+          Clause.add(clauses, Clause.of(x.require | y.require, x.forbid | y.forbid, anyOf));
+        }
+      }
+      return List.copyOf(clauses);
+    }
+
+    static List<Clause> or(List<Clause> a, List<Clause> b) {
+      // clauses that only need "one of these options" merge into a single any-of mask
+      var anyOf = 0L;
+      var clauses = new ArrayList<Clause>();
+      for (var list : List.of(a, b)) {
+        for (var clause : list) {
+          if (clause.equals(TRUE)) {
+            return List.of(TRUE);
+          }
+          if (clause.forbid == 0 && clause.require == 0 && clause.anyOf.length == 1) {
+            anyOf |= clause.anyOf[0];
+          } else if (clause.forbid == 0 && Long.bitCount(clause.require) == 1 && clause.anyOf.length == 0) {
+            anyOf |= clause.require;
+          } else {
+            Clause.add(clauses, clause);
+          }
+        }
+      }
+      if (anyOf != 0) {
+        clauses.add(0, Clause.of(0L, 0L, anyOf));
+      }
+      return List.copyOf(clauses);
+    }
+
+    static List<Clause> not(List<Clause> clauses) {
+      // !(c1 | c2 | ...) is !c1 & !c2 & ...; each !c is an OR of its negated terms
+      var result = List.of(TRUE);
+      for (var clause : clauses) {
+        var negated = new ArrayList<Clause>();
+        for (var bits = clause.require; bits != 0; bits &= bits - 1) {
+          negated.add(new Clause(0L, Long.lowestOneBit(bits), new long[0]));
+        }
+        if (clause.forbid != 0) {
+          negated.add(Clause.of(0L, 0L, clause.forbid));
+        }
+        for (var mask : clause.anyOf) {
+          negated.add(new Clause(0L, mask, new long[0]));
+        }
+        result = Clause.and(result, Clause.or(negated, List.of()));
+      }
+      return result;
+    }
+
+    private static void add(List<Clause> clauses, Clause clause) {
+      if (clause != null && ! clauses.contains(clause)) {
+        clauses.add(clause);
+      }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Clause clause
+        && clause.require == this.require
+        && clause.forbid == this.forbid
+        && Arrays.equals(clause.anyOf, this.anyOf);
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(this.require) * 31 + Long.hashCode(this.forbid) * 17 + Arrays.hashCode(this.anyOf);
+    }
+  }
+
+  /** Recursive-descent parser; builds normalized clauses directly. */
+  private static final class Parser {
+
+    private final OptionMetadata<?> metadata;
+    private final CharSequence expression;
+    private int position;
+
+    Parser(OptionMetadata<?> metadata, CharSequence expression) {
+      this.metadata = metadata;
+      this.expression = expression;
+    }
+
+    List<Clause> parse() {
+      var clauses = this.or();
+      if (this.peek() != -1) {
+        throw OptionPredicate.Error.InvalidExpression.throwable();
+      }
+      return clauses;
+    }
+
+    private List<Clause> or() {
+      var clauses = this.and();
+      while (this.peek() == '|') {
+        this.position++;
+        clauses = Clause.or(clauses, this.and());
+      }
+      return clauses;
+    }
+
+    private List<Clause> and() {
+      var clauses = this.not();
+      while (this.peek() == '&') {
+        this.position++;
+        clauses = Clause.and(clauses, this.not());
+      }
+      return clauses;
+    }
+
+    private List<Clause> not() {
+      var next = this.peek();
+      if (next == '!') {
+        this.position++;
+        return Clause.not(this.not());
+      }
+      if (next == '(') {
+        this.position++;
+        var clauses = this.or();
+        if (this.peek() != ')') {
+          throw OptionPredicate.Error.InvalidExpression.throwable();
+        }
+        this.position++;
+        return clauses;
+      }
+      return List.of(new Clause(this.option(), 0L, new long[0]));
+    }
+
+    private long option() {
+      var start = this.position;
+      while (this.position < this.expression.length()
+        && Character.isJavaIdentifierPart(this.expression.charAt(this.position))) {
+        this.position++;
+      }
+      if (start == this.position) {
+        throw OptionPredicate.Error.InvalidExpression.throwable();
+      }
+      var name = this.expression.subSequence(start, this.position).toString();
+      for (var option : this.metadata.constants) {
+        if (option.name().equals(name)) {
+          return this.metadata.values[option.ordinal()];
+        }
+      }
+      throw OptionPredicate.Error.UnknownOption.throwable();
+    }
+
+    /** The next non-whitespace character (without consuming it), or -1 at the end. */
+    private int peek() {
+      while (this.position < this.expression.length()
+        && Character.isWhitespace(this.expression.charAt(this.position))) {
+        this.position++;
+      }
+      return (this.position < this.expression.length()) ? this.expression.charAt(this.position) : -1;
+    }
+  }
+
+  /** You're doing it wrong. */
+  public enum Error implements Signal<RuntimeException> {
+
+    /** Thrown when an expression can't be parsed. */
+    InvalidExpression {
+      @Override
+      public final String description() {
+        return "The expression is not valid: expected option names, !, &, |, and balanced parentheses.";
+      }
+    },
+
+    /** Thrown when an expression names an option the enum doesn't have. */
+    UnknownOption {
+      @Override
+      public final String description() {
+        return "The expression names an option that does not exist.";
+      }
+    };
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes the layout of an Option enum's masks: the enum's name, and each option's name and bit.
+ *
+ * <p>Persisted alongside masks, so they can be checked (or translated) when the enum changes.
+ *
+ * @param type the Option enum's (binary) class name
+ * @param names option names, in ordinal order
+ * @param bits each option's bit position, in ordinal order
+ */
+public record OptionSchema(String type, List<String> names, List<Integer> bits) {
+
+  /** Describes the given Option enum, as it is now. */
+  public static <T extends Enum<?> & Option> OptionSchema of(Class<T> type) {
+    var metadata = OptionMetadata.of(type);
+    var names = new ArrayList<String>(metadata.constants.length);
+    var bits = new ArrayList<Integer>(metadata.constants.length);
+    for (int i = 0; i < metadata.constants.length; i++) {
+      names.add(metadata.constants[i].name());
+      bits.add(Long.numberOfTrailingZeros(metadata.values[i]));
+    }
+    return new OptionSchema(type.getName(), names, bits);
+  }
+
+  /** Reads a schema written by {@link #write(ByteBuffer)}. */
+  public static OptionSchema read(ByteBuffer buffer) {
+    var type = OptionSchema.readString(buffer);
+    var count = buffer.getShort() & 0xFFFF;
+    var names = new ArrayList<String>(count);
+    var bits = new ArrayList<Integer>(count);
+    for (int i = 0; i < count; i++) {
+      bits.add((int) buffer.get());
+      names.add(OptionSchema.readString(buffer));
+    }
+    return new OptionSchema(type, names, bits);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    var bytes = new byte[buffer.getShort() & 0xFFFF];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeString(ByteBuffer buffer, String string) {
+    var bytes = string.getBytes(StandardCharsets.UTF_8);
+    buffer.putShort((short) bytes.length);
+    buffer.put(bytes);
+  }
+
+  public OptionSchema {
+    names = List.copyOf(names);
+    bits = List.copyOf(bits);
+  }
+
+  /** The number of bytes {@link #write(ByteBuffer)} needs. */
+  public int encodedSize() {
+    var size = 2 + this.type.getBytes(StandardCharsets.UTF_8).length + 2;
+    for (var name : this.names) {
+      size += 1 + 2 + name.getBytes(StandardCharsets.UTF_8).length;
+    }
+    return size;
+  }
+
+  /** Writes this schema at the buffer's position. */
+  public void write(ByteBuffer buffer) {
+    OptionSchema.writeString(buffer, this.type);
+    buffer.putShort((short) this.names.size());
+    for (int i = 0; i < this.names.size(); i++) {
+      buffer.put(this.bits.get(i).byteValue());
+      OptionSchema.writeString(buffer, this.names.get(i));
+    }
+  }
+}
@@ -18,10 +18,19 @@ package red.enspi.options;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.AbstractSet;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import red.enspi.exceptable.Exceptable.Signal;
 
@@ -29,25 +38,137 @@ import red.enspi.exceptable.Exceptable.Signal;
  * Represents a collection of options.
  *
  * <p>Option sets are immutable: and/or/xor all return new instances.
+ * Sets returned by of/and/or/xor/not, and by union/intersect/difference/symmetricDifference/complement,
+ * are canonical (shared) instances; see {@link OptionSetCache}.
+ * Each of those is a single bitwise operation on the masks; for more than two sets,
+ * see {@link #unionOf} and {@link #intersectionOf} (or {@link Masks#union}/{@link Masks#intersection} for raw masks).
+ *
+ * <p>Traversal (iterator/forEach/stream/toOptions/nextBit) visits only the set bits, in bit order
+ * (which is ordinal order, unless {@code Option.value()} is overridden).
+ * Bits that don't belong to any option (e.g., after {@code not()}) are skipped.
  */
-public abstract class OptionSet<T extends Enum<?> & Option> {
+public abstract class OptionSet<T extends Enum<?> & Option> implements Iterable<T> {
 
-  @SuppressWarnings("unchecked")
+  @SafeVarargs
   public static <T extends Enum<?> & Option> OptionSet<T> of(T ...options) {
-    return new OptionSet<T>((Class<T>) options[0].getClass(), 0L) {}.or(options);
-    // come on, java,       ^-------------------------------^    ...how can you be THIS stupid
+    return OptionMetadata.of(options[0]).cache().get(Masks.of(options));
+  }
+
+  /** Gets the option set for the given Option enum and mask. */
+  public static <T extends Enum<?> & Option> OptionSet<T> of(Class<T> type, long mask) {
+    return OptionMetadata.of(type).cache().get(mask);
+  }
+
+  /** The options in all of the given sets (every option, if there are none). */
+  @SafeVarargs
+  public static <T extends Enum<?> & Option> OptionSet<T> intersectionOf(Class<T> type, OptionSet<T> ...sets) {
+    var metadata = OptionMetadata.of(type);
+    var mask = metadata.all;
+    for (var set : sets) {
+      mask &= set.mask;
+    }
+    return metadata.cache().get(mask);
+  }
+  public static <T extends Enum<?> & Option> OptionSet<T> intersectionOf(
+    Class<T> type,
+    Iterable<? extends OptionSet<T>> sets
+  ) {
+    var metadata = OptionMetadata.of(type);
+    var mask = metadata.all;
+    for (var set : sets) {
+      mask &= set.mask;
+    }
+    return metadata.cache().get(mask);
+  }
+
+  /** The options in any of the given sets. */
+  @SafeVarargs
+  public static <T extends Enum<?> & Option> OptionSet<T> unionOf(Class<T> type, OptionSet<T> ...sets) {
+    var mask = 0L;
+    for (var set : sets) {
+      mask |= set.mask;
+    }
+    return OptionMetadata.of(type).cache().get(mask);
+  }
+  public static <T extends Enum<?> & Option> OptionSet<T> unionOf(
+    Class<T> type,
+    Iterable<? extends OptionSet<T>> sets
+  ) {
+    var mask = 0L;
+    for (var set : sets) {
+      mask |= set.mask;
+    }
+    return OptionMetadata.of(type).cache().get(mask);
+  }
+
+  /** Gets the option set with the same options as the given EnumSet. */
+  public static <T extends Enum<T> & Option> OptionSet<T> of(EnumSet<T> options) {
+    // an empty EnumSet won't tell us its type; its complement will (unless the enum itself is empty)
+    var type = options.isEmpty()
+      ? EnumSet.complementOf(options).iterator().next().getDeclaringClass()
+      : options.iterator().next().getDeclaringClass();
+    var metadata = OptionMetadata.of(type);
+    var mask = 0L;
+    for (var option : options) {
+      mask |= metadata.values[option.ordinal()];
+    }
+    return metadata.cache().get(mask);
+  }
+
+  /** Copies the options in the given set into a new EnumSet. */
+  public static <T extends Enum<T> & Option> EnumSet<T> toEnumSet(OptionSet<T> options) {
+    var metadata = options.metadata();
+    var bits = options.mask & metadata.all;
+    if (bits == metadata.all) {
+      return EnumSet.allOf(metadata.type);
+    }
+    var set = EnumSet.noneOf(metadata.type);
+    for (; bits != 0; bits &= bits - 1) {
+      set.add(metadata.option(Long.numberOfTrailingZeros(bits)));
+    }
+    return set;
+  }
+
+  /** Collects a stream of options into an option set, by ORing their values (no intermediate collection). */
+  public static <T extends Enum<?> & Option> Collector<T, ?, OptionSet<T>> toOptionSet(Class<T> type) {
+    var metadata = OptionMetadata.of(type);
+    return Collector.of(
+      () -> new long[1],
+      (mask, option) -> mask[0] |= option.value(),
+      (a, b) -> {
+        a[0] |= b[0];
+        return a;
+      },
+      mask -> metadata.cache().get(mask[0]),
+      Collector.Characteristics.UNORDERED);
   }
 
+  /** Option enums, keyed by OptionSet subclass (so the reflection happens once per subclass). */
+  private static final ClassValue<Class<?>> TYPES = new ClassValue<>() {
+    @Override
+    protected Class<?> computeValue(Class<?> setType) {
+      if (
+        setType.getGenericSuperclass() instanceof ParameterizedType pType
+          && pType.getActualTypeArguments() instanceof Type[] tArgs
+          && tArgs.length > 0
+          && tArgs[0] instanceof Class<?> tClass) {
+        return tClass;
+      }
+      throw OptionSet.Error.InvalidOptionImplementation.throwable();
+    }
+  };
+
   /** The option set's integer value. */
   public final long mask;
 
-  private transient List<T> options = null;
+  private transient OptionMetadata<T> metadata;
 
   private transient Class<T> type;
 
   /** Canonical constructor. */
   public OptionSet(long mask) {
-    this.mask = mask;
+    this(mask, null, null);
+    this.created();
   }
   public OptionSet(int mask) {
     this((long) mask);
@@ -56,7 +177,7 @@ public abstract class OptionSet<T extends Enum<?> & Option> {
   /** Construct from option values. */
   @SafeVarargs
   public OptionSet(T ...options) {
-    this(Arrays.stream(options).map(T::value).reduce(0L, (a, b) -> a | b));
+    this(Masks.of(options));
   }
 
   /** Override this if you need to provide a default mask. */
@@ -64,19 +185,94 @@ public abstract class OptionSet<T extends Enum<?> & Option> {
     this(0L);
   }
 
-  private OptionSet(Class<T> type, long mask) {
-    this(mask);
+  /** Construct with an explicit Option enum (so the enum never needs to be discovered via reflection). */
+  protected OptionSet(Class<T> type, long mask) {
+    this(mask, type, null);
+    this.created();
+  }
+
+  /** For canonical instances (see {@link OptionSetCache}, which reports their creation itself). */
+  private OptionSet(OptionMetadata<T> metadata, long mask) {
+    this(mask, metadata.type, metadata);
+  }
+
+  private OptionSet(long mask, Class<T> type, OptionMetadata<T> metadata) {
+    this.mask = mask;
     this.type = type;
+    this.metadata = metadata;
   }
 
-  /** ANDs this set with the given option(s). */
+  /** ANDs this set with the given option. */
+  public final OptionSet<T> and(T option) {
+    return this.withMask(option.and(this.mask));
+  }
+  public final OptionSet<T> and(T a, T b) {
+    return this.withMask(this.mask & (a.value() | b.value()));
+  }
+  public final OptionSet<T> and(T a, T b, T c) {
+    return this.withMask(this.mask & (a.value() | b.value() | c.value()));
+  }
+  public final OptionSet<T> and(T a, T b, T c, T d) {
+    return this.withMask(this.mask & (a.value() | b.value() | c.value() | d.value()));
+  }
+
+  /** ANDs this set with the given option(s): keeps whichever of them are in this set. */
   @SafeVarargs
   public final OptionSet<T> and(T ...options) {
-    var newMask = this.mask;
-    for (var option : options) {
-      newMask = option.and(newMask);
+    return this.withMask(this.mask & Masks.of(options));
+  }
+
+  /** ANDs this set with the given mask. */
+  public final OptionSet<T> andMask(long mask) {
+    return this.withMask(this.mask & mask);
+  }
+
+  /**
+   * A read-only Set view of this option set.
+   *
+   * <p>The view reads the mask directly: contains is a single bit test, size is a bit count,
+   * and iteration visits only set bits.
+   */
+  public final Set<T> asSet() {
+    return new OptionSet.SetView<>(this.metadata(), this.mask & this.metadata().all);
+  }
+
+  /** NOTs this set, restricted to the enum's options (unlike {@link #not()}, which flips all 64 bits). */
+  public final OptionSet<T> complement() {
+    return this.withMask(~ this.mask & this.metadata().all);
+  }
+
+  /** Does this set include every option in the given set? */
+  public final boolean containsAll(OptionSet<T> other) {
+    return (this.mask & other.mask) == other.mask;
+  }
+
+  /** The options in this set, but not in the given set. */
+  public final OptionSet<T> difference(OptionSet<T> other) {
+    return this.withMask(this.mask & ~ other.mask);
+  }
+
+  /** Performs the given action for each option included in this set. */
+  @Override
+  public final void forEach(Consumer<? super T> action) {
+    var metadata = this.metadata();
+    for (var bits = this.mask & metadata.all; bits != 0; bits &= bits - 1) {
+      action.accept(metadata.option(Long.numberOfTrailingZeros(bits)));
     }
-    return new OptionSet<T>(this.type, newMask) {};
+  }
+
+  /** Does this option set include the given option? */
+  public final boolean has(T option) {
+    return option.in(this.mask);
+  }
+  public final boolean has(T a, T b) {
+    return Masks.has(this.mask, this.checked(a.value() | b.value()));
+  }
+  public final boolean has(T a, T b, T c) {
+    return Masks.has(this.mask, this.checked(a.value() | b.value() | c.value()));
+  }
+  public final boolean has(T a, T b, T c, T d) {
+    return Masks.has(this.mask, this.checked(a.value() | b.value() | c.value() | d.value()));
   }
 
   /** Does this option set include (all of) the given option(s)? */
@@ -90,6 +286,20 @@ public abstract class OptionSet<T extends Enum<?> & Option> {
     return true;
   }
 
+  /** Does this option set include (any of) the given option(s)? */
+  public final boolean hasAny(T option) {
+    return option.in(this.mask);
+  }
+  public final boolean hasAny(T a, T b) {
+    return Masks.hasAny(this.mask, this.checked(a.value() | b.value()));
+  }
+  public final boolean hasAny(T a, T b, T c) {
+    return Masks.hasAny(this.mask, this.checked(a.value() | b.value() | c.value()));
+  }
+  public final boolean hasAny(T a, T b, T c, T d) {
+    return Masks.hasAny(this.mask, this.checked(a.value() | b.value() | c.value() | d.value()));
+  }
+
   /** Does this option set include (any of) the given option(s)? */
   @SafeVarargs
   public final boolean hasAny(T ...options) {
@@ -101,65 +311,357 @@ public abstract class OptionSet<T extends Enum<?> & Option> {
     return false;
   }
 
+  /** Does this option set include (any of) the options in the given mask? */
+  public final boolean hasAnyMask(long mask) {
+    return Masks.hasAny(this.mask, this.checked(mask));
+  }
+
+  /** Does this option set include (all of) the options in the given mask? */
+  public final boolean hasMask(long mask) {
+    return Masks.has(this.mask, this.checked(mask));
+  }
+
+  /** The options in both this set and the given set. */
+  public final OptionSet<T> intersect(OptionSet<T> other) {
+    return this.withMask(this.mask & other.mask);
+  }
+
+  /** Does this set include any option in the given set? */
+  public final boolean intersects(OptionSet<T> other) {
+    return (this.mask & other.mask) != 0;
+  }
+
+  /** Is every option in this set also in the given set? */
+  public final boolean isSubsetOf(OptionSet<T> other) {
+    return (this.mask & ~ other.mask) == 0;
+  }
+
+  /** Iterates over the options included in this set. */
+  @Override
+  public final Iterator<T> iterator() {
+    return new OptionSet.BitIterator<>(this.metadata(), this.mask & this.metadata().all);
+  }
+
+  /**
+   * Finds the first bit, at or after the given bit, that is set and belongs to an option; or -1 if there is none.
+   *
+   * <p>This is an allocation-free cursor:
+   * {@code for (int bit = set.nextBit(0); bit >= 0; bit = set.nextBit(bit + 1)) { set.optionAt(bit)... }}
+   */
+  public final int nextBit(int fromBit) {
+    if (fromBit >= Long.SIZE) {
+      return -1;
+    }
+    var bits = this.mask & this.metadata().all & (-1L << fromBit);
+    return (bits == 0) ? -1 : Long.numberOfTrailingZeros(bits);
+  }
+
   /** NOTs this set. */
   public final OptionSet<T> not() {
-    return new OptionSet<T>(this.type, ~ this.mask) {};
+    return this.withMask(~ this.mask);
   }
 
   /** Lists all options that can be included in this set. */
   public final List<T> options() {
-    if (this.options == null) {
-      this.options = Collections.unmodifiableList(
-        Arrays.asList(this.optionsEnum().getEnumConstants()));
-    }
-    return this.options;
+    return this.metadata().options;
+  }
+
+  /** Gets the option at the given bit position, or null if there is none (whether or not it is in this set). */
+  public final T optionAt(int bit) {
+    return this.metadata().option(bit);
+  }
+
+  /** Streams the ordinals of the options included in this set. */
+  public final IntStream ordinals() {
+    return this.stream().mapToInt(T::ordinal);
+  }
+
+  /** ORs this set with the given option. */
+  public final OptionSet<T> or(T option) {
+    return this.withMask(option.or(this.mask));
+  }
+  public final OptionSet<T> or(T a, T b) {
+    return this.withMask(this.mask | a.value() | b.value());
+  }
+  public final OptionSet<T> or(T a, T b, T c) {
+    return this.withMask(this.mask | a.value() | b.value() | c.value());
+  }
+  public final OptionSet<T> or(T a, T b, T c, T d) {
+    return this.withMask(this.mask | a.value() | b.value() | c.value() | d.value());
   }
 
   /** ORs this set with the given option(s). */
+  @SafeVarargs
   public final OptionSet<T> or(T ...options) {
-    var newMask = mask;
+    var newMask = this.mask;
     for (var option : options) {
       newMask = option.or(newMask);
     }
-    return new OptionSet<T>(this.type, newMask) {};
+    return this.withMask(newMask);
+  }
+
+  /** ORs this set with the given mask. */
+  public final OptionSet<T> orMask(long mask) {
+    return this.withMask(this.mask | mask);
+  }
+
+  /** The number of options included in this set. */
+  public final int size() {
+    return Long.bitCount(this.mask & this.metadata().all);
+  }
+
+  /** Splits by bit range, so parallel streams divide the set evenly. */
+  @Override
+  public final Spliterator<T> spliterator() {
+    return new OptionSet.BitSpliterator<>(this.metadata(), this.mask & this.metadata().all);
+  }
+
+  /** Streams the options included in this set. */
+  public final Stream<T> stream() {
+    return StreamSupport.stream(this.spliterator(), false);
+  }
+
+  /** The options in exactly one of this set and the given set. */
+  public final OptionSet<T> symmetricDifference(OptionSet<T> other) {
+    return this.withMask(this.mask ^ other.mask);
   }
 
   /** Lists the options included in this set. */
   public final List<T> toOptions() {
-    var list = new ArrayList<T>();
-    for (var option : this.options()) {
-      if (option.in(this.mask)) {
-        list.add(option);
-      }
+    var metadata = this.metadata();
+    var bits = this.mask & metadata.all;
+    var list = new ArrayList<T>(Long.bitCount(bits));
+    for (; bits != 0; bits &= bits - 1) {
+      list.add(metadata.option(Long.numberOfTrailingZeros(bits)));
     }
     return list;
   }
 
+  /** The options in either this set or the given set. */
+  public final OptionSet<T> union(OptionSet<T> other) {
+    return this.withMask(this.mask | other.mask);
+  }
+
+  /** XORs this set with the given option. */
+  public final OptionSet<T> xor(T option) {
+    return this.withMask(option.xor(this.mask));
+  }
+  public final OptionSet<T> xor(T a, T b) {
+    return this.withMask(this.mask ^ a.value() ^ b.value());
+  }
+  public final OptionSet<T> xor(T a, T b, T c) {
+    return this.withMask(this.mask ^ a.value() ^ b.value() ^ c.value());
+  }
+  public final OptionSet<T> xor(T a, T b, T c, T d) {
+    return this.withMask(this.mask ^ a.value() ^ b.value() ^ c.value() ^ d.value());
+  }
+
   /** XORs this set with the given option(s). */
+  @SafeVarargs
   public final OptionSet<T> xor(T ...options) {
     var newMask = this.mask;
     for (var option : options) {
       newMask = option.xor(newMask);
     }
-    return new OptionSet<T>(this.type, newMask) {};
+    return this.withMask(newMask);
+  }
+
+  /** XORs this set with the given mask. */
+  public final OptionSet<T> xorMask(long mask) {
+    return this.withMask(this.mask ^ mask);
+  }
+
+  /** Sets are equal when they're for the same Option enum and have the same mask. */
+  @Override
+  public final boolean equals(Object other) {
+    return other instanceof OptionSet<?> set
+      && set.mask == this.mask
+      && set.optionsEnum() == this.optionsEnum();
+  }
+
+  @Override
+  public final int hashCode() {
+    return (int) Masks.hash(this.mask) ^ this.optionsEnum().hashCode();
+  }
+
+  OptionMetadata<T> metadata() {
+    if (this.metadata == null) {
+      this.metadata = OptionMetadata.of(this.optionsEnum());
+    }
+    return this.metadata;
+  }
+
+  /** Emits a Created event, when events are enabled. */
+  private void created() {
+    if (OptionStats.EVENTS) {
+      Class<?> type;
+      try {
+        type = this.optionsEnum();
+      } catch (RuntimeException e) {
+        // e.g., a generic subclass, whose enum can only be found once it's passed in; name the subclass instead
+        type = this.getClass();
+      }
+      OptionStats.created(type, this.mask);
+    }
+  }
+
+  /** Counts a check of the given bits, when stats are enabled. */
+  private long checked(long bits) {
+    if (OptionStats.ENABLED) {
+      OptionStats.checked(this.metadata(), bits);
+    }
+    return bits;
   }
 
   @SuppressWarnings("unchecked")
   private Class<T> optionsEnum() {
     if (this.type == null) {
-      if (
-        this.getClass().getGenericSuperclass() instanceof ParameterizedType pType
-          && pType.getActualTypeArguments() instanceof Type[] tArgs
-          && tArgs.length > 0
-          && tArgs[0] instanceof Class<?> tClass) {
-        this.type = (Class<T>) tClass;
-      } else {
-        throw OptionSet.Error.InvalidOptionImplementation.throwable();
-      }
+      this.type = (Class<T>) TYPES.get(this.getClass());
     }
     return this.type;
   }
 
+  /** Returns this set if the mask is unchanged; the canonical set for the mask otherwise. */
+  private OptionSet<T> withMask(long mask) {
+    if (mask == this.mask) {
+      return this;
+    }
+    if (OptionStats.ENABLED) {
+      OptionStats.changed(this.metadata(), this.mask, mask);
+    }
+    return this.metadata().cache().get(mask);
+  }
+
+  /** The concrete set returned by of/and/or/xor/not (one class, rather than one per call site). */
+  static final class Simple<T extends Enum<?> & Option> extends OptionSet<T> {
+    Simple(OptionMetadata<T> metadata, long mask) {
+      super(metadata, mask);
+    }
+  }
+
+  /** Read-only Set over a mask. */
+  private static final class SetView<T extends Enum<?> & Option> extends AbstractSet<T> {
+
+    private final OptionMetadata<T> metadata;
+
+    private final long bits;
+
+    private SetView(OptionMetadata<T> metadata, long bits) {
+      this.metadata = metadata;
+      this.bits = bits;
+    }
+
+    @Override
+    public boolean contains(Object other) {
+      return this.metadata.type.isInstance(other)
+        && (this.metadata.values[((Enum<?>) other).ordinal()] & this.bits) != 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return this.bits == 0;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return new OptionSet.BitIterator<>(this.metadata, this.bits);
+    }
+
+    @Override
+    public int size() {
+      return Long.bitCount(this.bits);
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+      return new OptionSet.BitSpliterator<>(this.metadata, this.bits);
+    }
+  }
+
+  /** Iterates over set bits, lowest first. */
+  private static final class BitIterator<T extends Enum<?> & Option> implements Iterator<T> {
+
+    private final OptionMetadata<T> metadata;
+
+    private long bits;
+
+    private BitIterator(OptionMetadata<T> metadata, long bits) {
+      this.metadata = metadata;
+      this.bits = bits;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return this.bits != 0;
+    }
+
+    @Override
+    public T next() {
+      if (this.bits == 0) {
+        throw new NoSuchElementException();
+      }
+      var bit = Long.numberOfTrailingZeros(this.bits);
+      this.bits &= this.bits - 1;
+      return this.metadata.option(bit);
+    }
+  }
+
+  /** Traverses set bits, lowest first; splits the remaining bits at the middle of their range. */
+  private static final class BitSpliterator<T extends Enum<?> & Option> implements Spliterator<T> {
+
+    private final OptionMetadata<T> metadata;
+
+    private long bits;
+
+    private BitSpliterator(OptionMetadata<T> metadata, long bits) {
+      this.metadata = metadata;
+      this.bits = bits;
+    }
+
+    @Override
+    public int characteristics() {
+      return Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SIZED | Spliterator.SUBSIZED
+        | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+    }
+
+    @Override
+    public long estimateSize() {
+      return Long.bitCount(this.bits);
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+      var bits = this.bits;
+      this.bits = 0;
+      for (; bits != 0; bits &= bits - 1) {
+        action.accept(this.metadata.option(Long.numberOfTrailingZeros(bits)));
+      }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      if (this.bits == 0) {
+        return false;
+      }
+      var bit = Long.numberOfTrailingZeros(this.bits);
+      this.bits &= this.bits - 1;
+      action.accept(this.metadata.option(bit));
+      return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+      if (Long.bitCount(this.bits) < 2) {
+        return null;
+      }
+      var low = Long.numberOfTrailingZeros(this.bits);
+      var high = Long.SIZE - 1 - Long.numberOfLeadingZeros(this.bits);
+      var prefix = this.bits & ((1L << ((low + high + 1) >>> 1)) - 1);
+      this.bits &= ~ prefix;
+      return new OptionSet.BitSpliterator<>(this.metadata, prefix);
+    }
+  }
+
   /** You're doing it wrong. */
   public enum Error implements Signal<RuntimeException> {
 
@@ -177,6 +679,30 @@ public abstract class OptionSet<T extends Enum<?> & Option> {
       public final String description() {
         return "OptionSet must be parameterized with an Enum that implements Option.";
       }
+    },
+
+    /** Thrown when an Option enum's values are not distinct powers of two. */
+    InvalidOptionValue {
+      @Override
+      public final String description() {
+        return "Each Option's value must be a distinct power of two.";
+      }
+    },
+
+    /** Thrown when a narrow (byte/short/int) column is used with an enum whose values don't fit. */
+    MaskTooNarrow {
+      @Override
+      public final String description() {
+        return "The Option enum's values do not fit in this mask width; use a wider column.";
+      }
+    },
+
+    /** Thrown when an OptionSet is used with an enum of more than 64 options. */
+    TooManyOptions {
+      @Override
+      public final String description() {
+        return "OptionSet supports up to 64 options; use LargeOptionSet for larger enums.";
+      }
     };
   }
 }
@@ -0,0 +1,91 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+/**
+ * A column of option masks (one per row), at whatever width fits the Option enum.
+ *
+ * <p>Filters return a row bitmap (row {@code r} is bit {@code r % 64} of word {@code r / 64}),
+ * counts return the number of matching rows, and or/and update every row.
+ */
+public sealed interface OptionSetArray<T extends Enum<?> & Option>
+  permits PackedOptionSet, OptionSetColumn {
+
+  /** Builds an empty column of the narrowest width that fits the given Option enum's values. */
+  static <T extends Enum<?> & Option> OptionSetArray<T> of(Class<T> type, int rows) {
+    var width = Long.SIZE - Long.numberOfLeadingZeros(OptionMetadata.of(type).all);
+    if (width <= ByteOptionSet.WIDTH) {
+      return new ByteOptionSet<>(type, rows);
+    }
+    if (width <= ShortOptionSet.WIDTH) {
+      return new ShortOptionSet<>(type, rows);
+    }
+    if (width <= IntOptionSet.WIDTH) {
+      return new IntOptionSet<>(type, rows);
+    }
+    return new OptionSetColumn<>(type, rows);
+  }
+
+  /** The number of rows in this column. */
+  int size();
+
+  /** Gets the mask at the given row. */
+  long get(int row);
+
+  /** Gets the (canonical) option set at the given row. */
+  OptionSet<T> getSet(int row);
+
+  /** Does the given row include (all of) the options in the given mask? */
+  default boolean has(int row, long mask) {
+    return (this.get(row) & mask) == mask;
+  }
+
+  /** Does the given row include (any of) the options in the given mask? */
+  default boolean hasAny(int row, long mask) {
+    return (this.get(row) & mask) != 0;
+  }
+
+  /** Sets the mask at the given row. */
+  void set(int row, long mask);
+
+  /** Sets the options at the given row. */
+  void set(int row, OptionSet<T> options);
+
+  /** Rows that include (all of) the options in the given mask. */
+  long[] filterAll(long mask);
+
+  /** Rows that include (any of) the options in the given mask. */
+  long[] filterAny(long mask);
+
+  /** Rows that include none of the options in the given mask. */
+  long[] filterNone(long mask);
+
+  /** Counts rows that include (all of) the options in the given mask. */
+  long countAll(long mask);
+
+  /** Counts rows that include (any of) the options in the given mask. */
+  long countAny(long mask);
+
+  /** Counts rows that include none of the options in the given mask. */
+  long countNone(long mask);
+
+  /** ORs every row with the given mask. */
+  void orAll(long mask);
+
+  /** ANDs every row with the given mask. */
+  void andAll(long mask);
+}
@@ -0,0 +1,79 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Canonical (flyweight) OptionSet instances for a single Option enum.
+ *
+ * <p>For enums with up to {@link #MAX_TABLE_OPTIONS} options, every combination of options is interned up front,
+ * so equal sets are always the same instance.
+ * Other masks (larger enums, or masks with bits outside the enum) go through a bounded, direct-mapped cache of
+ * weak references: a colliding mask simply evicts the previous entry.
+ * Those instances are shared on a best-effort basis only; don't rely on identity for them.
+ *
+ * <p>With {@link OptionStats#EVENTS} on, only the weakly cached instances emit Created events
+ * (interning the table up front would otherwise emit one for every combination of options).
+ */
+final class OptionSetCache<T extends Enum<?> & Option> {
+
+  /** The largest enum for which every combination is interned. */
+  static final int MAX_TABLE_OPTIONS = 12;
+
+  /** Number of weak cache slots (a power of two). */
+  static final int SLOTS = 1 << 10;
+
+  private final OptionMetadata<T> metadata;
+
+  /** Interned sets, indexed by {@code Long.compress(mask, all)}; null for large enums. */
+  private final OptionSet<T>[] table;
+
+  private final AtomicReferenceArray<WeakReference<OptionSet<T>>> slots = new AtomicReferenceArray<>(SLOTS);
+
+  @SuppressWarnings("unchecked")
+  OptionSetCache(OptionMetadata<T> metadata) {
+    this.metadata = metadata;
+    if (metadata.constants.length <= MAX_TABLE_OPTIONS) {
+      this.table = (OptionSet<T>[]) new OptionSet<?>[1 << metadata.constants.length];
+      for (int i = 0; i < this.table.length; i++) {
+        this.table[i] = new OptionSet.Simple<>(metadata, Long.expand(i, metadata.all));
+      }
+    } else {
+      this.table = null;
+    }
+  }
+
+  /** Gets the canonical set for the given mask. */
+  OptionSet<T> get(long mask) {
+    if (this.table != null && (mask & ~ this.metadata.all) == 0) {
+      return this.table[(int) Long.compress(mask, this.metadata.all)];
+    }
+    var slot = (int) ((mask * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - Integer.numberOfTrailingZeros(SLOTS)));
+    var ref = this.slots.getAcquire(slot);
+    if (ref != null && ref.get() instanceof OptionSet<T> set && set.mask == mask) {
+      return set;
+    }
+    var set = new OptionSet.Simple<>(this.metadata, mask);
+    this.slots.setRelease(slot, new WeakReference<>(set));
+    if (OptionStats.EVENTS) {
+      OptionStats.created(this.metadata.type, mask);
+    }
+    return set;
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import red.enspi.exceptable.Exceptable.Signal;
+
+/**
+ * Reads and writes option masks in a compact binary form, one at a time or as a stream.
+ *
+ * <p>Masks are written either as unsigned LEB128 varints ({@link Encoding#VARINT}: one byte per 7 bits, so
+ * small masks are a single byte), or little-endian in the fewest whole bytes that fit the enum's highest option
+ * bit ({@link Encoding#FIXED}).
+ *
+ * <p>A stream may start with a header recording the encoding and the enum's {@link OptionSchema}.
+ * {@link #readHeader} returns a codec for the stream, which translates masks (with a {@link MaskRemapper})
+ * if the enum has changed since they were written.
+ *
+ * <p>Header layout: magic ({@code "OPTC"}), version (byte), encoding (byte), fixed width (byte), then the schema.
+ */
+public final class OptionSetCodec<T extends Enum<?> & Option> {
+
+  /** How each mask is written. */
+  public enum Encoding { VARINT, FIXED }
+
+  static final int MAGIC = 0x4F505443;
+
+  static final byte VERSION = 1;
+
+  /** Builds a codec for the given Option enum. */
+  public static <T extends Enum<?> & Option> OptionSetCodec<T> of(Class<T> type, Encoding encoding) {
+    var metadata = OptionMetadata.of(type);
+    var width = Math.max(1, (Long.SIZE - Long.numberOfLeadingZeros(metadata.all) + 7) >>> 3);
+    return new OptionSetCodec<>(metadata, encoding, width, null);
+  }
+
+  /** Reads a stream header, returning a codec for the masks that follow it. */
+  public static <T extends Enum<?> & Option> OptionSetCodec<T> readHeader(ByteBuffer buffer, Class<T> type) {
+    if (buffer.remaining() < 7 || buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+      throw OptionSetCodec.Error.InvalidHeader.throwable();
+    }
+    var encoding = buffer.get();
+    var width = buffer.get();
+    if (encoding < 0 || encoding >= Encoding.values().length || width < 1 || width > Long.BYTES) {
+      throw OptionSetCodec.Error.InvalidHeader.throwable();
+    }
+    var remapper = MaskRemapper.to(OptionSchema.read(buffer), type);
+    return new OptionSetCodec<>(
+      OptionMetadata.of(type),
+      Encoding.values()[encoding],
+      width,
+      remapper.isIdentity() ? null : remapper);
+  }
+
+  /** The number of bytes the given mask takes as a varint. */
+  public static int varintSize(long mask) {
+    // one byte per started group of 7 bits (and one byte for zero)
+    return (Long.SIZE - Long.numberOfLeadingZeros(mask | 1) + 6) / 7;
+  }
+
+  /** Reads an unsigned LEB128 varint (rejecting any that would overflow 64 bits). */
+  public static long readVarint(ByteBuffer buffer) {
+    var value = 0L;
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      var b = buffer.get();
+      if (shift == Long.SIZE - 1 && (b & 0xFF) > 1) {
+        // the 10th byte holds only bit 63
+        throw OptionSetCodec.Error.InvalidVarint.throwable();
+      }
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw OptionSetCodec.Error.InvalidVarint.throwable();
+  }
+
+  /** Writes an unsigned LEB128 varint. */
+  public static void writeVarint(ByteBuffer buffer, long value) {
+    while ((value & ~ 0x7FL) != 0) {
+      buffer.put((byte) (value | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private final OptionMetadata<T> metadata;
+
+  private final Encoding encoding;
+
+  /** Bytes per mask, for fixed-width encoding. */
+  private final int width;
+
+  /** Translates masks read from an older schema; null if none is needed. */
+  private final MaskRemapper remapper;
+
+  private OptionSetCodec(OptionMetadata<T> metadata, Encoding encoding, int width, MaskRemapper remapper) {
+    this.metadata = metadata;
+    this.encoding = encoding;
+    this.width = width;
+    this.remapper = remapper;
+  }
+
+  /** The number of bytes the given mask takes. */
+  public int encodedSize(long mask) {
+    return (this.encoding == Encoding.VARINT) ? OptionSetCodec.varintSize(mask) : this.width;
+  }
+
+  /** The number of bytes {@link #writeHeader} needs. */
+  public int headerSize() {
+    return 7 + OptionSchema.of(this.metadata.type).encodedSize();
+  }
+
+  /** Does this codec translate masks (written under an older schema)? */
+  public boolean isRemapping() {
+    return this.remapper != null;
+  }
+
+  /** Reads one mask. */
+  public long read(ByteBuffer buffer) {
+    var mask = (this.encoding == Encoding.VARINT) ? OptionSetCodec.readVarint(buffer) : this.readFixed(buffer);
+    return (this.remapper == null) ? mask : this.remapper.remap(mask);
+  }
+
+  /**
+   * Reads masks into [from, to) of the given array, stopping early at the end of the buffer; returns the count.
+   *
+   * <p>A mask cut off by the end of the buffer is left unread (the buffer's position is left at its start),
+   * so reading can resume once the rest of it arrives.
+   */
+  public int readAll(ByteBuffer buffer, long[] masks, int from, int to) {
+    var i = from;
+    if (this.encoding == Encoding.FIXED) {
+      to = Math.min(to, from + buffer.remaining() / this.width);
+      for (; i < to; i++) {
+        masks[i] = this.readFixed(buffer);
+      }
+    } else {
+      for (; i < to && buffer.hasRemaining(); i++) {
+        var position = buffer.position();
+        try {
+          masks[i] = OptionSetCodec.readVarint(buffer);
+        } catch (BufferUnderflowException e) {
+          buffer.position(position);
+          break;
+        }
+      }
+    }
+    if (this.remapper != null) {
+      this.remapper.remap(masks, from, i);
+    }
+    return i - from;
+  }
+
+  /** Reads one (canonical) option set. */
+  public OptionSet<T> readSet(ByteBuffer buffer) {
+    return this.metadata.cache().get(this.read(buffer));
+  }
+
+  /** Writes one mask. */
+  public void write(ByteBuffer buffer, long mask) {
+    if (this.encoding == Encoding.VARINT) {
+      OptionSetCodec.writeVarint(buffer, mask);
+      return;
+    }
+    for (int i = 0; i < this.width; i++) {
+      buffer.put((byte) (mask >>> (i << 3)));
+    }
+  }
+  public void write(ByteBuffer buffer, OptionSet<T> options) {
+    this.write(buffer, options.mask);
+  }
+
+  /** Writes masks [from, to) of the given array. */
+  public void writeAll(ByteBuffer buffer, long[] masks, int from, int to) {
+    for (int i = from; i < to; i++) {
+      this.write(buffer, masks[i]);
+    }
+  }
+
+  /** Writes a stream header, recording this codec's encoding and the enum's current schema. */
+  public void writeHeader(ByteBuffer buffer) {
+    buffer.putInt(MAGIC);
+    buffer.put(VERSION);
+    buffer.put((byte) this.encoding.ordinal());
+    buffer.put((byte) this.width);
+    OptionSchema.of(this.metadata.type).write(buffer);
+  }
+
+  private long readFixed(ByteBuffer buffer) {
+    var mask = 0L;
+    for (int i = 0; i < this.width; i++) {
+      mask |= (buffer.get() & 0xFFL) << (i << 3);
+    }
+    return mask;
+  }
+
+  /** You're doing it wrong. */
+  public enum Error implements Signal<RuntimeException> {
+
+    /** Thrown when a stream doesn't start with a valid header. */
+    InvalidHeader {
+      @Override
+      public final String description() {
+        return "The data does not start with a valid option codec header.";
+      }
+    },
+
+    /** Thrown when a varint is longer than 64 bits. */
+    InvalidVarint {
+      @Override
+      public final String description() {
+        return "The data contains a malformed varint.";
+      }
+    };
+  }
+}
@@ -0,0 +1,279 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A column of option masks (one per row), stored as a primitive array.
+ *
+ * <p>Bulk operations work on the whole column at once:
+ * filters return a row bitmap (row {@code r} is bit {@code r % 64} of word {@code r / 64}),
+ * counts return the number of matching rows, and or/and update every row.
+ * Columns of at least {@link #PARALLEL_THRESHOLD} rows are processed in parallel, in the common fork/join pool.
+ *
+ * <p>The kernels are branch-free counted loops, so C2 can unroll and vectorize them.
+ * Columns are not thread-safe: don't update rows while a bulk operation is running.
+ */
+public final class OptionSetColumn<T extends Enum<?> & Option> implements OptionSetArray<T> {
+
+  /** Columns with at least this many rows are processed in parallel. */
+  public static final int PARALLEL_THRESHOLD = 1 << 16;
+
+  /** Rows per fork/join leaf task (a multiple of 64, so tasks never share a bitmap word). */
+  static final int GRAIN = 1 << 14;
+
+  private static final int FILTER_ALL = 0;
+  private static final int FILTER_ANY = 1;
+  private static final int FILTER_NONE = 2;
+  private static final int COUNT_ALL = 3;
+  private static final int COUNT_ANY = 4;
+  private static final int COUNT_NONE = 5;
+  private static final int OR = 6;
+  private static final int AND = 7;
+
+  private final OptionMetadata<T> metadata;
+
+  private final long[] masks;
+
+  /** Builds an empty column with the given number of rows. */
+  public OptionSetColumn(Class<T> type, int rows) {
+    this(type, new long[rows]);
+  }
+
+  /** Builds a column over the given masks (the array is used directly, not copied). */
+  public OptionSetColumn(Class<T> type, long[] masks) {
+    this.metadata = OptionMetadata.of(type);
+    this.masks = masks;
+  }
+
+  /** The number of rows in this column. */
+  public int size() {
+    return this.masks.length;
+  }
+
+  /** Gets the mask at the given row. */
+  public long get(int row) {
+    return this.masks[row];
+  }
+
+  /** Gets the (canonical) option set at the given row. */
+  public OptionSet<T> getSet(int row) {
+    return this.metadata.cache().get(this.masks[row]);
+  }
+
+  /** Sets the mask at the given row. */
+  public void set(int row, long mask) {
+    this.masks[row] = mask;
+  }
+
+  /** Sets the options at the given row. */
+  public void set(int row, OptionSet<T> options) {
+    this.masks[row] = options.mask;
+  }
+
+  /** Rows that include (all of) the options in the given mask. */
+  public long[] filterAll(long mask) {
+    return this.filter(FILTER_ALL, mask);
+  }
+  @SafeVarargs
+  public final long[] filterAll(T ...options) {
+    return this.filterAll(Masks.of(options));
+  }
+
+  /** Rows that include (any of) the options in the given mask. */
+  public long[] filterAny(long mask) {
+    return this.filter(FILTER_ANY, mask);
+  }
+  @SafeVarargs
+  public final long[] filterAny(T ...options) {
+    return this.filterAny(Masks.of(options));
+  }
+
+  /** Rows that include none of the options in the given mask. */
+  public long[] filterNone(long mask) {
+    return this.filter(FILTER_NONE, mask);
+  }
+  @SafeVarargs
+  public final long[] filterNone(T ...options) {
+    return this.filterNone(Masks.of(options));
+  }
+
+  /** Counts rows that include (all of) the options in the given mask. */
+  public long countAll(long mask) {
+    return this.run(COUNT_ALL, mask, null);
+  }
+  @SafeVarargs
+  public final long countAll(T ...options) {
+    return this.countAll(Masks.of(options));
+  }
+
+  /** Counts rows that include (any of) the options in the given mask. */
+  public long countAny(long mask) {
+    return this.run(COUNT_ANY, mask, null);
+  }
+  @SafeVarargs
+  public final long countAny(T ...options) {
+    return this.countAny(Masks.of(options));
+  }
+
+  /** Counts rows that include none of the options in the given mask. */
+  public long countNone(long mask) {
+    return this.run(COUNT_NONE, mask, null);
+  }
+  @SafeVarargs
+  public final long countNone(T ...options) {
+    return this.countNone(Masks.of(options));
+  }
+
+  /** ORs every row with the given mask. */
+  public void orAll(long mask) {
+    this.run(OR, mask, null);
+  }
+  @SafeVarargs
+  public final void orAll(T ...options) {
+    this.orAll(Masks.of(options));
+  }
+
+  /** ANDs every row with the given mask. */
+  public void andAll(long mask) {
+    this.run(AND, mask, null);
+  }
+
+  private long[] filter(int op, long mask) {
+    var bitmap = new long[(this.masks.length + Long.SIZE - 1) >>> 6];
+    this.run(op, mask, bitmap);
+    return bitmap;
+  }
+
+  private long run(int op, long mask, long[] bitmap) {
+    if (this.masks.length < PARALLEL_THRESHOLD) {
+      return OptionSetColumn.kernel(op, this.masks, mask, bitmap, 0, this.masks.length);
+    }
+    return ForkJoinPool.commonPool().invoke(new OptionSetColumn.Task(op, this.masks, mask, bitmap, 0, this.masks.length));
+  }
+
+  /** Runs the given operation over rows [from, to); from must be a multiple of 64. */
+  private static long kernel(int op, long[] masks, long mask, long[] bitmap, int from, int to) {
+    return switch (op) {
+      case FILTER_ALL, FILTER_ANY, FILTER_NONE -> {
+        for (int base = from; base < to; base += Long.SIZE) {
+          bitmap[base >>> 6] = OptionSetColumn.word(op, masks, mask, base, Math.min(base + Long.SIZE, to));
+        }
+        yield 0L;
+      }
+      case COUNT_ALL -> {
+        var count = 0L;
+        for (int i = from; i < to; i++) {
+          var missing = (masks[i] & mask) ^ mask;
+          count += ((missing | - missing) >>> 63) ^ 1;
+        }
+        yield count;
+      }
+      case COUNT_ANY -> {
+        var count = 0L;
+        for (int i = from; i < to; i++) {
+          var common = masks[i] & mask;
+          count += (common | - common) >>> 63;
+        }
+        yield count;
+      }
+      case COUNT_NONE -> {
+        var count = 0L;
+        for (int i = from; i < to; i++) {
+          var common = masks[i] & mask;
+          count += ((common | - common) >>> 63) ^ 1;
+        }
+        yield count;
+      }
+      case OR -> {
+        for (int i = from; i < to; i++) {
+          masks[i] |= mask;
+        }
+        yield 0L;
+      }
+      case AND -> {
+        for (int i = from; i < to; i++) {
+          masks[i] &= mask;
+        }
+        yield 0L;
+      }
+      default -> throw new IllegalStateException();
+    };
+  }
+
+  /** Builds one bitmap word, for rows [base, end). */
+  private static long word(int op, long[] masks, long mask, int base, int end) {
+    var word = 0L;
+    switch (op) {
+      case FILTER_ALL -> {
+        for (int i = base; i < end; i++) {
+          var missing = (masks[i] & mask) ^ mask;
+          word |= (((missing | - missing) >>> 63) ^ 1) << (i - base);
+        }
+      }
+      case FILTER_ANY -> {
+        for (int i = base; i < end; i++) {
+          var common = masks[i] & mask;
+          word |= ((common | - common) >>> 63) << (i - base);
+        }
+      }
+      default -> {
+        for (int i = base; i < end; i++) {
+          var common = masks[i] & mask;
+          word |= (((common | - common) >>> 63) ^ 1) << (i - base);
+        }
+      }
+    }
+    return word;
+  }
+
+  /** Splits a row range until it is at most GRAIN rows, then runs the kernel; results are summed. */
+  private static final class Task extends RecursiveTask<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int op;
+    private final long[] masks;
+    private final long mask;
+    private final long[] bitmap;
+    private final int from;
+    private final int to;
+
+    private Task(int op, long[] masks, long mask, long[] bitmap, int from, int to) {
+      this.op = op;
+      this.masks = masks;
+      this.mask = mask;
+      this.bitmap = bitmap;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Long compute() {
+      if (this.to - this.from <= GRAIN) {
+        return OptionSetColumn.kernel(this.op, this.masks, this.mask, this.bitmap, this.from, this.to);
+      }
+      var middle = this.from + (((this.to - this.from) >>> 1) & - Long.SIZE);
+      var high = new OptionSetColumn.Task(this.op, this.masks, this.mask, this.bitmap, middle, this.to);
+      high.fork();
+      var low = new OptionSetColumn.Task(this.op, this.masks, this.mask, this.bitmap, this.from, middle).compute();
+      return low + high.join();
+    }
+  }
+}
@@ -0,0 +1,372 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import red.enspi.exceptable.Exceptable.Signal;
+
+/**
+ * Parses and formats option lists like {@code "Red,Blue|Yellow"}, for a single Option enum.
+ *
+ * <p>Option names are compiled into a perfect hash table when the format is built, so parsing a token is one
+ * hash over its characters plus one comparison; slices of {@code CharSequence}s and (UTF-8) {@code byte[]}s
+ * are parsed in place, without allocating substrings.
+ * Whitespace around names is ignored, as are empty tokens; unknown names fail with {@link Error#UnknownOption}.
+ *
+ * <p>Parsed Strings are also remembered in a small direct-mapped cache, so repeated inputs (e.g., the same
+ * header on every request) skip parsing entirely.
+ *
+ * <p>Formats are immutable and thread-safe; {@code withSeparators} and {@code ignoringCase} return new ones.
+ * The first separator is used when formatting.
+ */
+public final class OptionSetFormat<T extends Enum<?> & Option> {
+
+  /** Separators used by {@link #of}. */
+  public static final String DEFAULT_SEPARATORS = ",|";
+
+  /** Number of parse cache slots (a power of two). */
+  static final int CACHE_SLOTS = 1 << 8;
+
+  /** Builds a case-sensitive format for the given Option enum, using {@link #DEFAULT_SEPARATORS}. */
+  public static <T extends Enum<?> & Option> OptionSetFormat<T> of(Class<T> type) {
+    return new OptionSetFormat<>(OptionMetadata.of(type), DEFAULT_SEPARATORS, false);
+  }
+
+  private final OptionMetadata<T> metadata;
+
+  private final String separators;
+
+  /** Separator flags, indexed by (ASCII) character. */
+  private final boolean[] isSeparator = new boolean[128];
+
+  private final boolean ignoreCase;
+
+  private final PerfectHash chars;
+
+  private final PerfectHash bytes;
+
+  /** UTF-8 option names, indexed by ordinal. */
+  private final byte[][] utf8;
+
+  private final AtomicReferenceArray<Parsed> cache = new AtomicReferenceArray<>(CACHE_SLOTS);
+
+  private OptionSetFormat(OptionMetadata<T> metadata, String separators, boolean ignoreCase) {
+    if (separators.isEmpty()) {
+      throw new IllegalArgumentException("at least one separator is required");
+    }
+    for (int i = 0; i < separators.length(); i++) {
+      var separator = separators.charAt(i);
+      if (separator >= 128 || Character.isJavaIdentifierPart(separator) || separator == ' ' || separator == '\t') {
+        throw new IllegalArgumentException("separators must be ASCII punctuation");
+      }
+      this.isSeparator[separator] = true;
+    }
+    this.metadata = metadata;
+    this.separators = separators;
+    this.ignoreCase = ignoreCase;
+    var names = new int[metadata.constants.length][];
+    var encoded = new int[metadata.constants.length][];
+    this.utf8 = new byte[metadata.constants.length][];
+    for (var option : metadata.constants) {
+      var name = option.name();
+      var bytes = name.getBytes(StandardCharsets.UTF_8);
+      this.utf8[option.ordinal()] = bytes;
+      names[option.ordinal()] = new int[name.length()];
+      for (int i = 0; i < name.length(); i++) {
+        names[option.ordinal()][i] = PerfectHash.fold(name.charAt(i), ignoreCase, false);
+      }
+      encoded[option.ordinal()] = new int[bytes.length];
+      for (int i = 0; i < bytes.length; i++) {
+        encoded[option.ordinal()][i] = PerfectHash.fold(bytes[i] & 0xFF, ignoreCase, true);
+      }
+    }
+    for (int i = 0; i < names.length; i++) {
+      for (int j = i + 1; j < names.length; j++) {
+        if (Arrays.equals(names[i], names[j])) {
+          throw OptionSetFormat.Error.AmbiguousNames.throwable();
+        }
+      }
+    }
+    this.chars = new PerfectHash(names, ignoreCase, false);
+    this.bytes = new PerfectHash(encoded, ignoreCase, true);
+  }
+
+  /** A format like this one, but matching names regardless of case (non-ASCII names match exactly in bytes). */
+  public OptionSetFormat<T> ignoringCase() {
+    return new OptionSetFormat<>(this.metadata, this.separators, true);
+  }
+
+  /** A format like this one, but splitting on the given (ASCII punctuation) separators. */
+  public OptionSetFormat<T> withSeparators(String separators) {
+    return new OptionSetFormat<>(this.metadata, separators, this.ignoreCase);
+  }
+
+  /** Formats the given mask, e.g., {@code "Red,Blue"}. */
+  public String format(long mask) {
+    return this.format(mask, new StringBuilder()).toString();
+  }
+  public String format(OptionSet<T> options) {
+    return this.format(options.mask);
+  }
+
+  /** Appends the names of the options in the given mask (in bit order) to the given builder. */
+  public StringBuilder format(long mask, StringBuilder to) {
+    var separator = this.separators.charAt(0);
+    var first = true;
+    for (var bits = mask & this.metadata.all; bits != 0; bits &= bits - 1) {
+      if (! first) {
+        to.append(separator);
+      }
+      to.append(this.metadata.option(Long.numberOfTrailingZeros(bits)).name());
+      first = false;
+    }
+    return to;
+  }
+  public StringBuilder format(OptionSet<T> options, StringBuilder to) {
+    return this.format(options.mask, to);
+  }
+
+  /** Writes the (UTF-8) names of the options in the given mask (in bit order) to the given buffer. */
+  public ByteBuffer format(long mask, ByteBuffer to) {
+    var separator = (byte) this.separators.charAt(0);
+    var first = true;
+    for (var bits = mask & this.metadata.all; bits != 0; bits &= bits - 1) {
+      if (! first) {
+        to.put(separator);
+      }
+      to.put(this.utf8[this.metadata.ordinalByBit[Long.numberOfTrailingZeros(bits)]]);
+      first = false;
+    }
+    return to;
+  }
+  public ByteBuffer format(OptionSet<T> options, ByteBuffer to) {
+    return this.format(options.mask, to);
+  }
+
+  /** Parses the given text into a mask. */
+  public long parse(CharSequence text) {
+    if (text instanceof String string) {
+      var slot = (string.hashCode() * 0x9E3779B9) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(CACHE_SLOTS));
+      var parsed = this.cache.getAcquire(slot);
+      if (parsed != null && parsed.text.equals(string)) {
+        return parsed.mask;
+      }
+      var mask = this.parse(string, 0, string.length());
+      this.cache.setRelease(slot, new Parsed(string, mask));
+      return mask;
+    }
+    return this.parse(text, 0, text.length());
+  }
+
+  /** Parses the characters in [from, to) of the given text into a mask. */
+  public long parse(CharSequence text, int from, int to) {
+    var mask = 0L;
+    var start = from;
+    for (int i = from; i <= to; i++) {
+      if (i == to || this.separator(text.charAt(i))) {
+        var end = i;
+        while (start < end && OptionSetFormat.blank(text.charAt(start))) {
+          start++;
+        }
+        while (end > start && OptionSetFormat.blank(text.charAt(end - 1))) {
+          end--;
+        }
+        if (start < end) {
+          mask |= this.value(this.chars.find(text, start, end));
+        }
+        start = i + 1;
+      }
+    }
+    return mask;
+  }
+
+  /** Parses the (UTF-8) bytes in [from, to) of the given array into a mask. */
+  public long parse(byte[] text, int from, int to) {
+    var mask = 0L;
+    var start = from;
+    for (int i = from; i <= to; i++) {
+      if (i == to || (text[i] >= 0 && this.isSeparator[text[i]])) {
+        var end = i;
+        while (start < end && OptionSetFormat.blank(text[start])) {
+          start++;
+        }
+        while (end > start && OptionSetFormat.blank(text[end - 1])) {
+          end--;
+        }
+        if (start < end) {
+          mask |= this.value(this.bytes.find(text, start, end));
+        }
+        start = i + 1;
+      }
+    }
+    return mask;
+  }
+
+  /** Parses the given text into a (canonical) option set. */
+  public OptionSet<T> parseSet(CharSequence text) {
+    return this.metadata.cache().get(this.parse(text));
+  }
+
+  private static boolean blank(int c) {
+    return c == ' ' || c == '\t';
+  }
+
+  private boolean separator(char c) {
+    return c < 128 && this.isSeparator[c];
+  }
+
+  private long value(int ordinal) {
+    if (ordinal < 0) {
+      throw OptionSetFormat.Error.UnknownOption.throwable();
+    }
+    return this.metadata.values[ordinal];
+  }
+
+  /** A cached parse result. */
+  private record Parsed(String text, long mask) {}
+
+  /**
+   * Maps option names (as arrays of char or byte values, case-folded if needed) to ordinals.
+   *
+   * <p>The seed and table size are searched for at build time until no two names share a slot,
+   * so lookups never probe: hash, compare, done.
+   */
+  private static final class PerfectHash {
+
+    /** Folds a char (or unsigned byte) value for comparison; bytes only fold ASCII letters. */
+    static int fold(int unit, boolean ignoreCase, boolean bytes) {
+      if (! ignoreCase) {
+        return unit;
+      }
+      if (bytes || unit < 128) {
+        return (unit >= 'A' && unit <= 'Z') ? unit | 0x20 : unit;
+      }
+      return Character.toLowerCase((char) unit);
+    }
+
+    private final boolean ignoreCase;
+    private final boolean bytes;
+    private int seed;
+    /** Ordinals by slot (-1 for empty). */
+    private int[] ordinals;
+    /** Folded names, by slot. */
+    private int[][] names;
+
+    PerfectHash(int[][] names, boolean ignoreCase, boolean bytes) {
+      this.ignoreCase = ignoreCase;
+      this.bytes = bytes;
+      for (var size = Integer.highestOneBit(Math.max(1, names.length) * 2 - 1) << 1; ; size <<= 1) {
+        for (var seed = 1; seed < 256; seed++) {
+          if (this.build(names, size, seed)) {
+            return;
+          }
+        }
+      }
+    }
+
+    /** Finds the ordinal for the name in [from, to) of the given text, or -1. */
+    int find(CharSequence text, int from, int to) {
+      var hash = this.seed;
+      for (int i = from; i < to; i++) {
+        hash = (hash ^ PerfectHash.fold(text.charAt(i), this.ignoreCase, false)) * 0x01000193;
+      }
+      var slot = PerfectHash.slot(hash, this.ordinals.length);
+      var name = this.names[slot];
+      if (name == null || name.length != to - from) {
+        return -1;
+      }
+      for (int i = 0; i < name.length; i++) {
+        if (name[i] != PerfectHash.fold(text.charAt(from + i), this.ignoreCase, false)) {
+          return -1;
+        }
+      }
+      return this.ordinals[slot];
+    }
+
+    /** Finds the ordinal for the name in [from, to) of the given bytes, or -1. */
+    int find(byte[] text, int from, int to) {
+      var hash = this.seed;
+      for (int i = from; i < to; i++) {
+        hash = (hash ^ PerfectHash.fold(text[i] & 0xFF, this.ignoreCase, true)) * 0x01000193;
+      }
+      var slot = PerfectHash.slot(hash, this.ordinals.length);
+      var name = this.names[slot];
+      if (name == null || name.length != to - from) {
+        return -1;
+      }
+      for (int i = 0; i < name.length; i++) {
+        if (name[i] != PerfectHash.fold(text[from + i] & 0xFF, this.ignoreCase, true)) {
+          return -1;
+        }
+      }
+      return this.ordinals[slot];
+    }
+
+    private boolean build(int[][] names, int size, int seed) {
+      var ordinals = new int[size];
+      var slots = new int[size][];
+      Arrays.fill(ordinals, -1);
+      for (int ordinal = 0; ordinal < names.length; ordinal++) {
+        var hash = seed;
+        for (var unit : names[ordinal]) {
+          hash = (hash ^ unit) * 0x01000193;
+        }
+        var slot = PerfectHash.slot(hash, size);
+        if (ordinals[slot] >= 0) {
+          return false;
+        }
+        ordinals[slot] = ordinal;
+        slots[slot] = names[ordinal];
+      }
+      this.seed = seed;
+      this.ordinals = ordinals;
+      this.names = slots;
+      return true;
+    }
+
+    private static int slot(int hash, int size) {
+      hash ^= hash >>> 16;
+      hash *= 0x85EBCA6B;
+      hash ^= hash >>> 13;
+      return hash & (size - 1);
+    }
+  }
+
+  /** You're doing it wrong. */
+  public enum Error implements Signal<RuntimeException> {
+
+    /** Thrown when ignoring case would make two option names the same. */
+    AmbiguousNames {
+      @Override
+      public final String description() {
+        return "Option names must still be distinct when case is ignored.";
+      }
+    },
+
+    /** Thrown when parsed text names an option the enum doesn't have. */
+    UnknownOption {
+      @Override
+      public final String description() {
+        return "The text names an option that does not exist.";
+      }
+    };
+  }
+}
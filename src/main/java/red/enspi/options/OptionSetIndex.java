@@ -0,0 +1,175 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An inverted index of option sets: one compressed row bitmap per option.
+ *
+ * <p>Queries intersect/union the option bitmaps (smallest first), so their cost follows the number of matching rows
+ * rather than the total number of rows.
+ * Rows are (unsigned) ints; see {@link RowBitmap}.
+ * Indexes are not thread-safe.
+ */
+public final class OptionSetIndex<T extends Enum<?> & Option> {
+
+  private final OptionMetadata<T> metadata;
+
+  /** Row bitmaps, indexed by option ordinal. */
+  private final RowBitmap[] bitmaps;
+
+  /** Every indexed row. */
+  private final RowBitmap rows = new RowBitmap();
+
+  /** Builds an empty index for the given Option enum. */
+  public OptionSetIndex(Class<T> type) {
+    this.metadata = OptionMetadata.of(type);
+    this.bitmaps = new RowBitmap[this.metadata.constants.length];
+    for (int i = 0; i < this.bitmaps.length; i++) {
+      this.bitmaps[i] = new RowBitmap();
+    }
+  }
+
+  /** Adds or updates the given row; only options that changed touch their bitmaps. */
+  public void put(int row, long mask) {
+    var previous = this.get(row);
+    this.rows.add(row);
+    for (var changed = (previous ^ mask) & this.metadata.all; changed != 0; changed &= changed - 1) {
+      var bit = Long.numberOfTrailingZeros(changed);
+      var bitmap = this.bitmaps[this.metadata.ordinalByBit[bit]];
+      if ((mask & (1L << bit)) != 0) {
+        bitmap.add(row);
+      } else {
+        bitmap.remove(row);
+      }
+    }
+  }
+  public void put(int row, OptionSet<T> options) {
+    this.put(row, options.mask);
+  }
+
+  /** Removes the given row. */
+  public void remove(int row) {
+    this.put(row, 0L);
+    this.rows.remove(row);
+  }
+
+  /** Is the given row indexed? */
+  public boolean contains(int row) {
+    return this.rows.contains(row);
+  }
+
+  /** Gets the mask for the given row (0 if the row is not indexed). */
+  public long get(int row) {
+    var mask = 0L;
+    for (int i = 0; i < this.bitmaps.length; i++) {
+      if (this.bitmaps[i].contains(row)) {
+        mask |= this.metadata.values[i];
+      }
+    }
+    return mask;
+  }
+
+  /** The number of indexed rows. */
+  public long size() {
+    return this.rows.cardinality();
+  }
+
+  /** Rows that include the given option. */
+  public RowBitmap rows(T option) {
+    return this.bitmaps[option.ordinal()].copy();
+  }
+
+  /** Rows that include (all of) the given option(s). */
+  @SafeVarargs
+  public final RowBitmap allOf(T ...options) {
+    return this.query(Masks.of(options), 0L, 0L);
+  }
+
+  /** Rows that include (any of) the given option(s). */
+  @SafeVarargs
+  public final RowBitmap anyOf(T ...options) {
+    return this.query(0L, Masks.of(options), 0L);
+  }
+
+  /** Rows that include none of the given option(s). */
+  @SafeVarargs
+  public final RowBitmap noneOf(T ...options) {
+    return this.query(0L, 0L, Masks.of(options));
+  }
+
+  /**
+   * Rows that include all of the options in {@code all}, at least one of the options in {@code any},
+   * and none of the options in {@code none}.
+   *
+   * <p>Any of the masks may be 0, meaning "no constraint." Bits outside the enum never match:
+   * they make {@code all} (or an {@code any} with no in-range bits) match no rows.
+   */
+  public RowBitmap query(long all, long any, long none) {
+    // no row can hold an option outside the enum, so such a requirement matches nothing.
+    if ((all & ~ this.metadata.all) != 0 || (any != 0 && (any & this.metadata.all) == 0)) {
+      return new RowBitmap();
+    }
+    RowBitmap result;
+    if (all == 0) {
+      result = this.rows.copy();
+    } else {
+      var required = this.bitmaps(all);
+      Arrays.sort(required, Comparator.comparingLong(RowBitmap::cardinality));
+      result = required[0];
+      for (int i = 1; i < required.length && ! result.isEmpty(); i++) {
+        result = result.and(required[i]);
+      }
+      if (result == required[0]) {
+        result = result.copy();
+      }
+    }
+    if (any != 0 && ! result.isEmpty()) {
+      var union = new RowBitmap();
+      for (var bitmap : this.bitmaps(any)) {
+        union = union.or(bitmap);
+      }
+      result = result.and(union);
+    }
+    for (var bitmap : this.bitmaps(none)) {
+      if (result.isEmpty()) {
+        break;
+      }
+      result = result.andNot(bitmap);
+    }
+    return result;
+  }
+
+  /** Compacts the option bitmaps (see {@link RowBitmap#runOptimize()}); call after bulk loading. */
+  public void runOptimize() {
+    this.rows.runOptimize();
+    for (var bitmap : this.bitmaps) {
+      bitmap.runOptimize();
+    }
+  }
+
+  private RowBitmap[] bitmaps(long mask) {
+    var bits = mask & this.metadata.all;
+    var bitmaps = new RowBitmap[Long.bitCount(bits)];
+    for (int i = 0; bits != 0; bits &= bits - 1) {
+      bitmaps[i++] = this.bitmaps[this.metadata.ordinalByBit[Long.numberOfTrailingZeros(bits)]];
+    }
+    return bitmaps;
+  }
+}
@@ -0,0 +1,554 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+
+import red.enspi.exceptable.Exceptable.Signal;
+
+/**
+ * A durable {@link OptionSetTable}: every change is appended to a log file as a {@code (key, xor-delta)} record,
+ * and the table is rebuilt from disk when the log is opened.
+ *
+ * <p>Records are batched in memory and written as checksummed frames; concurrent writers waiting on the same
+ * {@link Durability} share one write (and one fsync).
+ * {@link #compact()} writes a snapshot of the whole table and starts a new log, so recovery only has to load the
+ * latest snapshot and replay the log(s) after it.
+ * Because xor deltas commute, replay order within a log doesn't matter.
+ *
+ * <p>Files (in the given directory):
+ * <ul>
+ * <li>{@code snapshot-N.opts}: header, entry count (varint), then frames of (key, mask) records.
+ * <li>{@code log-N.opts}: header, then frames of (key, delta) records, for changes made after snapshot N.
+ * </ul>
+ * Headers are {@link OptionSetCodec} headers (so masks are remapped if the enum has changed since they were written);
+ * frames are length (int), CRC32C (int), then varint records.
+ * A torn frame at the end of a log (from a crash mid-write) is truncated on recovery.
+ *
+ * <p>N.B.;
+ * <ul>
+ * <li>entries whose masks are empty are not kept: after recovery, they are simply absent.
+ * <li>if a change can't be written, it fails with an {@link UncheckedIOException}. If the record couldn't be
+ *     appended, the table is unchanged; if it couldn't be written through (see {@link Durability}), the table has
+ *     already changed. Either way, the log should then be treated as broken (and reopened, to recover what was
+ *     written).
+ * </ul>
+ */
+public final class OptionSetLog<T extends Enum<?> & Option> implements AutoCloseable {
+
+  /** When appended records reach the disk. */
+  public enum Durability {
+    /** Records are written when a batch fills up, on {@link #flush()}, and on {@link #close()}. */
+    NONE,
+    /** Records are written before changes return (so they survive the process crashing). */
+    WRITE,
+    /** Records are written and forced to disk before changes return (so they survive the machine crashing). */
+    FSYNC
+  }
+
+  /** The largest frame (including its 8-byte length and checksum). */
+  static final int FRAME_SIZE = 1 << 20;
+
+  /** The largest record: two 10-byte varints. */
+  private static final int MAX_RECORD = 20;
+
+  private static final String LOG = "log-";
+  private static final String SNAPSHOT = "snapshot-";
+  private static final String SUFFIX = ".opts";
+
+  /** Opens (recovering, if the directory has any) the log in the given directory. */
+  public static <T extends Enum<?> & Option> OptionSetLog<T> open(
+    Path directory,
+    Class<T> type,
+    Durability durability
+  ) throws IOException {
+    Files.createDirectories(directory);
+    var snapshot = -1L;
+    var logs = new ArrayList<Long>();
+    try (var files = Files.list(directory)) {
+      for (var file : (Iterable<Path>) files::iterator) {
+        var name = file.getFileName().toString();
+        if (name.endsWith(".tmp")) {
+          Files.delete(file);
+        } else if (name.startsWith(SNAPSHOT) && name.endsWith(SUFFIX)) {
+          var generation = OptionSetLog.generation(name, SNAPSHOT);
+          if (snapshot >= 0) {
+            // left behind by an interrupted compaction
+            Files.delete(OptionSetLog.path(directory, SNAPSHOT, Math.min(snapshot, generation)));
+          }
+          snapshot = Math.max(snapshot, generation);
+        } else if (name.startsWith(LOG) && name.endsWith(SUFFIX)) {
+          logs.add(OptionSetLog.generation(name, LOG));
+        }
+      }
+    }
+    logs.sort(null);
+    var recovery = new Recovery<>(type);
+    if (snapshot >= 0) {
+      recovery.replay(OptionSetLog.path(directory, SNAPSHOT, snapshot), true);
+    }
+    var generation = Math.max(snapshot, 0);
+    for (var log : logs) {
+      if (log >= generation) {
+        recovery.replay(OptionSetLog.path(directory, LOG, log), false);
+      }
+      generation = Math.max(generation, log);
+    }
+    for (var log : logs) {
+      if (log < Math.max(snapshot, 0)) {
+        Files.delete(OptionSetLog.path(directory, LOG, log));
+      }
+    }
+    var log = new OptionSetLog<>(directory, type, recovery.table(), durability, snapshot);
+    log.startLog(generation + 1);
+    if (recovery.remapped) {
+      // rewrite everything under the current schema
+      log.compact();
+    }
+    return log;
+  }
+
+  private static long generation(String name, String prefix) {
+    return Long.parseLong(name, prefix.length(), name.length() - SUFFIX.length(), 10);
+  }
+
+  private static Path path(Path directory, String prefix, long generation) {
+    return directory.resolve(prefix + generation + SUFFIX);
+  }
+
+  private final Path directory;
+
+  private final OptionSetTable<T> table;
+
+  private final OptionSetCodec<T> codec;
+
+  private final Durability durability;
+
+  /** Held (shared) by changes, and (exclusively) while switching to a new log. */
+  private final ReentrantReadWriteLock rotation = new ReentrantReadWriteLock();
+
+  /** Guards the pending batch and sequence numbers. */
+  private final ReentrantLock appendLock = new ReentrantLock();
+
+  /** Guards writes to the channel; held by whichever writer is committing a batch for the group. */
+  private final ReentrantLock commitLock = new ReentrantLock();
+
+  /** Serializes compactions. */
+  private final ReentrantLock compactLock = new ReentrantLock();
+
+  /** Records not yet written (as a frame, with room for its length and checksum). */
+  private ByteBuffer pending = OptionSetLog.frame();
+
+  /** The batch being written (guarded by the commit lock). */
+  private ByteBuffer spare = OptionSetLog.frame();
+
+  /** The number of records appended; the numbers written and forced (guarded by the commit lock). */
+  private long appended;
+  private long written;
+  private long forced;
+
+  /** The current log (guarded by the commit lock). */
+  private FileChannel channel;
+  private long generation;
+
+  /** The latest snapshot (-1 if none; guarded by the compact lock). */
+  private long snapshot;
+
+  private OptionSetLog(
+    Path directory,
+    Class<T> type,
+    OptionSetTable<T> table,
+    Durability durability,
+    long snapshot
+  ) {
+    this.directory = directory;
+    this.table = table;
+    this.codec = OptionSetCodec.of(type, OptionSetCodec.Encoding.VARINT);
+    this.durability = durability;
+    this.snapshot = snapshot;
+  }
+
+  /** ANDs the entry for the given key with the complement of the given mask; returns the new mask. */
+  public long andNotMask(long key, long mask) {
+    return this.change(key, OptionSetTable.AND_NOT, mask) & ~ mask;
+  }
+
+  /** Writes the latest changes and closes the log. */
+  @Override
+  public void close() throws IOException {
+    this.rotation.writeLock().lock();
+    try {
+      this.commit(Long.MAX_VALUE, true);
+      this.commitLock.lock();
+      try {
+        this.channel.close();
+      } finally {
+        this.commitLock.unlock();
+      }
+    } finally {
+      this.rotation.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Snapshots the table and starts a new log; older snapshots and logs are then deleted.
+   * Changes wait only while the log is switched, not while the snapshot is written.
+   */
+  public void compact() throws IOException {
+    this.compactLock.lock();
+    try {
+      OptionSetTable.Snapshot entries;
+      long generation;
+      this.rotation.writeLock().lock();
+      try {
+        this.commit(Long.MAX_VALUE, true);
+        entries = this.table.snapshot();
+        generation = this.generation + 1;
+        this.startLog(generation);
+      } finally {
+        this.rotation.writeLock().unlock();
+      }
+      this.writeSnapshot(generation, entries);
+      for (var old = Math.max(this.snapshot, 0); old < generation; old++) {
+        Files.deleteIfExists(OptionSetLog.path(this.directory, LOG, old));
+      }
+      if (this.snapshot >= 0) {
+        Files.deleteIfExists(OptionSetLog.path(this.directory, SNAPSHOT, this.snapshot));
+      }
+      this.snapshot = generation;
+    } finally {
+      this.compactLock.unlock();
+    }
+  }
+
+  /** Is there an entry for the given key? */
+  public boolean containsKey(long key) {
+    return this.table.containsKey(key);
+  }
+
+  /** Writes (and forces to disk) any changes not yet written. */
+  public void flush() {
+    try {
+      this.commit(Long.MAX_VALUE, true);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Gets the mask for the given key, or the given default if there is no entry. */
+  public long get(long key, long defaultMask) {
+    return this.table.get(key, defaultMask);
+  }
+
+  /** Gets the (canonical) option set for the given key, or null if there is no entry. */
+  public OptionSet<T> getSet(long key) {
+    return this.table.getSet(key);
+  }
+
+  /** ORs the entry for the given key (adding it if needed) with the given mask; returns the new mask. */
+  public long orMask(long key, long mask) {
+    return this.change(key, OptionSetTable.OR, mask) | mask;
+  }
+
+  /** Sets the mask for the given key; returns the previous mask (0 if there was no entry). */
+  public long put(long key, long mask) {
+    return this.change(key, OptionSetTable.PUT, mask);
+  }
+  public long put(long key, OptionSet<T> options) {
+    return this.put(key, options.mask);
+  }
+
+  /** Removes the entry for the given key; returns its mask (0 if there was no entry). */
+  public long remove(long key) {
+    return this.change(key, OptionSetTable.REMOVE, 0L);
+  }
+
+  /** The number of entries. */
+  public int size() {
+    return this.table.size();
+  }
+
+  /** Copies every entry; see {@link OptionSetTable#snapshot()}. */
+  public OptionSetTable.Snapshot snapshot() {
+    return this.table.snapshot();
+  }
+
+  /** XORs the entry for the given key (adding it if needed) with the given mask; returns the new mask. */
+  public long xorMask(long key, long mask) {
+    return this.change(key, OptionSetTable.XOR, mask) ^ mask;
+  }
+
+  /**
+   * Applies a change to the table and logs its delta; returns the previous mask.
+   * The record is appended under the entry's segment lock, so each key's records are logged in the order they were
+   * applied (and a log cut short anywhere still recovers a mask the key actually had).
+   */
+  private long change(long key, int op, long mask) {
+    long previous;
+    var sequence = new long[1];
+    this.rotation.readLock().lock();
+    try {
+      previous = this.table.getAndUpdate(key, op, mask, (k, from, to) -> {
+        try {
+          sequence[0] = this.append(k, from ^ to);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } finally {
+      this.rotation.readLock().unlock();
+    }
+    if (sequence[0] != 0 && this.durability != Durability.NONE) {
+      try {
+        this.commit(sequence[0], this.durability == Durability.FSYNC);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return previous;
+  }
+
+  /** Adds a record to the pending batch (writing the batch first if it's full); returns its sequence number. */
+  private long append(long key, long delta) throws IOException {
+    for (;;) {
+      long sequence;
+      this.appendLock.lock();
+      try {
+        if (this.pending.remaining() >= MAX_RECORD) {
+          OptionSetCodec.writeVarint(this.pending, key);
+          this.codec.write(this.pending, delta);
+          return ++this.appended;
+        }
+        sequence = this.appended;
+      } finally {
+        this.appendLock.unlock();
+      }
+      this.commit(sequence, false);
+    }
+  }
+
+  /**
+   * Writes pending records, unless the given record has already been written.
+   * Whoever gets here first writes the whole batch, so writers arriving meanwhile are covered by the next write.
+   */
+  private void commit(long sequence, boolean force) throws IOException {
+    this.commitLock.lock();
+    try {
+      if ((force ? this.forced : this.written) >= sequence) {
+        return;
+      }
+      ByteBuffer batch;
+      long last;
+      this.appendLock.lock();
+      try {
+        batch = this.pending;
+        this.pending = this.spare;
+        last = this.appended;
+      } finally {
+        this.appendLock.unlock();
+      }
+      this.spare = batch;
+      if (last > this.written) {
+        OptionSetLog.writeFrame(this.channel, batch);
+        this.written = last;
+      }
+      batch.clear().position(8);
+      if (force) {
+        this.channel.force(false);
+        this.forced = last;
+      }
+    } finally {
+      this.commitLock.unlock();
+    }
+  }
+
+  /** Creates a new (empty) log, and switches to it. */
+  private void startLog(long generation) throws IOException {
+    var file = OptionSetLog.path(this.directory, LOG, generation);
+    var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (var channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      var header = ByteBuffer.allocate(this.codec.headerSize());
+      this.codec.writeHeader(header);
+      channel.write(header.flip());
+      channel.force(true);
+    }
+    Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+    var channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    this.commitLock.lock();
+    try {
+      if (this.channel != null) {
+        this.channel.close();
+      }
+      this.channel = channel;
+      this.generation = generation;
+    } finally {
+      this.commitLock.unlock();
+    }
+  }
+
+  private void writeSnapshot(long generation, OptionSetTable.Snapshot entries) throws IOException {
+    var file = OptionSetLog.path(this.directory, SNAPSHOT, generation);
+    var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (var channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      var header = ByteBuffer.allocate(this.codec.headerSize() + 10);
+      this.codec.writeHeader(header);
+      OptionSetCodec.writeVarint(header, entries.size());
+      channel.write(header.flip());
+      var frame = OptionSetLog.frame();
+      for (int i = 0; i < entries.size(); i++) {
+        if (frame.remaining() < MAX_RECORD) {
+          OptionSetLog.writeFrame(channel, frame);
+          frame.clear().position(8);
+        }
+        OptionSetCodec.writeVarint(frame, entries.keys()[i]);
+        this.codec.write(frame, entries.masks()[i]);
+      }
+      OptionSetLog.writeFrame(channel, frame);
+      channel.force(true);
+    }
+    Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /** An empty frame buffer, positioned after the frame header. */
+  private static ByteBuffer frame() {
+    return ByteBuffer.allocateDirect(FRAME_SIZE).position(8);
+  }
+
+  /** Fills in the frame header and writes the frame (if it has any records). */
+  private static void writeFrame(FileChannel channel, ByteBuffer frame) throws IOException {
+    var length = frame.position() - 8;
+    if (length == 0) {
+      return;
+    }
+    var crc = new CRC32C();
+    crc.update(frame.slice(8, length));
+    frame.putInt(0, length).putInt(4, (int) crc.getValue()).flip();
+    while (frame.hasRemaining()) {
+      channel.write(frame);
+    }
+  }
+
+  /** Rebuilds a table from snapshot and log files. */
+  private static final class Recovery<T extends Enum<?> & Option> {
+
+    private final Class<T> type;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(FRAME_SIZE * 2);
+
+    private OptionSetTable<T> table;
+
+    /** Were any masks written under an older schema? */
+    boolean remapped;
+
+    Recovery(Class<T> type) {
+      this.type = type;
+    }
+
+    /** The recovered table (without entries whose masks ended up empty). */
+    OptionSetTable<T> table() {
+      var table = (this.table == null) ? new OptionSetTable<>(this.type) : this.table;
+      for (var key : table.filter(mask -> mask == 0)) {
+        table.remove(key);
+      }
+      return table;
+    }
+
+    /** XORs every record in the given file into the table; a torn frame at the end of a log is truncated. */
+    void replay(Path file, boolean snapshot) throws IOException {
+      try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        var buffer = this.buffer.clear();
+        var end = this.fill(channel, buffer);
+        var codec = OptionSetCodec.readHeader(buffer, this.type);
+        this.remapped |= codec.isRemapping();
+        var size = snapshot ? (int) OptionSetCodec.readVarint(buffer) : 0;
+        if (this.table == null) {
+          this.table = new OptionSetTable<>(this.type, size);
+        }
+        var valid = buffer.position();
+        var crc = new CRC32C();
+        for (;;) {
+          var length = (buffer.remaining() < 8) ? FRAME_SIZE : buffer.getInt(buffer.position());
+          if (! end && buffer.remaining() < 8 + Math.min(Math.max(length, 0), FRAME_SIZE)) {
+            end = this.fill(channel, buffer.compact());
+            continue;
+          }
+          if (! buffer.hasRemaining()) {
+            return;
+          }
+          if (buffer.remaining() < 8 || length <= 0 || length > FRAME_SIZE - 8 || buffer.remaining() < 8 + length) {
+            break;
+          }
+          var records = buffer.slice(buffer.position() + 8, length);
+          crc.reset();
+          crc.update(records.duplicate());
+          if ((int) crc.getValue() != buffer.getInt(buffer.position() + 4)) {
+            break;
+          }
+          while (records.hasRemaining()) {
+            var key = OptionSetCodec.readVarint(records);
+            this.table.xorMask(key, codec.read(records));
+          }
+          buffer.position(buffer.position() + 8 + length);
+          valid += 8 + length;
+        }
+        if (snapshot) {
+          throw OptionSetLog.Error.CorruptSnapshot.throwable();
+        }
+        channel.truncate(valid);
+      }
+    }
+
+    /**
+     * Reads from the channel until the buffer is full or the file ends; leaves the buffer ready to read.
+     * Returns true if the file ended.
+     */
+    private boolean fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          buffer.flip();
+          return true;
+        }
+      }
+      buffer.flip();
+      return false;
+    }
+  }
+
+  /** You're doing it wrong. */
+  public enum Error implements Signal<RuntimeException> {
+
+    /** Thrown when a snapshot file is damaged (snapshots are only ever written whole). */
+    CorruptSnapshot {
+      @Override
+      public final String description() {
+        return "The option set snapshot is damaged and cannot be recovered.";
+      }
+    };
+  }
+}
@@ -0,0 +1,357 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/**
+ * A map keyed by option set (or raw mask), for memoizing work per combination of options.
+ *
+ * <p>For enums with up to {@link #MAX_DENSE_OPTIONS} options, values live in a plain array indexed by
+ * {@code Long.compress(mask, all)}: lookups are a single array read.
+ * Other masks go into an open-addressing table of primitive long keys (linear probing, no boxing).
+ *
+ * <p>With a {@code maxSize}, the table evicts its least-recently-used entry to make room.
+ * The dense array is already bounded (to {@code 2^options} entries), so it never evicts.
+ *
+ * <p>N.B.;
+ * <ul>
+ * <li>Null values are not allowed (a null return always means "not present").
+ * <li>This class is not thread-safe; in LRU mode, even {@code get} updates recency.
+ * </ul>
+ */
+public final class OptionSetMap<T extends Enum<?> & Option, V> {
+
+  /** The largest enum for which values are kept in a dense array. */
+  public static final int MAX_DENSE_OPTIONS = OptionSetCache.MAX_TABLE_OPTIONS;
+
+  private static final int MIN_CAPACITY = 16;
+
+  private final OptionMetadata<T> metadata;
+
+  /** Values indexed by {@code Long.compress(mask, all)}; null for large enums. */
+  private final Object[] dense;
+
+  /** Maximum number of table entries (0 for unbounded). */
+  private final int maxSize;
+
+  /** Entry counts, for the dense array and the table. */
+  private int denseSize;
+  private int tableSize;
+
+  private long[] keys;
+
+  /** Table values; a null value marks an empty slot. */
+  private Object[] values;
+
+  /** LRU links, by slot (-1 for none); null when unbounded. */
+  private int[] newer;
+  private int[] older;
+  private int newest = -1;
+  private int oldest = -1;
+
+  /** Builds an unbounded map for the given Option enum. */
+  public OptionSetMap(Class<T> type) {
+    this(type, 0);
+  }
+
+  /** Builds a map for the given Option enum, holding at most maxSize table entries (0 for unbounded). */
+  public OptionSetMap(Class<T> type, int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("maxSize must not be negative");
+    }
+    this.metadata = OptionMetadata.of(type);
+    this.dense = (this.metadata.constants.length <= MAX_DENSE_OPTIONS)
+      ? new Object[1 << this.metadata.constants.length]
+      : null;
+    this.maxSize = maxSize;
+    var capacity = (maxSize == 0) ? MIN_CAPACITY : Math.max(MIN_CAPACITY, Integer.highestOneBit(maxSize) << 2);
+    this.keys = new long[capacity];
+    this.values = new Object[capacity];
+    if (maxSize > 0) {
+      this.newer = new int[capacity];
+      this.older = new int[capacity];
+    }
+  }
+
+  /** Removes all entries. */
+  public void clear() {
+    if (this.dense != null) {
+      Arrays.fill(this.dense, null);
+    }
+    Arrays.fill(this.values, null);
+    this.newest = this.oldest = -1;
+    this.denseSize = this.tableSize = 0;
+  }
+
+  /** Gets the value for the given mask, computing (and storing) it first if needed. */
+  public V computeIfAbsent(long mask, LongFunction<? extends V> function) {
+    var value = this.get(mask);
+    if (value == null) {
+      value = function.apply(mask);
+      if (value != null) {
+        this.put(mask, value);
+      }
+    }
+    return value;
+  }
+  public V computeIfAbsent(OptionSet<T> options, Function<? super OptionSet<T>, ? extends V> function) {
+    var value = this.get(options.mask);
+    if (value == null) {
+      value = function.apply(options);
+      if (value != null) {
+        this.put(options.mask, value);
+      }
+    }
+    return value;
+  }
+
+  /** Is there a value for the given mask? */
+  public boolean containsKey(long mask) {
+    return this.isDense(mask) ? this.dense[this.denseIndex(mask)] != null : this.find(mask) >= 0;
+  }
+  public boolean containsKey(OptionSet<T> options) {
+    return this.containsKey(options.mask);
+  }
+
+  /** Visits each entry (in no particular order); keys are canonical option sets. */
+  @SuppressWarnings("unchecked")
+  public void forEach(BiConsumer<? super OptionSet<T>, ? super V> action) {
+    var cache = this.metadata.cache();
+    if (this.dense != null) {
+      for (int i = 0; i < this.dense.length; i++) {
+        if (this.dense[i] != null) {
+          action.accept(cache.get(Long.expand(i, this.metadata.all)), (V) this.dense[i]);
+        }
+      }
+    }
+    for (int i = 0; i < this.values.length; i++) {
+      if (this.values[i] != null) {
+        action.accept(cache.get(this.keys[i]), (V) this.values[i]);
+      }
+    }
+  }
+
+  /** Gets the value for the given mask, or null if there is none. */
+  @SuppressWarnings("unchecked")
+  public V get(long mask) {
+    if (this.isDense(mask)) {
+      return (V) this.dense[this.denseIndex(mask)];
+    }
+    var slot = this.find(mask);
+    if (slot < 0) {
+      return null;
+    }
+    if (this.maxSize > 0) {
+      this.touch(slot);
+    }
+    return (V) this.values[slot];
+  }
+  public V get(OptionSet<T> options) {
+    return this.get(options.mask);
+  }
+
+  /** Sets the value for the given mask, returning the previous value (or null). */
+  @SuppressWarnings("unchecked")
+  public V put(long mask, V value) {
+    Objects.requireNonNull(value);
+    if (this.isDense(mask)) {
+      var index = this.denseIndex(mask);
+      var previous = (V) this.dense[index];
+      this.dense[index] = value;
+      if (previous == null) {
+        this.denseSize++;
+      }
+      return previous;
+    }
+    var slot = this.find(mask);
+    if (slot >= 0) {
+      var previous = (V) this.values[slot];
+      this.values[slot] = value;
+      if (this.maxSize > 0) {
+        this.touch(slot);
+      }
+      return previous;
+    }
+    if (this.maxSize > 0 && this.tableSize == this.maxSize) {
+      this.removeSlot(this.oldest);
+    } else if (this.maxSize == 0 && (this.tableSize + 1) * 2 > this.values.length) {
+      this.resize();
+    }
+    slot = this.home(mask);
+    while (this.values[slot] != null) {
+      slot = (slot + 1) & (this.values.length - 1);
+    }
+    this.keys[slot] = mask;
+    this.values[slot] = value;
+    this.tableSize++;
+    if (this.maxSize > 0) {
+      this.link(slot);
+    }
+    return null;
+  }
+  public V put(OptionSet<T> options, V value) {
+    return this.put(options.mask, value);
+  }
+
+  /** Removes the value for the given mask, returning it (or null if there was none). */
+  @SuppressWarnings("unchecked")
+  public V remove(long mask) {
+    if (this.isDense(mask)) {
+      var index = this.denseIndex(mask);
+      var previous = (V) this.dense[index];
+      if (previous != null) {
+        this.dense[index] = null;
+        this.denseSize--;
+      }
+      return previous;
+    }
+    var slot = this.find(mask);
+    if (slot < 0) {
+      return null;
+    }
+    var previous = (V) this.values[slot];
+    this.removeSlot(slot);
+    return previous;
+  }
+  public V remove(OptionSet<T> options) {
+    return this.remove(options.mask);
+  }
+
+  /** The number of entries. */
+  public int size() {
+    return this.denseSize + this.tableSize;
+  }
+
+  private int denseIndex(long mask) {
+    return (int) Long.compress(mask, this.metadata.all);
+  }
+
+  /** The table slot holding the given mask, or -1 if absent. */
+  private int find(long mask) {
+    var last = this.values.length - 1;
+    for (int slot = this.home(mask); this.values[slot] != null; slot = (slot + 1) & last) {
+      if (this.keys[slot] == mask) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  private int home(long mask) {
+    return (int) Masks.hash(mask) & (this.values.length - 1);
+  }
+
+  private boolean isDense(long mask) {
+    return this.dense != null && (mask & ~ this.metadata.all) == 0;
+  }
+
+  /** Makes the given slot the newest. */
+  private void link(int slot) {
+    this.older[slot] = this.newest;
+    this.newer[slot] = -1;
+    if (this.newest >= 0) {
+      this.newer[this.newest] = slot;
+    } else {
+      this.oldest = slot;
+    }
+    this.newest = slot;
+  }
+
+  /** Moves an entry to an earlier slot (while closing a gap left by removal). */
+  private void move(int from, int to) {
+    this.keys[to] = this.keys[from];
+    this.values[to] = this.values[from];
+    if (this.maxSize > 0) {
+      var newer = this.newer[to] = this.newer[from];
+      var older = this.older[to] = this.older[from];
+      if (newer >= 0) {
+        this.older[newer] = to;
+      } else {
+        this.newest = to;
+      }
+      if (older >= 0) {
+        this.newer[older] = to;
+      } else {
+        this.oldest = to;
+      }
+    }
+  }
+
+  /** Removes the entry in the given slot, shifting later entries back so probe sequences stay unbroken. */
+  private void removeSlot(int slot) {
+    if (this.maxSize > 0) {
+      this.unlink(slot);
+    }
+    this.tableSize--;
+    var last = this.values.length - 1;
+    var gap = slot;
+    for (int i = (slot + 1) & last; this.values[i] != null; i = (i + 1) & last) {
+      // an entry can fill the gap unless its home slot lies (cyclically) after the gap
+      if (((i - this.home(this.keys[i])) & last) >= ((i - gap) & last)) {
+        this.move(i, gap);
+        gap = i;
+      }
+    }
+    this.values[gap] = null;
+  }
+
+  private void resize() {
+    var keys = this.keys;
+    var values = this.values;
+    this.keys = new long[keys.length << 1];
+    this.values = new Object[values.length << 1];
+    var last = this.values.length - 1;
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] != null) {
+        var slot = this.home(keys[i]);
+        while (this.values[slot] != null) {
+          slot = (slot + 1) & last;
+        }
+        this.keys[slot] = keys[i];
+        this.values[slot] = values[i];
+      }
+    }
+  }
+
+  /** Makes the given slot the newest. */
+  private void touch(int slot) {
+    if (slot != this.newest) {
+      this.unlink(slot);
+      this.link(slot);
+    }
+  }
+
+  private void unlink(int slot) {
+    var newer = this.newer[slot];
+    var older = this.older[slot];
+    if (newer >= 0) {
+      this.older[newer] = older;
+    } else {
+      this.newest = older;
+    }
+    if (older >= 0) {
+      this.newer[older] = newer;
+    } else {
+      this.oldest = newer;
+    }
+  }
+}
@@ -0,0 +1,301 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collector;
+
+/**
+ * Option frequencies, co-occurrences, and distinct combinations, over a collection of masks.
+ *
+ * <p>Everything is computed in a single pass. Co-occurrence counts use bit-sliced counters: each mask is added
+ * (as 64 one-bit lanes, with carry-save addition) to one counter per option it includes, so counting costs a few
+ * word operations per set option rather than one per pair. Frequencies are the diagonal.
+ * Arrays of at least {@link #PARALLEL_THRESHOLD} masks are processed in parallel, in the common fork/join pool.
+ *
+ * <p>Distinct combinations are counted exactly for enums of up to {@link #MAX_EXACT_OPTIONS} options,
+ * and estimated (with a HyperLogLog sketch, typically within 1%) for larger ones.
+ *
+ * <p>Masks are restricted to the enum's options: other bits are ignored.
+ */
+public final class OptionSetReport<T extends Enum<?> & Option> {
+
+  /** Arrays with at least this many masks are processed in parallel. */
+  public static final int PARALLEL_THRESHOLD = 1 << 16;
+
+  /** The largest enum for which distinct combinations are counted exactly. */
+  public static final int MAX_EXACT_OPTIONS = 16;
+
+  /** Masks per fork/join leaf task. */
+  static final int GRAIN = 1 << 16;
+
+  /** Bit-sliced counter depth; each counter can take (2^SLICES - 1) masks before it must be flushed. */
+  private static final int SLICES = 16;
+
+  /** HyperLogLog precision (2^14 registers). */
+  private static final int PRECISION = 14;
+
+  /** Reports on the given masks. */
+  public static <T extends Enum<?> & Option> OptionSetReport<T> of(Class<T> type, long[] masks) {
+    return OptionSetReport.of(type, masks, 0, masks.length);
+  }
+
+  /** Reports on masks [from, to) of the given array. */
+  public static <T extends Enum<?> & Option> OptionSetReport<T> of(Class<T> type, long[] masks, int from, int to) {
+    var metadata = OptionMetadata.of(type);
+    if (to - from < PARALLEL_THRESHOLD) {
+      var counts = new Counts(metadata);
+      counts.addAll(masks, from, to);
+      return new OptionSetReport<>(metadata, counts.finish());
+    }
+    var counts = ForkJoinPool.commonPool().invoke(new OptionSetReport.Task(metadata, masks, from, to));
+    return new OptionSetReport<>(metadata, counts);
+  }
+
+  /** Collects option sets into a report (in parallel, if the stream is). */
+  public static <T extends Enum<?> & Option> Collector<OptionSet<T>, ?, OptionSetReport<T>> collector(Class<T> type) {
+    var metadata = OptionMetadata.of(type);
+    return Collector.of(
+      () -> new Counts(metadata),
+      (counts, options) -> counts.add(options.mask),
+      (a, b) -> a.finish().merge(b.finish()),
+      counts -> new OptionSetReport<>(metadata, counts.finish()),
+      Collector.Characteristics.UNORDERED);
+  }
+
+  private final OptionMetadata<T> metadata;
+
+  private final Counts counts;
+
+  private OptionSetReport(OptionMetadata<T> metadata, Counts counts) {
+    this.metadata = metadata;
+    this.counts = counts;
+  }
+
+  /** Co-occurrence counts, indexed [ordinal][ordinal] (the diagonal is each option's frequency). */
+  public long[][] coOccurrence() {
+    var n = this.metadata.constants.length;
+    var matrix = new long[n][n];
+    for (int a = 0; a < n; a++) {
+      for (int b = 0; b < n; b++) {
+        matrix[a][b] = this.counts.pairs[(this.bit(a) << 6) | this.bit(b)];
+      }
+    }
+    return matrix;
+  }
+
+  /** The number of masks including the given option. */
+  public long count(T option) {
+    return this.count(option, option);
+  }
+
+  /** The number of masks including both of the given options. */
+  public long count(T a, T b) {
+    return this.counts.pairs[(this.bit(a.ordinal()) << 6) | this.bit(b.ordinal())];
+  }
+
+  /** The number of distinct combinations of options (see {@link #isDistinctExact()}). */
+  public long distinct() {
+    return this.counts.distinct();
+  }
+
+  /** Option frequencies, indexed by ordinal. */
+  public long[] histogram() {
+    var histogram = new long[this.metadata.constants.length];
+    for (int i = 0; i < histogram.length; i++) {
+      histogram[i] = this.counts.pairs[(this.bit(i) << 6) | this.bit(i)];
+    }
+    return histogram;
+  }
+
+  /** Is {@link #distinct()} exact (rather than an estimate)? */
+  public boolean isDistinctExact() {
+    return this.counts.seen != null;
+  }
+
+  /** The number of masks reported on. */
+  public long rows() {
+    return this.counts.rows;
+  }
+
+  private int bit(int ordinal) {
+    return Long.numberOfTrailingZeros(this.metadata.values[ordinal]);
+  }
+
+  /** Partial counts, for one range of masks; merged when tasks join. */
+  private static final class Counts {
+
+    private final long all;
+
+    /** Pair counts, indexed {@code (bit << 6) | bit}. */
+    final long[] pairs = new long[Long.SIZE * Long.SIZE];
+
+    long rows;
+
+    /** Distinct combinations seen, as a bitmap indexed by {@code Long.compress(mask, all)}; null if estimating. */
+    final long[] seen;
+
+    /** HyperLogLog registers; null if counting exactly. */
+    final byte[] registers;
+
+    /** Bit-sliced counters: slice k of the counter for bit b is {@code slices[(b * SLICES) + k]}. */
+    private final long[] slices = new long[Long.SIZE * SLICES];
+
+    /** Masks added since the slices were last flushed. */
+    private int pending;
+
+    /** Bits with nonzero counters. */
+    private long touched;
+
+    Counts(OptionMetadata<?> metadata) {
+      this.all = metadata.all;
+      var options = metadata.constants.length;
+      this.seen = (options <= MAX_EXACT_OPTIONS) ? new long[Math.max(1, (1 << options) >>> 6)] : null;
+      this.registers = (options <= MAX_EXACT_OPTIONS) ? null : new byte[1 << PRECISION];
+    }
+
+    void add(long mask) {
+      mask &= this.all;
+      this.rows++;
+      if (this.seen != null) {
+        var index = (int) Long.compress(mask, this.all);
+        this.seen[index >>> 6] |= 1L << index;
+      } else {
+        var hash = Masks.hash(mask);
+        var register = (int) (hash >>> (Long.SIZE - PRECISION));
+        var rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        if (rank > this.registers[register]) {
+          this.registers[register] = rank;
+        }
+      }
+      this.touched |= mask;
+      for (var bits = mask; bits != 0; bits &= bits - 1) {
+        // ripple-carry add of the whole mask into bit b's counter (64 one-bit lanes)
+        var slice = Long.numberOfTrailingZeros(bits) * SLICES;
+        for (var carry = mask; carry != 0; slice++) {
+          var next = this.slices[slice] & carry;
+          this.slices[slice] ^= carry;
+          carry = next;
+        }
+      }
+      if (++this.pending == (1 << SLICES) - 1) {
+        this.flush();
+      }
+    }
+
+    void addAll(long[] masks, int from, int to) {
+      for (int i = from; i < to; i++) {
+        this.add(masks[i]);
+      }
+    }
+
+    long distinct() {
+      if (this.seen != null) {
+        var count = 0L;
+        for (var word : this.seen) {
+          count += Long.bitCount(word);
+        }
+        return count;
+      }
+      var m = 1 << PRECISION;
+      var sum = 0.0;
+      var zeros = 0;
+      for (var register : this.registers) {
+        sum += Math.scalb(1.0, - register);
+        zeros += (register == 0) ? 1 : 0;
+      }
+      var estimate = (0.7213 / (1 + 1.079 / m)) * m * m / sum;
+      if (estimate <= 2.5 * m && zeros > 0) {
+        estimate = m * Math.log((double) m / zeros);
+      }
+      return Math.round(estimate);
+    }
+
+    /** Flushes the bit-sliced counters into the pair counts (must be called before reading them). */
+    Counts finish() {
+      this.flush();
+      return this;
+    }
+
+    /** Adds the other (finished) counts into these (finished) counts. */
+    Counts merge(Counts other) {
+      for (int i = 0; i < this.pairs.length; i++) {
+        this.pairs[i] += other.pairs[i];
+      }
+      this.rows += other.rows;
+      if (this.seen != null) {
+        for (int i = 0; i < this.seen.length; i++) {
+          this.seen[i] |= other.seen[i];
+        }
+      } else {
+        for (int i = 0; i < this.registers.length; i++) {
+          this.registers[i] = (byte) Math.max(this.registers[i], other.registers[i]);
+        }
+      }
+      return this;
+    }
+
+    private void flush() {
+      for (var rows = this.touched; rows != 0; rows &= rows - 1) {
+        var row = Long.numberOfTrailingZeros(rows);
+        for (int k = 0; k < SLICES; k++) {
+          var slice = this.slices[row * SLICES + k];
+          for (; slice != 0; slice &= slice - 1) {
+            this.pairs[(row << 6) | Long.numberOfTrailingZeros(slice)] += 1L << k;
+          }
+          this.slices[row * SLICES + k] = 0L;
+        }
+      }
+      this.touched = 0L;
+      this.pending = 0;
+    }
+  }
+
+  /** Splits a range until it is at most GRAIN masks, then counts it; partial counts are merged. */
+  private static final class Task extends RecursiveTask<Counts> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** (Tasks are never actually serialized.) */
+    private final transient OptionMetadata<?> metadata;
+    private final long[] masks;
+    private final int from;
+    private final int to;
+
+    private Task(OptionMetadata<?> metadata, long[] masks, int from, int to) {
+      this.metadata = metadata;
+      this.masks = masks;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Counts compute() {
+      if (this.to - this.from <= GRAIN) {
+        var counts = new Counts(this.metadata);
+        counts.addAll(this.masks, this.from, this.to);
+        return counts.finish();
+      }
+      var middle = this.from + ((this.to - this.from) >>> 1);
+      var high = new OptionSetReport.Task(this.metadata, this.masks, middle, this.to);
+      high.fork();
+      var low = new OptionSetReport.Task(this.metadata, this.masks, this.from, middle).compute();
+      return low.merge(high.join());
+    }
+  }
+}
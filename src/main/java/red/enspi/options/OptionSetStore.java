@@ -0,0 +1,257 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+import red.enspi.exceptable.Exceptable.Signal;
+
+/**
+ * A file of option masks (one per row), memory-mapped and addressed by row index.
+ *
+ * <p>Opening a store maps the file rather than loading it: the OS page cache decides what is resident.
+ * Reads return the stored mask (or the canonical OptionSet for it) straight from the mapping,
+ * and updates are atomic, in place.
+ * Writing past the end grows the file, and maps the new space.
+ *
+ * <p>The file starts with a header recording the Option enum's schema (see {@link OptionSchema});
+ * opening a store with a different enum (or a changed one) fails with {@link Error#SchemaMismatch}.
+ * Masks are stored little-endian.
+ */
+public final class OptionSetStore<T extends Enum<?> & Option> implements AutoCloseable {
+
+  /** "OPTS". */
+  static final int MAGIC = 0x4F50_5453;
+
+  static final int VERSION = 1;
+
+  /** Rows per mapped segment (2^27 rows, or 1GiB of masks). */
+  static final int SEGMENT_SHIFT = 27;
+
+  private static final long SEGMENT_ROWS = 1L << SEGMENT_SHIFT;
+
+  private static final long INITIAL_CAPACITY = 1024;
+
+  /** Header layout: magic (int), version (int), header size (int), reserved (int), row count (long), schema. */
+  private static final int ROWS_OFFSET = 16;
+
+  private static final int SCHEMA_OFFSET = 24;
+
+  private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  /** Opens (creating if needed) the store at the given path, for the given Option enum. */
+  public static <T extends Enum<?> & Option> OptionSetStore<T> open(Path path, Class<T> type) throws IOException {
+    var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    try {
+      return new OptionSetStore<>(OptionMetadata.of(type), channel);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private final OptionMetadata<T> metadata;
+
+  private final FileChannel channel;
+
+  private final MappedByteBuffer header;
+
+  private final int headerSize;
+
+  /** Mapped rows; replaced (never modified) when the store grows. */
+  private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+  private long capacity = 0;
+
+  private OptionSetStore(OptionMetadata<T> metadata, FileChannel channel) throws IOException {
+    this.metadata = metadata;
+    this.channel = channel;
+    var schema = OptionSchema.of(metadata.type);
+    if (channel.size() == 0) {
+      this.headerSize = (SCHEMA_OFFSET + schema.encodedSize() + 7) & -8;
+      this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.headerSize);
+      this.header.order(ByteOrder.LITTLE_ENDIAN)
+        .putInt(MAGIC)
+        .putInt(VERSION)
+        .putInt(this.headerSize)
+        .putInt(0)
+        .putLong(0L);
+      schema.write(this.header);
+      this.grow(INITIAL_CAPACITY);
+    } else {
+      var prefix = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+      channel.read(prefix, 0);
+      prefix.flip();
+      if (prefix.remaining() < 12 || prefix.getInt() != MAGIC || prefix.getInt() != VERSION) {
+        throw OptionSetStore.Error.InvalidFile.throwable();
+      }
+      this.headerSize = prefix.getInt();
+      if (this.headerSize < SCHEMA_OFFSET || channel.size() < this.headerSize) {
+        throw OptionSetStore.Error.InvalidFile.throwable();
+      }
+      this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.headerSize);
+      this.header.order(ByteOrder.LITTLE_ENDIAN).position(SCHEMA_OFFSET);
+      if (! schema.equals(OptionSchema.read(this.header))) {
+        throw OptionSetStore.Error.SchemaMismatch.throwable();
+      }
+      this.grow((channel.size() - this.headerSize) >>> 3);
+    }
+  }
+
+  /** The number of rows (one more than the highest row written). */
+  public long size() {
+    return (long) LONGS.getAcquire(this.header, ROWS_OFFSET);
+  }
+
+  /** Gets the mask at the given row. */
+  public long get(long row) {
+    Objects.checkIndex(row, this.size());
+    return (long) LONGS.get(this.segment(row), OptionSetStore.offset(row));
+  }
+
+  /** Gets the mask at the given row (acquire read; pairs with set). */
+  public long getAcquire(long row) {
+    Objects.checkIndex(row, this.size());
+    return (long) LONGS.getAcquire(this.segment(row), OptionSetStore.offset(row));
+  }
+
+  /** Gets the (canonical) option set at the given row. */
+  public OptionSet<T> getSet(long row) {
+    return this.metadata.cache().get(this.getAcquire(row));
+  }
+
+  /** Sets the mask at the given row (release write), growing the store if needed. */
+  public void set(long row, long mask) {
+    LONGS.setRelease(this.ensure(row), OptionSetStore.offset(row), mask);
+  }
+  public void set(long row, OptionSet<T> options) {
+    this.set(row, options.mask);
+  }
+
+  /** Replaces the mask at the given row, if it is currently the expected mask. */
+  public boolean compareAndSet(long row, long expected, long mask) {
+    return LONGS.compareAndSet(this.ensure(row), OptionSetStore.offset(row), expected, mask);
+  }
+
+  /** ORs the given mask into the given row; returns the previous mask. */
+  public long getAndOr(long row, long mask) {
+    return (long) LONGS.getAndBitwiseOr(this.ensure(row), OptionSetStore.offset(row), mask);
+  }
+
+  /** ANDs the given mask into the given row; returns the previous mask. */
+  public long getAndAnd(long row, long mask) {
+    return (long) LONGS.getAndBitwiseAnd(this.ensure(row), OptionSetStore.offset(row), mask);
+  }
+
+  /** XORs the given mask into the given row; returns the previous mask. */
+  public long getAndXor(long row, long mask) {
+    return (long) LONGS.getAndBitwiseXor(this.ensure(row), OptionSetStore.offset(row), mask);
+  }
+
+  /** Writes any changes through to the file. */
+  public void force() {
+    this.header.force();
+    for (var segment : this.segments) {
+      segment.force();
+    }
+  }
+
+  /** Writes any changes through to the file, and closes it. */
+  @Override
+  public void close() throws IOException {
+    this.force();
+    this.channel.close();
+  }
+
+  private static int offset(long row) {
+    return (int) (row & (SEGMENT_ROWS - 1)) << 3;
+  }
+
+  private MappedByteBuffer segment(long row) {
+    return this.segments[(int) (row >>> SEGMENT_SHIFT)];
+  }
+
+  /** Makes sure the given row exists, and returns its segment. */
+  private MappedByteBuffer ensure(long row) {
+    if (row < 0) {
+      throw new IndexOutOfBoundsException(row);
+    }
+    if (row >= this.size()) {
+      synchronized (this) {
+        if (row >= this.capacity) {
+          try {
+            this.grow(Math.max(row + 1, this.capacity * 2));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+        if (row >= this.size()) {
+          LONGS.setRelease(this.header, ROWS_OFFSET, row + 1);
+        }
+      }
+    }
+    return this.segment(row);
+  }
+
+  /** Maps the given number of rows; segments that are already fully mapped are kept. */
+  private void grow(long capacity) throws IOException {
+    var count = (int) ((capacity + SEGMENT_ROWS - 1) >>> SEGMENT_SHIFT);
+    var segments = Arrays.copyOf(this.segments, count);
+    for (int i = 0; i < count; i++) {
+      var rows = Math.min(SEGMENT_ROWS, capacity - ((long) i << SEGMENT_SHIFT));
+      if (segments[i] == null || segments[i].capacity() != rows << 3) {
+        segments[i] = this.channel.map(
+          FileChannel.MapMode.READ_WRITE,
+          this.headerSize + ((long) i << (SEGMENT_SHIFT + 3)),
+          rows << 3);
+      }
+    }
+    this.capacity = capacity;
+    this.segments = segments;
+  }
+
+  /** Something is wrong with the store's file. */
+  public enum Error implements Signal<RuntimeException> {
+
+    /** The file is not an option set store (or is from an incompatible version). */
+    InvalidFile {
+      @Override
+      public final String description() {
+        return "The file is not a valid option set store.";
+      }
+    },
+
+    /** The file was written for a different Option enum, or the enum has changed since. */
+    SchemaMismatch {
+      @Override
+      public final String description() {
+        return "The file's option schema does not match the Option enum.";
+      }
+    };
+  }
+}
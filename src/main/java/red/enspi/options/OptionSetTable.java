@@ -0,0 +1,426 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * A concurrent map of {@code long} keys (e.g., tenant or user ids) to option masks, without boxing.
+ *
+ * <p>Entries live in open-addressing tables of primitive arrays (linear probing), split into
+ * {@link #SEGMENTS} independently locked segments.
+ * Reads never lock: they follow acquire/release ordering against the (locked) writes of their segment.
+ * Writes, including the per-entry atomic or/andNot/xor, lock only their key's segment.
+ *
+ * <p>Removed entries leave tombstones (so lock-free readers never see an entry move mid-probe);
+ * they're cleared when a segment is rebuilt.
+ * {@link #snapshot()} locks every segment at once, so it sees a single consistent state.
+ * {@link #filter} and {@link #count} scan segments in parallel, without locking (so they're weakly consistent).
+ */
+public final class OptionSetTable<T extends Enum<?> & Option> {
+
+  /** The number of segments (a power of two). */
+  public static final int SEGMENTS = 1 << 6;
+
+  private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+  private static final VarHandle STATES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+  private static final byte EMPTY = 0;
+  private static final byte LIVE = 1;
+  private static final byte DELETED = 2;
+
+  /** Operations for {@link #getAndUpdate}. */
+  static final int PUT = 0;
+  static final int OR = 1;
+  static final int AND_NOT = 2;
+  static final int XOR = 3;
+  static final int REMOVE = 4;
+
+  private final OptionMetadata<T> metadata;
+
+  private final Segment[] segments = new Segment[SEGMENTS];
+
+  /** Builds an empty table for the given Option enum. */
+  public OptionSetTable(Class<T> type) {
+    this(type, 0);
+  }
+
+  /** Builds an empty table for the given Option enum, sized for the given number of entries. */
+  public OptionSetTable(Class<T> type, int expectedSize) {
+    this.metadata = OptionMetadata.of(type);
+    var capacity = Segment.capacityFor(expectedSize / SEGMENTS);
+    for (int i = 0; i < SEGMENTS; i++) {
+      this.segments[i] = new Segment(capacity);
+    }
+  }
+
+  /** ANDs the entry for the given key with the complement of the given option(s); returns the new mask. */
+  @SafeVarargs
+  public final long andNot(long key, T ...options) {
+    return this.andNotMask(key, Masks.of(options));
+  }
+
+  /** ANDs the entry for the given key with the complement of the given mask; returns the new mask. */
+  public long andNotMask(long key, long mask) {
+    var hash = Masks.hash(key);
+    return this.segment(hash).update(key, hash, AND_NOT, mask, null) & ~ mask;
+  }
+
+  /** Is there an entry for the given key? */
+  public boolean containsKey(long key) {
+    var hash = Masks.hash(key);
+    return this.segment(hash).find(key, hash) >= 0;
+  }
+
+  /** Counts the entries whose masks match the given predicate (scanning segments in parallel). */
+  public long count(LongPredicate predicate) {
+    return IntStream.range(0, SEGMENTS).parallel().mapToLong(i -> this.segments[i].count(predicate)).sum();
+  }
+
+  /** Keys of the entries whose masks match the given predicate (scanning segments in parallel). */
+  public long[] filter(LongPredicate predicate) {
+    return IntStream.range(0, SEGMENTS)
+      .parallel()
+      .mapToObj(i -> this.segments[i].filter(predicate))
+      .flatMapToLong(Arrays::stream)
+      .toArray();
+  }
+
+  /** Gets the mask for the given key, or the given default if there is no entry. */
+  public long get(long key, long defaultMask) {
+    var hash = Masks.hash(key);
+    var segment = this.segment(hash);
+    var table = segment.table;
+    var slot = Segment.find(table, key, hash);
+    return (slot < 0) ? defaultMask : (long) LONGS.getAcquire(table.values, slot);
+  }
+
+  /** Gets the (canonical) option set for the given key, or null if there is no entry. */
+  public OptionSet<T> getSet(long key) {
+    var hash = Masks.hash(key);
+    var table = this.segment(hash).table;
+    var slot = Segment.find(table, key, hash);
+    return (slot < 0) ? null : this.metadata.cache().get((long) LONGS.getAcquire(table.values, slot));
+  }
+
+  /** ORs the entry for the given key (adding it if needed) with the given option(s); returns the new mask. */
+  @SafeVarargs
+  public final long or(long key, T ...options) {
+    return this.orMask(key, Masks.of(options));
+  }
+
+  /** ORs the entry for the given key (adding it if needed) with the given mask; returns the new mask. */
+  public long orMask(long key, long mask) {
+    var hash = Masks.hash(key);
+    return this.segment(hash).update(key, hash, OR, mask, null) | mask;
+  }
+
+  /** Sets the mask for the given key; returns the previous mask (0 if there was no entry). */
+  public long put(long key, long mask) {
+    var hash = Masks.hash(key);
+    return this.segment(hash).update(key, hash, PUT, mask, null);
+  }
+  public long put(long key, OptionSet<T> options) {
+    return this.put(key, options.mask);
+  }
+
+  /** Removes the entry for the given key; returns true if there was one. */
+  public boolean remove(long key) {
+    var hash = Masks.hash(key);
+    return this.segment(hash).remove(key, hash);
+  }
+
+  /** The number of entries. */
+  public int size() {
+    var size = 0;
+    for (var segment : this.segments) {
+      size += segment.size;
+    }
+    return size;
+  }
+
+  /** Copies every entry, with all segments locked (so the copy is a single point-in-time state). */
+  public Snapshot snapshot() {
+    for (var segment : this.segments) {
+      segment.lock.lock();
+    }
+    try {
+      var size = this.size();
+      var keys = new long[size];
+      var masks = new long[size];
+      var count = 0;
+      for (var segment : this.segments) {
+        count = segment.copyTo(keys, masks, count);
+      }
+      return new Snapshot(keys, masks);
+    } finally {
+      for (var segment : this.segments) {
+        segment.lock.unlock();
+      }
+    }
+  }
+
+  /** XORs the entry for the given key (adding it if needed) with the given option(s); returns the new mask. */
+  @SafeVarargs
+  public final long xor(long key, T ...options) {
+    return this.xorMask(key, Masks.of(options));
+  }
+
+  /** XORs the entry for the given key (adding it if needed) with the given mask; returns the new mask. */
+  public long xorMask(long key, long mask) {
+    var hash = Masks.hash(key);
+    return this.segment(hash).update(key, hash, XOR, mask, null) ^ mask;
+  }
+
+  /**
+   * Applies the given operation to the entry for the given key; returns the previous mask (0 if there was none).
+   * If the mask changes, the observer is told first, while the entry's segment is still locked.
+   */
+  long getAndUpdate(long key, int op, long mask, Observer observer) {
+    var hash = Masks.hash(key);
+    return this.segment(hash).update(key, hash, op, mask, observer);
+  }
+
+  /** Sees changes made by {@link #getAndUpdate}, in the order they're applied to each key. */
+  @FunctionalInterface
+  interface Observer {
+
+    /** Called (under the entry's segment lock) before the change is made. */
+    void changing(long key, long previous, long next);
+  }
+
+  /** The segment for the given key hash (by its high bits; slots use the low bits). */
+  private Segment segment(long hash) {
+    return this.segments[(int) (hash >>> (Long.SIZE - Integer.numberOfTrailingZeros(SEGMENTS)))];
+  }
+
+  /**
+   * Entries at one point in time, as parallel arrays (in no particular order).
+   *
+   * @param keys entry keys
+   * @param masks entry masks, in the same order as the keys
+   */
+  public record Snapshot(long[] keys, long[] masks) {
+
+    /** The number of entries. */
+    public int size() {
+      return this.keys.length;
+    }
+  }
+
+  /** One lock's worth of entries. */
+  private static final class Segment {
+
+    /** The smallest table with room for the given number of entries (at no more than half full). */
+    static int capacityFor(int entries) {
+      return Math.max(16, Integer.highestOneBit(Math.max(1, entries) * 2 - 1) << 1);
+    }
+
+    /** Finds the live entry for the given key, or returns -1. */
+    static int find(Table table, long key, long hash) {
+      for (int slot = (int) hash & table.mask; ; slot = (slot + 1) & table.mask) {
+        var state = (byte) STATES.getAcquire(table.states, slot);
+        if (state == EMPTY) {
+          return -1;
+        }
+        if (table.keys[slot] == key) {
+          return (state == LIVE) ? slot : -1;
+        }
+      }
+    }
+
+    final ReentrantLock lock = new ReentrantLock();
+
+    /** The current table; replaced (never modified in place) when rebuilt. */
+    volatile Table table;
+
+    /** Live entries (written under the lock). */
+    volatile int size;
+
+    /** Live entries plus tombstones (guarded by the lock). */
+    private int used;
+
+    Segment(int capacity) {
+      this.table = new Table(capacity);
+    }
+
+    int copyTo(long[] keys, long[] masks, int count) {
+      var table = this.table;
+      for (int slot = 0; slot < table.states.length; slot++) {
+        if (table.states[slot] == LIVE) {
+          keys[count] = table.keys[slot];
+          masks[count++] = table.values[slot];
+        }
+      }
+      return count;
+    }
+
+    long count(LongPredicate predicate) {
+      var table = this.table;
+      var count = 0L;
+      for (int slot = 0; slot < table.states.length; slot++) {
+        if ((byte) STATES.getAcquire(table.states, slot) == LIVE
+          && predicate.test((long) LONGS.getAcquire(table.values, slot))) {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    long[] filter(LongPredicate predicate) {
+      var table = this.table;
+      var keys = new long[16];
+      var count = 0;
+      for (int slot = 0; slot < table.states.length; slot++) {
+        if ((byte) STATES.getAcquire(table.states, slot) == LIVE
+          && predicate.test((long) LONGS.getAcquire(table.values, slot))) {
+          if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count << 1);
+          }
+          keys[count++] = table.keys[slot];
+        }
+      }
+      return Arrays.copyOf(keys, count);
+    }
+
+    int find(long key, long hash) {
+      return Segment.find(this.table, key, hash);
+    }
+
+    boolean remove(long key, long hash) {
+      this.lock.lock();
+      try {
+        var table = this.table;
+        var slot = Segment.find(table, key, hash);
+        if (slot < 0) {
+          return false;
+        }
+        STATES.setRelease(table.states, slot, DELETED);
+        this.size--;
+        return true;
+      } finally {
+        this.lock.unlock();
+      }
+    }
+
+    /** Applies the given operation to the entry for the given key; returns the previous mask (0 if none). */
+    long update(long key, long hash, int op, long mask, Observer observer) {
+      this.lock.lock();
+      try {
+        var table = this.table;
+        var slot = (int) hash & table.mask;
+        for (; table.states[slot] != EMPTY; slot = (slot + 1) & table.mask) {
+          if (table.keys[slot] == key) {
+            break;
+          }
+        }
+        var state = table.states[slot];
+        var previous = (state == LIVE) ? table.values[slot] : 0L;
+        if (state != LIVE && (op == AND_NOT || op == REMOVE)) {
+          return 0L;
+        }
+        if (observer != null) {
+          var next = switch (op) {
+            case PUT -> mask;
+            case OR -> previous | mask;
+            case AND_NOT -> previous & ~ mask;
+            case XOR -> previous ^ mask;
+            default -> 0L;
+          };
+          if (next != previous) {
+            observer.changing(key, previous, next);
+          }
+        }
+        if (op == REMOVE) {
+          STATES.setRelease(table.states, slot, DELETED);
+          this.size--;
+          return previous;
+        }
+        var next = switch (op) {
+          case PUT -> mask;
+          case OR -> previous | mask;
+          case AND_NOT -> previous & ~ mask;
+          default -> previous ^ mask;
+        };
+        LONGS.setRelease(table.values, slot, next);
+        if (state == LIVE) {
+          return previous;
+        }
+        if (state == EMPTY) {
+          if ((this.used + 1) * 2 > table.states.length) {
+            this.rebuild(key, next);
+            return 0L;
+          }
+          table.keys[slot] = key;
+          this.used++;
+        }
+        STATES.setRelease(table.states, slot, LIVE);
+        this.size++;
+        return 0L;
+      } finally {
+        this.lock.unlock();
+      }
+    }
+
+    /** Copies live entries (plus one new entry) into a new table, dropping tombstones. */
+    private void rebuild(long key, long mask) {
+      var old = this.table;
+      var table = new Table(Segment.capacityFor(this.size + 1));
+      for (int slot = 0; slot < old.states.length; slot++) {
+        if (old.states[slot] == LIVE) {
+          table.insert(old.keys[slot], old.values[slot]);
+        }
+      }
+      table.insert(key, mask);
+      this.used = this.size + 1;
+      this.size++;
+      this.table = table;
+    }
+  }
+
+  /** Parallel arrays of keys, values and slot states. */
+  private static final class Table {
+
+    final long[] keys;
+    final long[] values;
+    final byte[] states;
+    final int mask;
+
+    Table(int capacity) {
+      this.keys = new long[capacity];
+      this.values = new long[capacity];
+      this.states = new byte[capacity];
+      this.mask = capacity - 1;
+    }
+
+    /** Inserts an entry (only before the table is published). */
+    void insert(long key, long value) {
+      var slot = (int) Masks.hash(key) & this.mask;
+      while (this.states[slot] != EMPTY) {
+        slot = (slot + 1) & this.mask;
+      }
+      this.keys[slot] = key;
+      this.values[slot] = value;
+      this.states[slot] = LIVE;
+    }
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Delivers changes to option masks (e.g., runtime flags) to subscribers, batched and filtered by option.
+ *
+ * <p>Changes are published as (from, to) pairs; {@link AtomicOptionSet}'s getAnd* methods return the
+ * {@code from} side. Publishes must arrive in the order the changes were made: coalescing keeps the first
+ * {@code from} and the latest {@code to}, so two racing publishers could leave subscribers with a stale
+ * {@code to}. If several threads change the same mask, make each change and its publish one step:
+ * <pre>
+ * synchronized (flags) {
+ *   var previous = flags.getAndOr(mask);
+ *   watcher.publish(previous, previous | mask);
+ * }
+ * </pre>
+ *
+ * <p>Each subscriber watches a mask, and is only woken when one of its options actually flips.
+ * Changes that arrive while a subscriber's delivery is pending (or running) are coalesced:
+ * it then gets one {@link Change} from the first {@code from} to the latest {@code to}, and if the options it
+ * watches ended up back where they started, it isn't called at all.
+ * A subscriber is never called concurrently with itself.
+ *
+ * <p>Deliveries run on the given executor (a new virtual thread per delivery, by default).
+ * If the executor rejects a delivery, {@link #publish} throws; the change stays pending, and is delivered
+ * (coalesced) with the subscriber's next change.
+ */
+public final class OptionSetWatcher<T extends Enum<?> & Option> {
+
+  /** Starts each delivery on a new virtual thread. */
+  private static final Executor VIRTUAL_THREADS = Thread::startVirtualThread;
+
+  private final OptionMetadata<T> metadata;
+
+  private final Executor executor;
+
+  /** Current subscribers (copy-on-write). */
+  private volatile Subscription<?>[] subscriptions = new Subscription<?>[0];
+
+  /** Builds a watcher that delivers changes on virtual threads. */
+  public OptionSetWatcher(Class<T> type) {
+    this(type, VIRTUAL_THREADS);
+  }
+
+  /** Builds a watcher that delivers changes on the given executor. */
+  public OptionSetWatcher(Class<T> type, Executor executor) {
+    this.metadata = OptionMetadata.of(type);
+    this.executor = executor;
+  }
+
+  /**
+   * Publishes a change; subscribers watching any of the options that flipped are notified.
+   * Calls must be made in the order the changes were made (see above).
+   */
+  public void publish(long from, long to) {
+    var changed = from ^ to;
+    if (changed == 0) {
+      return;
+    }
+    for (var subscription : this.subscriptions) {
+      if ((subscription.mask & changed) != 0) {
+        subscription.offer(from, to);
+      }
+    }
+  }
+  public void publish(OptionSet<T> from, OptionSet<T> to) {
+    this.publish(from.mask, to.mask);
+  }
+
+  /** Subscribes to changes of any option in the given mask. */
+  public Subscription<T> subscribe(long mask, Consumer<? super Change<T>> subscriber) {
+    var subscription = new Subscription<>(this, mask, subscriber);
+    synchronized (this) {
+      var subscriptions = Arrays.copyOf(this.subscriptions, this.subscriptions.length + 1);
+      subscriptions[subscriptions.length - 1] = subscription;
+      this.subscriptions = subscriptions;
+    }
+    return subscription;
+  }
+
+  /** Subscribes to changes of the given option(s). */
+  @SafeVarargs
+  public final Subscription<T> subscribe(Consumer<? super Change<T>> subscriber, T ...options) {
+    return this.subscribe(Masks.of(options), subscriber);
+  }
+
+  private synchronized void unsubscribe(Subscription<?> subscription) {
+    this.subscriptions = Arrays.stream(this.subscriptions)
+      .filter(s -> s != subscription)
+      .toArray(Subscription<?>[]::new);
+  }
+
+  /**
+   * A (possibly coalesced) change, from one mask to another.
+   *
+   * @param from the options before the change
+   * @param to the options after the change
+   */
+  public record Change<T extends Enum<?> & Option>(OptionSet<T> from, OptionSet<T> to) {
+
+    /** Options that were added. */
+    public long added() {
+      return this.to.mask & ~ this.from.mask;
+    }
+
+    /** Was the given option added? */
+    public boolean added(T option) {
+      return (this.added() & option.value()) != 0;
+    }
+
+    /** Options that were added or removed. */
+    public long changed() {
+      return this.from.mask ^ this.to.mask;
+    }
+
+    /** Was the given option added or removed? */
+    public boolean changed(T option) {
+      return (this.changed() & option.value()) != 0;
+    }
+
+    /** Options that were removed. */
+    public long removed() {
+      return this.from.mask & ~ this.to.mask;
+    }
+
+    /** Was the given option removed? */
+    public boolean removed(T option) {
+      return (this.removed() & option.value()) != 0;
+    }
+  }
+
+  /** A registered subscriber; close it to stop receiving changes. */
+  public static final class Subscription<T extends Enum<?> & Option> implements AutoCloseable {
+
+    private final OptionSetWatcher<T> watcher;
+
+    private final long mask;
+
+    private final Consumer<? super Change<T>> subscriber;
+
+    /** Coalesced change waiting to be delivered (guarded by this). */
+    private long from;
+    private long to;
+    private boolean pending;
+
+    /** Is a delivery scheduled or running (guarded by this)? */
+    private boolean running;
+
+    private Subscription(OptionSetWatcher<T> watcher, long mask, Consumer<? super Change<T>> subscriber) {
+      this.watcher = watcher;
+      this.mask = mask;
+      this.subscriber = subscriber;
+    }
+
+    /** Stops delivery of further changes (one already running may still finish). */
+    @Override
+    public void close() {
+      this.watcher.unsubscribe(this);
+    }
+
+    private void offer(long from, long to) {
+      synchronized (this) {
+        if (! this.pending) {
+          this.from = from;
+          this.pending = true;
+        }
+        this.to = to;
+        if (this.running) {
+          return;
+        }
+        this.running = true;
+      }
+      try {
+        this.watcher.executor.execute(this::drain);
+      } catch (RuntimeException | Error e) {
+        // nothing is running after all; the change stays pending for the next offer
+        synchronized (this) {
+          this.running = false;
+        }
+        throw e;
+      }
+    }
+
+    private void drain() {
+      var finished = false;
+      try {
+        for (;;) {
+          long from;
+          long to;
+          synchronized (this) {
+            if (! this.pending) {
+              this.running = false;
+              finished = true;
+              return;
+            }
+            from = this.from;
+            to = this.to;
+            this.pending = false;
+          }
+          if (((from ^ to) & this.mask) == 0) {
+            continue;
+          }
+          var cache = this.watcher.metadata.cache();
+          try {
+            this.subscriber.accept(new Change<>(cache.get(from), cache.get(to)));
+          } catch (RuntimeException e) {
+            var thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+          }
+        }
+      } finally {
+        if (! finished) {
+          // an Error escaped the subscriber; let the next offer schedule a new delivery
+          synchronized (this) {
+            this.running = false;
+          }
+        }
+      }
+    }
+  }
+}
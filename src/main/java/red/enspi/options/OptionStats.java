@@ -0,0 +1,194 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Opt-in usage instrumentation: per-option counters of checks ({@code has}, {@code hasAny}, {@code Option.in})
+ * and changes (options added or removed by {@code and/or/xor/not}), plus optional JFR events.
+ *
+ * <p>Enable with {@code -Dred.enspi.options.stats=true}; add {@code -Dred.enspi.options.stats.events=true}
+ * to also emit {@code red.enspi.options.Created} and {@code red.enspi.options.Changed} JFR events
+ * (which then only cost anything while a recording has them enabled).
+ *
+ * <p>Both switches are read once, into static finals: when disabled, the guarded calls are dead code,
+ * and the JIT removes them entirely. Counters are {@link LongAdder}s (striped, so threads don't contend),
+ * merged when a {@link #snapshot} is taken.
+ */
+public final class OptionStats {
+
+  /** Are counters enabled? */
+  public static final boolean ENABLED = Boolean.getBoolean("red.enspi.options.stats");
+
+  /** Are JFR events enabled (requires {@link #ENABLED})? */
+  public static final boolean EVENTS = ENABLED && Boolean.getBoolean("red.enspi.options.stats.events");
+
+  private static final ClassValue<Counters> COUNTERS = new ClassValue<>() {
+    @Override
+    protected Counters computeValue(Class<?> type) {
+      return new Counters();
+    }
+  };
+
+  /** Counts a check of the given option (called by {@code Option.in}). */
+  static void checked(Option option) {
+    if (option instanceof Enum<?> constant) {
+      var bit = Long.numberOfTrailingZeros(option.value()) & (Long.SIZE - 1);
+      COUNTERS.get(constant.getDeclaringClass()).checks[bit].increment();
+    }
+  }
+
+  /** Counts a check of the options in the given mask. */
+  static void checked(OptionMetadata<?> metadata, long bits) {
+    var checks = COUNTERS.get(metadata.type).checks;
+    for (; bits != 0; bits &= bits - 1) {
+      checks[Long.numberOfTrailingZeros(bits)].increment();
+    }
+  }
+
+  /** Counts the options that differ between the two masks, and emits a JFR event if enabled. */
+  static void changed(OptionMetadata<?> metadata, long from, long to) {
+    var changes = COUNTERS.get(metadata.type).changes;
+    for (var bits = from ^ to; bits != 0; bits &= bits - 1) {
+      changes[Long.numberOfTrailingZeros(bits)].increment();
+    }
+    if (EVENTS) {
+      var event = new Changed();
+      if (event.shouldCommit()) {
+        event.type = metadata.type.getName();
+        event.from = from;
+        event.to = to;
+        event.commit();
+      }
+    }
+  }
+
+  /** Emits a JFR event for a newly constructed set. */
+  static void created(Class<?> type, long mask) {
+    var event = new Created();
+    if (event.shouldCommit()) {
+      event.type = type.getName();
+      event.mask = mask;
+      event.commit();
+    }
+  }
+
+  /** Resets the counters for the given Option enum. */
+  public static <T extends Enum<?> & Option> void reset(Class<T> type) {
+    var counters = COUNTERS.get(type);
+    for (int bit = 0; bit < Long.SIZE; bit++) {
+      counters.checks[bit].reset();
+      counters.changes[bit].reset();
+    }
+  }
+
+  /** Sums the counters for the given Option enum. */
+  public static <T extends Enum<?> & Option> Snapshot<T> snapshot(Class<T> type) {
+    var metadata = OptionMetadata.of(type);
+    var counters = COUNTERS.get(type);
+    var checks = new long[metadata.constants.length];
+    var changes = new long[metadata.constants.length];
+    for (var option : metadata.constants) {
+      var bit = Long.numberOfTrailingZeros(metadata.values[option.ordinal()]);
+      checks[option.ordinal()] = counters.checks[bit].sum();
+      changes[option.ordinal()] = counters.changes[bit].sum();
+    }
+    return new Snapshot<>(metadata.options, checks, changes);
+  }
+
+  /**
+   * Counter totals for one Option enum, at the time the snapshot was taken.
+   *
+   * @param options the enum's options, in ordinal order
+   * @param checks times each option was checked, by ordinal
+   * @param changes times each option was added or removed, by ordinal
+   */
+  public record Snapshot<T extends Enum<?> & Option>(List<T> options, long[] checks, long[] changes) {
+
+    /** Times the given option was checked. */
+    public long checks(T option) {
+      return this.checks[option.ordinal()];
+    }
+
+    /** Times the given option was added or removed. */
+    public long changes(T option) {
+      return this.changes[option.ordinal()];
+    }
+
+    /** Options that were never checked or changed. */
+    public List<T> unused() {
+      var unused = new ArrayList<T>();
+      for (var option : this.options) {
+        if (this.checks[option.ordinal()] == 0 && this.changes[option.ordinal()] == 0) {
+          unused.add(option);
+        }
+      }
+      return unused;
+    }
+  }
+
+  /** Counters for one Option enum, by bit. */
+  private static final class Counters {
+
+    final LongAdder[] checks = new LongAdder[Long.SIZE];
+
+    final LongAdder[] changes = new LongAdder[Long.SIZE];
+
+    Counters() {
+      for (int bit = 0; bit < Long.SIZE; bit++) {
+        this.checks[bit] = new LongAdder();
+        this.changes[bit] = new LongAdder();
+      }
+    }
+  }
+
+  @Name("red.enspi.options.Created")
+  @Label("OptionSet Created")
+  @Category("Options")
+  @Description("An OptionSet instance was constructed (not counting the canonical sets interned up front).")
+  static final class Created extends Event {
+    /** The Option enum (or, for a generic OptionSet subclass, the subclass). */
+    @Label("Option Enum")
+    String type;
+    @Label("Mask")
+    long mask;
+  }
+
+  @Name("red.enspi.options.Changed")
+  @Label("OptionSet Changed")
+  @Category("Options")
+  @Description("An OptionSet operation produced a set with different options.")
+  static final class Changed extends Event {
+    @Label("Option Enum")
+    String type;
+    @Label("From")
+    long from;
+    @Label("To")
+    long to;
+  }
+
+  private OptionStats() {}
+}
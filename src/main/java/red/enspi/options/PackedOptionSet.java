@@ -0,0 +1,132 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+/**
+ * Shared logic for the narrow columns ({@link ByteOptionSet}, {@link ShortOptionSet}, {@link IntOptionSet}).
+ *
+ * <p>Subclasses only supply storage and the per-row kernels, which need the primitive array type.
+ * Every query reduces to one branch-free test per row: a row matches when
+ * {@code ((row & bits) ^ target) == 0}, flipped for "any" (target is {@code bits} for "all", 0 otherwise).
+ * Filters call the kernel once per 64 rows, so the (virtual) call costs nothing per row.
+ */
+abstract sealed class PackedOptionSet<T extends Enum<?> & Option> implements OptionSetArray<T>
+  permits ByteOptionSet, ShortOptionSet, IntOptionSet {
+
+  final OptionMetadata<T> metadata;
+
+  /** The number of bits in each mask. */
+  private final int width;
+
+  PackedOptionSet(Class<T> type, int width) {
+    this.metadata = OptionMetadata.of(type);
+    if ((this.metadata.all >>> width) != 0) {
+      throw OptionSet.Error.MaskTooNarrow.throwable();
+    }
+    this.width = width;
+  }
+
+  /**
+   * Matches rows [from, to) (at most 64); returns a bitmap word with bit {@code i - from} set for matching rows.
+   * A row matches when {@code ((row & bits) ^ target) == 0}, XOR {@code flip == 0}.
+   */
+  abstract long match(int from, int to, long bits, long target, int flip);
+
+  /** Counts every row that {@link #match} would match. */
+  abstract long count(long bits, long target, int flip);
+
+  @Override
+  public final OptionSet<T> getSet(int row) {
+    return this.metadata.cache().get(this.get(row));
+  }
+
+  @Override
+  public final void set(int row, OptionSet<T> options) {
+    this.set(row, options.mask);
+  }
+
+  @Override
+  public final long[] filterAll(long mask) {
+    if ((mask >>> this.width) != 0) {
+      return new long[(this.size() + Long.SIZE - 1) >>> 6];
+    }
+    return this.filter(mask, mask, 1);
+  }
+  @SafeVarargs
+  public final long[] filterAll(T ...options) {
+    return this.filterAll(Masks.of(options));
+  }
+
+  @Override
+  public final long[] filterAny(long mask) {
+    return this.filter(mask, 0L, 0);
+  }
+  @SafeVarargs
+  public final long[] filterAny(T ...options) {
+    return this.filterAny(Masks.of(options));
+  }
+
+  @Override
+  public final long[] filterNone(long mask) {
+    return this.filter(mask, 0L, 1);
+  }
+  @SafeVarargs
+  public final long[] filterNone(T ...options) {
+    return this.filterNone(Masks.of(options));
+  }
+
+  @Override
+  public final long countAll(long mask) {
+    return ((mask >>> this.width) != 0) ? 0L : this.count(mask, mask, 1);
+  }
+  @SafeVarargs
+  public final long countAll(T ...options) {
+    return this.countAll(Masks.of(options));
+  }
+
+  @Override
+  public final long countAny(long mask) {
+    return this.count(mask, 0L, 0);
+  }
+  @SafeVarargs
+  public final long countAny(T ...options) {
+    return this.countAny(Masks.of(options));
+  }
+
+  @Override
+  public final long countNone(long mask) {
+    return this.size() - this.countAny(mask);
+  }
+  @SafeVarargs
+  public final long countNone(T ...options) {
+    return this.countNone(Masks.of(options));
+  }
+
+  @SafeVarargs
+  public final void orAll(T ...options) {
+    this.orAll(Masks.of(options));
+  }
+
+  private long[] filter(long bits, long target, int flip) {
+    var size = this.size();
+    var bitmap = new long[(size + Long.SIZE - 1) >>> 6];
+    for (int base = 0; base < size; base += Long.SIZE) {
+      bitmap[base >>> 6] = this.match(base, Math.min(base + Long.SIZE, size), bits, target, flip);
+    }
+    return bitmap;
+  }
+}
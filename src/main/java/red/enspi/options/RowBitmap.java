@@ -0,0 +1,643 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed bitmap of (unsigned, 32-bit) row ids.
+ *
+ * <p>Rows are grouped by their high 16 bits; each group of 65536 rows is stored in whichever container is smallest:
+ * a sorted array (sparse groups), a 1024-word bitmap (dense groups), or a list of runs (see {@link #runOptimize()}).
+ * This is the same layout as Roaring bitmaps, without the dependency.
+ *
+ * <p>and/or/andNot never modify their operands: they return new bitmaps.
+ * Bitmaps are not thread-safe.
+ */
+public final class RowBitmap {
+
+  /** Array containers hold at most this many values; larger groups become bitmaps. */
+  static final int ARRAY_MAX = 4096;
+
+  private static final int WORDS = 1024;
+
+  private char[] keys;
+
+  private Container[] containers;
+
+  private int size;
+
+  /** Builds an empty bitmap. */
+  public RowBitmap() {
+    this(new char[4], new Container[4], 0);
+  }
+
+  /** Builds a bitmap of the given rows. */
+  public static RowBitmap of(int ...rows) {
+    var bitmap = new RowBitmap();
+    for (var row : rows) {
+      bitmap.add(row);
+    }
+    return bitmap;
+  }
+
+  private RowBitmap(char[] keys, Container[] containers, int size) {
+    this.keys = keys;
+    this.containers = containers;
+    this.size = size;
+  }
+
+  /** Adds the given row. */
+  public void add(int row) {
+    var key = (char) (row >>> 16);
+    var i = this.indexOf(key);
+    if (i >= 0) {
+      this.containers[i] = this.containers[i].add((char) row);
+    } else {
+      this.insert(-i - 1, key, new ArrayContainer().add((char) row));
+    }
+  }
+
+  /** Removes the given row. */
+  public void remove(int row) {
+    var i = this.indexOf((char) (row >>> 16));
+    if (i >= 0) {
+      var container = this.containers[i].remove((char) row);
+      if (container.cardinality() == 0) {
+        System.arraycopy(this.keys, i + 1, this.keys, i, this.size - i - 1);
+        System.arraycopy(this.containers, i + 1, this.containers, i, this.size - i - 1);
+        this.containers[--this.size] = null;
+      } else {
+        this.containers[i] = container;
+      }
+    }
+  }
+
+  /** Is the given row in this bitmap? */
+  public boolean contains(int row) {
+    var i = this.indexOf((char) (row >>> 16));
+    return i >= 0 && this.containers[i].contains((char) row);
+  }
+
+  /** The number of rows in this bitmap. */
+  public long cardinality() {
+    var cardinality = 0L;
+    for (int i = 0; i < this.size; i++) {
+      cardinality += this.containers[i].cardinality();
+    }
+    return cardinality;
+  }
+
+  /** Is this bitmap empty? */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /** Rows in both this bitmap and the other. */
+  public RowBitmap and(RowBitmap other) {
+    var result = new RowBitmap(new char[Math.min(this.size, other.size) + 1], new Container[Math.min(this.size, other.size) + 1], 0);
+    int i = 0;
+    int j = 0;
+    while (i < this.size && j < other.size) {
+      if (this.keys[i] < other.keys[j]) {
+        i++;
+      } else if (this.keys[i] > other.keys[j]) {
+        j++;
+      } else {
+        var container = Container.and(this.containers[i], other.containers[j]);
+        if (container.cardinality() > 0) {
+          result.append(this.keys[i], container);
+        }
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /** Rows in either this bitmap or the other. */
+  public RowBitmap or(RowBitmap other) {
+    var result = new RowBitmap(new char[this.size + other.size + 1], new Container[this.size + other.size + 1], 0);
+    int i = 0;
+    int j = 0;
+    while (i < this.size || j < other.size) {
+      if (j >= other.size || (i < this.size && this.keys[i] < other.keys[j])) {
+        result.append(this.keys[i], this.containers[i].copy());
+        i++;
+      } else if (i >= this.size || this.keys[i] > other.keys[j]) {
+        result.append(other.keys[j], other.containers[j].copy());
+        j++;
+      } else {
+        result.append(this.keys[i], Container.or(this.containers[i], other.containers[j]));
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /** Rows in this bitmap but not in the other. */
+  public RowBitmap andNot(RowBitmap other) {
+    var result = new RowBitmap(new char[this.size + 1], new Container[this.size + 1], 0);
+    int j = 0;
+    for (int i = 0; i < this.size; i++) {
+      while (j < other.size && other.keys[j] < this.keys[i]) {
+        j++;
+      }
+      var container = (j < other.size && other.keys[j] == this.keys[i])
+        ? Container.andNot(this.containers[i], other.containers[j])
+        : this.containers[i].copy();
+      if (container.cardinality() > 0) {
+        result.append(this.keys[i], container);
+      }
+    }
+    return result;
+  }
+
+  /** A deep copy of this bitmap. */
+  public RowBitmap copy() {
+    var containers = new Container[this.containers.length];
+    for (int i = 0; i < this.size; i++) {
+      containers[i] = this.containers[i].copy();
+    }
+    return new RowBitmap(this.keys.clone(), containers, this.size);
+  }
+
+  /** Performs the given action for each row, in (unsigned) ascending order. */
+  public void forEach(IntConsumer action) {
+    for (int i = 0; i < this.size; i++) {
+      this.containers[i].forEach(this.keys[i] << 16, action);
+    }
+  }
+
+  /** Lists the rows in this bitmap, in (unsigned) ascending order. */
+  public int[] toArray() {
+    var rows = new int[Math.toIntExact(this.cardinality())];
+    var cursor = new int[1];
+    this.forEach(row -> rows[cursor[0]++] = row);
+    return rows;
+  }
+
+  /** Converts containers to runs wherever that is smaller; call after bulk loading. */
+  public RowBitmap runOptimize() {
+    for (int i = 0; i < this.size; i++) {
+      this.containers[i] = this.containers[i].runOptimize();
+    }
+    return this;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof RowBitmap bitmap && Arrays.equals(bitmap.toArray(), this.toArray());
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(this.toArray());
+  }
+
+  private int indexOf(char key) {
+    return Arrays.binarySearch(this.keys, 0, this.size, key);
+  }
+
+  private void insert(int i, char key, Container container) {
+    if (this.size == this.keys.length) {
+      this.keys = Arrays.copyOf(this.keys, this.size * 2);
+      this.containers = Arrays.copyOf(this.containers, this.size * 2);
+    }
+    System.arraycopy(this.keys, i, this.keys, i + 1, this.size - i);
+    System.arraycopy(this.containers, i, this.containers, i + 1, this.size - i);
+    this.keys[i] = key;
+    this.containers[i] = container;
+    this.size++;
+  }
+
+  private void append(char key, Container container) {
+    this.insert(this.size, key, container);
+  }
+
+  /** The rows of a single 65536-row group (low 16 bits only). */
+  private abstract static sealed class Container permits ArrayContainer, BitmapContainer, RunContainer {
+
+    static Container and(Container a, Container b) {
+      if (a instanceof ArrayContainer array) {
+        return array.filter(b, true);
+      }
+      if (b instanceof ArrayContainer array) {
+        return array.filter(a, true);
+      }
+      var words = a.words();
+      b.andInto(words);
+      return BitmapContainer.of(words);
+    }
+
+    static Container or(Container a, Container b) {
+      if (a instanceof ArrayContainer x && b instanceof ArrayContainer y && x.cardinality + y.cardinality <= ARRAY_MAX) {
+        return x.merge(y);
+      }
+      var words = a.words();
+      b.orInto(words);
+      return BitmapContainer.of(words);
+    }
+
+    static Container andNot(Container a, Container b) {
+      if (a instanceof ArrayContainer array) {
+        return array.filter(b, false);
+      }
+      var words = a.words();
+      b.andNotInto(words);
+      return BitmapContainer.of(words);
+    }
+
+    abstract Container add(char value);
+
+    abstract Container remove(char value);
+
+    abstract boolean contains(char value);
+
+    abstract int cardinality();
+
+    abstract Container copy();
+
+    abstract void forEach(int high, IntConsumer action);
+
+    /** A new bitmap of this container's values. */
+    abstract long[] words();
+
+    void andInto(long[] words) {
+      var mine = this.words();
+      for (int i = 0; i < WORDS; i++) {
+        words[i] &= mine[i];
+      }
+    }
+
+    void orInto(long[] words) {
+      this.forEach(0, value -> words[value >>> 6] |= 1L << value);
+    }
+
+    void andNotInto(long[] words) {
+      this.forEach(0, value -> words[value >>> 6] &= ~ (1L << value));
+    }
+
+    /** The number of runs (maximal sequences of consecutive values). */
+    abstract int runs();
+
+    Container runOptimize() {
+      var runs = this.runs();
+      var runBytes = 2 + 4 * runs;
+      var currentBytes = (this instanceof BitmapContainer) ? 8 * WORDS : 2 * this.cardinality();
+      return (runBytes < currentBytes) ? RunContainer.of(this, runs) : this;
+    }
+  }
+
+  /** A sorted array of values; for groups of up to ARRAY_MAX rows. */
+  private static final class ArrayContainer extends Container {
+
+    private char[] values;
+
+    private int cardinality;
+
+    ArrayContainer() {
+      this(new char[4], 0);
+    }
+
+    ArrayContainer(char[] values, int cardinality) {
+      this.values = values;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    Container add(char value) {
+      var i = Arrays.binarySearch(this.values, 0, this.cardinality, value);
+      if (i >= 0) {
+        return this;
+      }
+      if (this.cardinality == ARRAY_MAX) {
+        var words = this.words();
+        words[value >>> 6] |= 1L << value;
+        return new BitmapContainer(words, ARRAY_MAX + 1);
+      }
+      i = -i - 1;
+      if (this.cardinality == this.values.length) {
+        this.values = Arrays.copyOf(this.values, Math.min(ARRAY_MAX, Math.max(4, this.cardinality * 2)));
+      }
+      System.arraycopy(this.values, i, this.values, i + 1, this.cardinality - i);
+      this.values[i] = value;
+      this.cardinality++;
+      return this;
+    }
+
+    @Override
+    Container remove(char value) {
+      var i = Arrays.binarySearch(this.values, 0, this.cardinality, value);
+      if (i >= 0) {
+        System.arraycopy(this.values, i + 1, this.values, i, this.cardinality - i - 1);
+        this.cardinality--;
+      }
+      return this;
+    }
+
+    @Override
+    boolean contains(char value) {
+      return Arrays.binarySearch(this.values, 0, this.cardinality, value) >= 0;
+    }
+
+    @Override
+    int cardinality() {
+      return this.cardinality;
+    }
+
+    @Override
+    Container copy() {
+      return new ArrayContainer(Arrays.copyOf(this.values, this.cardinality), this.cardinality);
+    }
+
+    @Override
+    void forEach(int high, IntConsumer action) {
+      for (int i = 0; i < this.cardinality; i++) {
+        action.accept(high | this.values[i]);
+      }
+    }
+
+    @Override
+    long[] words() {
+      var words = new long[WORDS];
+      for (int i = 0; i < this.cardinality; i++) {
+        words[this.values[i] >>> 6] |= 1L << this.values[i];
+      }
+      return words;
+    }
+
+    @Override
+    int runs() {
+      var runs = (this.cardinality > 0) ? 1 : 0;
+      for (int i = 1; i < this.cardinality; i++) {
+        runs += (this.values[i] != this.values[i - 1] + 1) ? 1 : 0;
+      }
+      return runs;
+    }
+
+    /** Keeps the values that are (or, if keep is false, are not) in the other container. */
+    ArrayContainer filter(Container other, boolean keep) {
+      var values = new char[this.cardinality];
+      var cardinality = 0;
+      for (int i = 0; i < this.cardinality; i++) {
+        if (other.contains(this.values[i]) == keep) {
+          values[cardinality++] = this.values[i];
+        }
+      }
+      return new ArrayContainer(values, cardinality);
+    }
+
+    ArrayContainer merge(ArrayContainer other) {
+      var values = new char[this.cardinality + other.cardinality];
+      int i = 0;
+      int j = 0;
+      int k = 0;
+      while (i < this.cardinality && j < other.cardinality) {
+        var a = this.values[i];
+        var b = other.values[j];
+        values[k++] = (a <= b) ? a : b;
+        i += (a <= b) ? 1 : 0;
+        j += (b <= a) ? 1 : 0;
+      }
+      while (i < this.cardinality) {
+        values[k++] = this.values[i++];
+      }
+      while (j < other.cardinality) {
+        values[k++] = other.values[j++];
+      }
+      return new ArrayContainer(values, k);
+    }
+  }
+
+  /** A 65536-bit bitmap; for groups of more than ARRAY_MAX rows. */
+  private static final class BitmapContainer extends Container {
+
+    /** Wraps the given words, converting to an array container if they are sparse enough. */
+    static Container of(long[] words) {
+      var cardinality = 0;
+      for (var word : words) {
+        cardinality += Long.bitCount(word);
+      }
+      if (cardinality > ARRAY_MAX) {
+        return new BitmapContainer(words, cardinality);
+      }
+      var values = new char[cardinality];
+      var k = 0;
+      for (int i = 0; i < WORDS; i++) {
+        for (var word = words[i]; word != 0; word &= word - 1) {
+          values[k++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+        }
+      }
+      return new ArrayContainer(values, cardinality);
+    }
+
+    private final long[] words;
+
+    private int cardinality;
+
+    BitmapContainer(long[] words, int cardinality) {
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    Container add(char value) {
+      var bit = 1L << value;
+      var word = this.words[value >>> 6];
+      this.cardinality += ((word & bit) == 0) ? 1 : 0;
+      this.words[value >>> 6] = word | bit;
+      return this;
+    }
+
+    @Override
+    Container remove(char value) {
+      var bit = 1L << value;
+      var word = this.words[value >>> 6];
+      this.cardinality -= ((word & bit) != 0) ? 1 : 0;
+      this.words[value >>> 6] = word & ~ bit;
+      return (this.cardinality <= ARRAY_MAX) ? BitmapContainer.of(this.words) : this;
+    }
+
+    @Override
+    boolean contains(char value) {
+      return (this.words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    int cardinality() {
+      return this.cardinality;
+    }
+
+    @Override
+    Container copy() {
+      return new BitmapContainer(this.words.clone(), this.cardinality);
+    }
+
+    @Override
+    void forEach(int high, IntConsumer action) {
+      for (int i = 0; i < WORDS; i++) {
+        for (var word = this.words[i]; word != 0; word &= word - 1) {
+          action.accept(high | (i << 6) + Long.numberOfTrailingZeros(word));
+        }
+      }
+    }
+
+    @Override
+    long[] words() {
+      return this.words.clone();
+    }
+
+    @Override
+    void andInto(long[] words) {
+      for (int i = 0; i < WORDS; i++) {
+        words[i] &= this.words[i];
+      }
+    }
+
+    @Override
+    void orInto(long[] words) {
+      for (int i = 0; i < WORDS; i++) {
+        words[i] |= this.words[i];
+      }
+    }
+
+    @Override
+    void andNotInto(long[] words) {
+      for (int i = 0; i < WORDS; i++) {
+        words[i] &= ~ this.words[i];
+      }
+    }
+
+    @Override
+    int runs() {
+      var runs = 0;
+      var carry = 0L;
+      for (var word : this.words) {
+        // a run starts wherever a set bit follows a clear bit
+        runs += Long.bitCount(word & ~ ((word << 1) | carry));
+        carry = word >>> 63;
+      }
+      return runs;
+    }
+  }
+
+  /** Sorted, non-overlapping runs of consecutive values; for groups that are mostly ranges. */
+  private static final class RunContainer extends Container {
+
+    /** Builds a run container from another container, which has the given number of runs. */
+    static RunContainer of(Container container, int runs) {
+      var starts = new char[runs];
+      var lengths = new char[runs];
+      var run = new int[] {-1};
+      var previous = new int[] {-2};
+      container.forEach(0, value -> {
+        if (value != previous[0] + 1) {
+          starts[++run[0]] = (char) value;
+        } else {
+          lengths[run[0]]++;
+        }
+        previous[0] = value;
+      });
+      return new RunContainer(starts, lengths, container.cardinality());
+    }
+
+    private final char[] starts;
+
+    /** Run lengths, minus one (so a full group fits in a char). */
+    private final char[] lengths;
+
+    private final int cardinality;
+
+    RunContainer(char[] starts, char[] lengths, int cardinality) {
+      this.starts = starts;
+      this.lengths = lengths;
+      this.cardinality = cardinality;
+    }
+
+    /** Runs are compact, not editable: adding or removing converts back to an array or bitmap. */
+    @Override
+    Container add(char value) {
+      return this.contains(value) ? this : BitmapContainer.of(this.words()).add(value);
+    }
+
+    @Override
+    Container remove(char value) {
+      return this.contains(value) ? BitmapContainer.of(this.words()).remove(value) : this;
+    }
+
+    @Override
+    boolean contains(char value) {
+      var i = Arrays.binarySearch(this.starts, value);
+      if (i >= 0) {
+        return true;
+      }
+      i = -i - 2;
+      return i >= 0 && value - this.starts[i] <= this.lengths[i];
+    }
+
+    @Override
+    int cardinality() {
+      return this.cardinality;
+    }
+
+    @Override
+    Container copy() {
+      return this;
+    }
+
+    @Override
+    void forEach(int high, IntConsumer action) {
+      for (int i = 0; i < this.starts.length; i++) {
+        for (int value = this.starts[i], end = value + this.lengths[i]; value <= end; value++) {
+          action.accept(high | value);
+        }
+      }
+    }
+
+    @Override
+    long[] words() {
+      var words = new long[WORDS];
+      for (int i = 0; i < this.starts.length; i++) {
+        int start = this.starts[i];
+        int end = start + this.lengths[i];
+        var first = start >>> 6;
+        var last = end >>> 6;
+        if (first == last) {
+          words[first] |= (-1L >>> (63 - (end - start))) << start;
+        } else {
+          words[first] |= -1L << start;
+          Arrays.fill(words, first + 1, last, -1L);
+          words[last] |= -1L >>> (63 - (end & 63));
+        }
+      }
+      return words;
+    }
+
+    @Override
+    int runs() {
+      return this.starts.length;
+    }
+
+    @Override
+    Container runOptimize() {
+      return this;
+    }
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+
+import red.enspi.options.GenerateOptionSet;
+
+/**
+ * Generates OptionSet classes for Option enums annotated with {@link GenerateOptionSet}.
+ *
+ * <p>Generated classes pass their enum to OptionSet explicitly, and their masks are static finals,
+ * so nothing is discovered via reflection and flag checks can be constant-folded.
+ */
+@SupportedAnnotationTypes("red.enspi.options.GenerateOptionSet")
+public final class OptionSetProcessor extends AbstractProcessor {
+
+  /** Names the generated class already declares (so options can't use them). */
+  private static final Set<String> RESERVED =
+    Set.of("ALL", "NONE", "ALL_MASK", "TABLE", "SLOTS", "of", "with", "without", "withMask");
+
+  /** The largest enum whose generated class interns every set up front (matches OptionSetCache). */
+  static final int MAX_TABLE_OPTIONS = 12;
+
+  /** Number of weak cache slots in generated classes for larger enums (a power of two; matches OptionSetCache). */
+  static final int SLOTS = 1 << 10;
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+    var option = this.processingEnv.getElementUtils().getTypeElement("red.enspi.options.Option");
+    for (var element : round.getElementsAnnotatedWith(GenerateOptionSet.class)) {
+      if (element.getKind() != ElementKind.ENUM
+        || ! this.processingEnv.getTypeUtils().isAssignable(element.asType(), option.asType())) {
+        this.error(element, "@GenerateOptionSet must be used on an enum that implements Option.");
+        continue;
+      }
+      if (element.getModifiers().contains(Modifier.PRIVATE)) {
+        this.error(element, "@GenerateOptionSet can't be used on a private enum.");
+        continue;
+      }
+      var type = (TypeElement) element;
+      var constants = new ArrayList<String>();
+      var constantElements = new ArrayList<Element>();
+      for (var enclosed : type.getEnclosedElements()) {
+        if (enclosed.getKind() == ElementKind.ENUM_CONSTANT) {
+          constants.add(enclosed.getSimpleName().toString());
+          constantElements.add(enclosed);
+        }
+      }
+      if (constants.size() > Long.SIZE) {
+        this.error(element, "@GenerateOptionSet supports up to 64 options (use LargeOptionSet for larger enums).");
+        continue;
+      }
+      if (! this.checkNames(constantElements)) {
+        continue;
+      }
+      var name = type.getAnnotation(GenerateOptionSet.class).name();
+      try {
+        this.generate(type, name.isEmpty() ? type.getSimpleName() + "OptionSet" : name, constants);
+      } catch (IOException e) {
+        this.error(element, "Failed to write the generated OptionSet: " + e.getMessage());
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reports options whose generated constants or predicates would collide: with each other, with the generated
+   * class' own members, or with OptionSet's (inherited) members. Returns true if there are none.
+   */
+  private boolean checkNames(List<Element> constants) {
+    var elements = this.processingEnv.getElementUtils();
+    var inherited = new HashSet<String>();
+    for (var member : elements.getAllMembers(elements.getTypeElement("red.enspi.options.OptionSet"))) {
+      if (! member.getModifiers().contains(Modifier.PRIVATE)
+        && (member.getKind() == ElementKind.METHOD || member.getKind() == ElementKind.FIELD)) {
+        inherited.add(member.getSimpleName().toString());
+      }
+    }
+    var generated = new HashMap<String, String>();
+    var valid = true;
+    for (var element : constants) {
+      var constant = element.getSimpleName().toString();
+      for (var name : List.of(
+        OptionSetProcessor.constantName(constant),
+        "has" + OptionSetProcessor.methodSuffix(constant))
+      ) {
+        String conflict;
+        if (RESERVED.contains(name)) {
+          conflict = "a member the generated class declares";
+        } else if (inherited.contains(name)) {
+          conflict = "OptionSet." + name;
+        } else if (generated.putIfAbsent(name, constant) instanceof String other) {
+          conflict = "the name generated for option '" + other + "'";
+        } else {
+          continue;
+        }
+        this.error(
+          element,
+          "Option '" + constant + "' would generate '" + name + "', which conflicts with " + conflict + ".");
+        valid = false;
+      }
+    }
+    return valid;
+  }
+
+  private void generate(TypeElement type, String name, List<String> constants) throws IOException {
+    var pkg = this.processingEnv.getElementUtils().getPackageOf(type);
+    var packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+    var enumName = type.getQualifiedName().toString();
+    var qualifiedName = packageName.isEmpty() ? name : packageName + "." + name;
+    var file = this.processingEnv.getFiler().createSourceFile(qualifiedName, type);
+    try (var out = new PrintWriter(file.openWriter())) {
+      if (! packageName.isEmpty()) {
+        out.println("package " + packageName + ";");
+        out.println();
+      }
+      out.println("/** Specialized OptionSet for {@link " + enumName + "}. */");
+      out.println("@javax.annotation.processing.Generated(\"" + OptionSetProcessor.class.getName() + "\")");
+      out.println("public final class " + name + " extends red.enspi.options.OptionSet<" + enumName + "> {");
+      out.println();
+      for (var constant : constants) {
+        out.println("  public static final long " + OptionSetProcessor.constantName(constant)
+          + " = " + enumName + "." + constant + ".value();");
+      }
+      out.println();
+      out.print("  public static final long ALL_MASK = 0L");
+      for (var constant : constants) {
+        out.print(" | " + OptionSetProcessor.constantName(constant));
+      }
+      out.println(";");
+      out.println();
+      if (constants.size() <= MAX_TABLE_OPTIONS) {
+        this.generateTable(out, name);
+      } else {
+        this.generateSlots(out, name);
+      }
+      out.println();
+      out.println("  /** Gets the set for the given option(s). */");
+      out.println("  public static " + name + " of(" + enumName + " ...options) {");
+      out.println("    var mask = 0L;");
+      out.println("    for (var option : options) {");
+      out.println("      mask |= option.value();");
+      out.println("    }");
+      out.println("    return of(mask);");
+      out.println("  }");
+      out.println();
+      out.println("  private " + name + "(long mask) {");
+      out.println("    super(" + enumName + ".class, mask);");
+      out.println("  }");
+      for (var constant : constants) {
+        out.println();
+        out.println("  public boolean has" + OptionSetProcessor.methodSuffix(constant) + "() {");
+        out.println("    return (this.mask & " + OptionSetProcessor.constantName(constant) + ") != 0L;");
+        out.println("  }");
+      }
+      out.println();
+      out.println("  /** This set, plus the given option. */");
+      out.println("  public " + name + " with(" + enumName + " option) {");
+      out.println("    return this.withMask(this.mask | option.value());");
+      out.println("  }");
+      out.println();
+      out.println("  /** This set, minus the given option. */");
+      out.println("  public " + name + " without(" + enumName + " option) {");
+      out.println("    return this.withMask(this.mask & ~ option.value());");
+      out.println("  }");
+      out.println();
+      out.println("  /** The set for the given mask (or this set, if the mask is unchanged). */");
+      out.println("  public " + name + " withMask(long mask) {");
+      out.println("    return (mask == this.mask) ? this : of(mask);");
+      out.println("  }");
+      out.println("}");
+    }
+  }
+
+  /** Small enums: every set is interned up front, indexed by {@code Long.compress(mask, ALL_MASK)}. */
+  private void generateTable(PrintWriter out, String name) {
+    out.println("  /** Every set, indexed by {@code Long.compress(mask, ALL_MASK)}. */");
+    out.println("  private static final " + name + "[] TABLE = new " + name + "[1 << Long.bitCount(ALL_MASK)];");
+    out.println("  static {");
+    out.println("    for (int i = 0; i < TABLE.length; i++) {");
+    out.println("      TABLE[i] = new " + name + "(Long.expand(i, ALL_MASK));");
+    out.println("    }");
+    out.println("  }");
+    out.println();
+    out.println("  public static final " + name + " NONE = TABLE[0];");
+    out.println();
+    out.println("  public static final " + name + " ALL = TABLE[TABLE.length - 1];");
+    out.println();
+    out.println("  /** Gets the canonical set for the given mask (masks with bits outside the enum aren't interned). */");
+    out.println("  public static " + name + " of(long mask) {");
+    out.println("    return ((mask & ~ ALL_MASK) == 0L)");
+    out.println("      ? TABLE[(int) Long.compress(mask, ALL_MASK)]");
+    out.println("      : new " + name + "(mask);");
+    out.println("  }");
+  }
+
+  /** Large enums: a bounded, direct-mapped cache of weak references (a colliding mask evicts the previous entry). */
+  private void generateSlots(PrintWriter out, String name) {
+    var ref = "java.lang.ref.WeakReference<" + name + ">";
+    out.println("  /** Recently used sets; shared on a best-effort basis. */");
+    out.println("  private static final java.util.concurrent.atomic.AtomicReferenceArray<" + ref + "> SLOTS =");
+    out.println("    new java.util.concurrent.atomic.AtomicReferenceArray<>(" + SLOTS + ");");
+    out.println();
+    out.println("  public static final " + name + " NONE = new " + name + "(0L);");
+    out.println();
+    out.println("  public static final " + name + " ALL = new " + name + "(ALL_MASK);");
+    out.println();
+    out.println("  /** Gets a shared set for the given mask (only NONE and ALL are guaranteed to be canonical). */");
+    out.println("  public static " + name + " of(long mask) {");
+    out.println("    if (mask == 0L) {");
+    out.println("      return NONE;");
+    out.println("    }");
+    out.println("    if (mask == ALL_MASK) {");
+    out.println("      return ALL;");
+    out.println("    }");
+    out.println("    var slot = (int) ((mask * 0x9E3779B97F4A7C15L) >>> "
+      + (Long.SIZE - Integer.numberOfTrailingZeros(SLOTS)) + ");");
+    out.println("    var ref = SLOTS.getAcquire(slot);");
+    out.println("    if (ref != null && ref.get() instanceof " + name + " set && set.mask == mask) {");
+    out.println("      return set;");
+    out.println("    }");
+    out.println("    var set = new " + name + "(mask);");
+    out.println("    SLOTS.setRelease(slot, new java.lang.ref.WeakReference<>(set));");
+    out.println("    return set;");
+    out.println("  }");
+  }
+
+  /** Red -> RED, fooBar -> FOO_BAR, LOUD_NOISE -> LOUD_NOISE. */
+  static String constantName(String constant) {
+    return constant.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase(Locale.ROOT);
+  }
+
+  /** Red -> Red, fooBar -> FooBar, LOUD_NOISE -> LoudNoise. */
+  static String methodSuffix(String constant) {
+    var suffix = new StringBuilder();
+    for (var part : constant.split("_")) {
+      if (part.isEmpty()) {
+        continue;
+      }
+      var rest = part.substring(1);
+      suffix.append(Character.toUpperCase(part.charAt(0)))
+        .append(rest.equals(rest.toUpperCase(Locale.ROOT)) ? rest.toLowerCase(Locale.ROOT) : rest);
+    }
+    return suffix.toString();
+  }
+
+  private void error(Element element, String message) {
+    this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+  }
+}
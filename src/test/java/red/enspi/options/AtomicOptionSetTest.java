@@ -0,0 +1,99 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for AtomicOptionSet. */
+class AtomicOptionSetTest {
+
+  enum E implements Option { A, B, C, D; }
+
+  @Test
+  void setClearToggle() {
+    var actual = new AtomicOptionSet<>(E.class);
+    assertTrue(actual.set(E.A), "expected .set(A) to change the set");
+    assertFalse(actual.set(E.A), "expected a second .set(A) not to change the set");
+    assertTrue(actual.has(E.A), "expected .has(A) to be true");
+    assertTrue(actual.toggle(E.C), "expected .toggle(C) to set C");
+    assertEquals(5L, actual.get(), "expected mask to be 5; saw " + actual.get());
+    assertTrue(actual.clear(E.A), "expected .clear(A) to change the set");
+    assertFalse(actual.clear(E.A), "expected a second .clear(A) not to change the set");
+    assertFalse(actual.toggle(E.C), "expected .toggle(C) to clear C");
+    assertEquals(0L, actual.getPlain(), "expected mask to be 0; saw " + actual.getPlain());
+  }
+
+  @Test
+  void masks() {
+    var actual = new AtomicOptionSet<>(OptionSet.of(E.A, E.B));
+    assertTrue(actual.hasMask(3L), "expected .hasMask(3) to be true");
+    assertFalse(actual.hasMask(7L), "expected .hasMask(7) to be false");
+    assertTrue(actual.hasAnyMask(6L), "expected .hasAnyMask(6) to be true");
+    assertEquals(3L, actual.getAndOr(4L), "expected .getAndOr() to return the previous mask");
+    assertEquals(7L, actual.getAndXor(1L), "expected .getAndXor() to return the previous mask");
+    assertEquals(6L, actual.getAndAnd(2L), "expected .getAndAnd() to return the previous mask");
+    assertFalse(actual.compareAndSetMask(0L, 8L), "expected CAS with the wrong mask to fail");
+    assertTrue(actual.compareAndSetMask(2L, 8L), "expected CAS with the right mask to succeed");
+    assertEquals(8L, actual.getAndUpdate(mask -> mask | 1L), "expected .getAndUpdate() to return the previous mask");
+    assertEquals(8L, actual.updateAndGet(mask -> mask & 8L), "expected .updateAndGet() to return the new mask");
+    assertEquals(8L, actual.getAndSetMask(0L), "expected .getAndSetMask() to return the previous mask");
+    actual.setMaskRelease(2L);
+    assertEquals(2L, actual.getAcquire(), "expected an acquire read to see the release write");
+    actual.setMask(4L);
+    assertEquals(4L, actual.getOpaque(), "expected an opaque read to see the volatile write");
+  }
+
+  @Test
+  void options() {
+    var actual = new AtomicOptionSet<>(E.class, 5L);
+    assertTrue(actual.has(E.A, E.C), "expected .has(A, C) to be true");
+    assertFalse(actual.has(E.A, E.B), "expected .has(A, B) to be false");
+    assertTrue(actual.hasAny(E.B, E.C), "expected .hasAny(B, C) to be true");
+    assertFalse(actual.hasAny(E.B, E.D), "expected .hasAny(B, D) to be false");
+    assertFalse(actual.hasAny(), "expected .hasAny() with no options to be false");
+  }
+
+  @Test
+  void snapshot() {
+    var actual = new AtomicOptionSet<>(E.class, 5L);
+    assertSame(OptionSet.of(E.A, E.C), actual.snapshot(), "expected .snapshot() to be the canonical set");
+  }
+
+  @Test
+  void concurrentToggles() throws InterruptedException {
+    var actual = new AtomicOptionSet<>(E.class);
+    var threads = new ArrayList<Thread>();
+    for (var option : E.values()) {
+      threads.add(Thread.ofPlatform().start(() -> {
+        for (int i = 0; i < 100_001; i++) {
+          actual.toggle(option);
+        }
+      }));
+    }
+    for (var thread : threads) {
+      thread.join();
+    }
+    assertEquals(15L, actual.get(), "expected an odd number of toggles to leave every option set");
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for the classes generated for @GenerateOptionSet. */
+class GenerateOptionSetTest {
+
+  @GenerateOptionSet
+  enum Color implements Option { Red, Blue, Yellow, LOUD_NOISE; }
+
+  @GenerateOptionSet(name = "Flags")
+  enum Flag implements Option {
+    fastPath,
+    SlowPath { @Override public long value() { return 32L; } };
+  }
+
+  @GenerateOptionSet
+  enum Wide implements Option { A, B, C, D, E, F, G, H, I, J, K, L, M; }
+
+  @Test
+  void constants() {
+    assertEquals(1L, ColorOptionSet.RED, "expected RED to be 1");
+    assertEquals(8L, ColorOptionSet.LOUD_NOISE, "expected LOUD_NOISE to be 8");
+    assertEquals(15L, ColorOptionSet.ALL_MASK, "expected ALL_MASK to be 15");
+    assertEquals(32L, Flags.SLOW_PATH, "expected overridden values to be used");
+    assertEquals(0L, ColorOptionSet.NONE.mask, "expected NONE to be empty");
+    assertSame(ColorOptionSet.ALL, ColorOptionSet.of(15L), "expected .of(ALL_MASK) to be ALL");
+  }
+
+  @Test
+  void predicates() {
+    var green = ColorOptionSet.of(Color.Blue, Color.Yellow);
+    assertFalse(green.hasRed(), "expected green.hasRed() to be false");
+    assertTrue(green.hasBlue(), "expected green.hasBlue() to be true");
+    assertTrue(green.hasYellow(), "expected green.hasYellow() to be true");
+    assertFalse(green.hasLoudNoise(), "expected green.hasLoudNoise() to be false");
+    assertTrue(Flags.of(Flag.SlowPath).hasSlowPath(), "expected .hasSlowPath() to be true");
+    assertFalse(Flags.of(Flag.SlowPath).hasFastPath(), "expected .hasFastPath() to be false");
+  }
+
+  @Test
+  void mutators() {
+    var green = ColorOptionSet.of(Color.Blue, Color.Yellow);
+    assertTrue(green.with(Color.Red).hasRed(), "expected .with(Red) to include Red");
+    assertFalse(green.without(Color.Blue).hasBlue(), "expected .without(Blue) to exclude Blue");
+    assertSame(green, green.with(Color.Blue), "expected a no-op .with() to return the same set");
+    assertSame(ColorOptionSet.NONE, green.withMask(0L), "expected .withMask(0) to be NONE");
+  }
+
+  @Test
+  void canonical() {
+    var green = ColorOptionSet.of(Color.Blue, Color.Yellow);
+    assertSame(green, ColorOptionSet.of(6L), "expected equal sets to be the same instance");
+    assertSame(ColorOptionSet.of(7L), green.with(Color.Red), "expected .with() to return the canonical set");
+    assertSame(ColorOptionSet.of(4L), green.without(Color.Blue), "expected .without() to return the canonical set");
+    assertSame(Flags.of(33L), Flags.of(Flag.fastPath, Flag.SlowPath), "expected sparse masks to be interned too");
+    assertEquals(1L << 40, ColorOptionSet.of(1L << 40).mask, "expected bits outside the enum to be kept");
+    var wide = WideOptionSet.of(Wide.A, Wide.M);
+    assertSame(wide, WideOptionSet.of(wide.mask), "expected a recently used set to be shared");
+    assertSame(WideOptionSet.ALL, WideOptionSet.NONE.withMask(WideOptionSet.ALL_MASK), "expected ALL to be canonical");
+  }
+
+  @Test
+  void nameCollisions() {
+    var errors = GenerateOptionSetTest.compile("""
+      package collisions;
+      @red.enspi.options.GenerateOptionSet
+      enum Clash implements red.enspi.options.Option { fooBar, FOO_BAR, Mask, None; }
+      """);
+    assertTrue(
+      errors.stream().anyMatch(e -> e.contains("'FOO_BAR'") && e.contains("option 'fooBar'")),
+      "expected fooBar and FOO_BAR to collide; saw " + errors);
+    assertTrue(
+      errors.stream().anyMatch(e -> e.contains("'hasMask'") && e.contains("OptionSet.hasMask")),
+      "expected hasMask() to collide with OptionSet.hasMask; saw " + errors);
+    assertTrue(
+      errors.stream().anyMatch(e -> e.contains("'NONE'")),
+      "expected NONE to collide with the generated constant; saw " + errors);
+    assertFalse(
+      errors.stream().anyMatch(e -> e.contains("cannot find symbol") || e.contains("already defined")),
+      "expected no source to be generated; saw " + errors);
+  }
+
+  /** Runs the processor over the given source; returns the error messages. */
+  private static List<String> compile(String source) {
+    var compiler = ToolProvider.getSystemJavaCompiler();
+    var diagnostics = new DiagnosticCollector<JavaFileObject>();
+    var file = new SimpleJavaFileObject(URI.create("string:///collisions/Clash.java"), JavaFileObject.Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        return source;
+      }
+    };
+    compiler.getTask(
+      null,
+      new ForwardingJavaFileManager<>(compiler.getStandardFileManager(null, null, null)) {
+        @Override
+        public JavaFileObject getJavaFileForOutput(
+          Location location,
+          String className,
+          JavaFileObject.Kind kind,
+          FileObject sibling
+        ) {
+          // keep generated sources and classes in memory
+          return new SimpleJavaFileObject(URI.create("mem:///" + className + kind.extension), kind) {
+            @Override
+            public OutputStream openOutputStream() {
+              return new ByteArrayOutputStream();
+            }
+            @Override
+            public Writer openWriter() {
+              return new StringWriter();
+            }
+          };
+        }
+      },
+      diagnostics,
+      List.of(
+        "-classpath", System.getProperty("java.class.path"),
+        "-processor", "red.enspi.options.processor.OptionSetProcessor"),
+      null,
+      List.of(file)
+    ).call();
+    return diagnostics.getDiagnostics().stream()
+      .filter(d -> d.getKind() == Diagnostic.Kind.ERROR)
+      .map(d -> d.getMessage(Locale.ROOT))
+      .toList();
+  }
+
+  @Test
+  void optionSet() {
+    OptionSet<Color> green = ColorOptionSet.of(Color.Blue, Color.Yellow);
+    assertEquals(List.of(Color.Blue, Color.Yellow), green.toOptions(), "expected .toOptions() to be [Blue,Yellow]");
+    assertSame(OptionSet.of(Color.Blue), green.xor(Color.Yellow), "expected OptionSet mutators to still work");
+  }
+}
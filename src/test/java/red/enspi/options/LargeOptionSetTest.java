@@ -0,0 +1,101 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for LargeOptionSet. */
+class LargeOptionSetTest {
+
+  enum Small implements Option { A, B, C; }
+
+  enum Wide implements Option {
+    O0, O1, O2, O3, O4, O5, O6, O7, O8, O9,
+    O10, O11, O12, O13, O14, O15, O16, O17, O18, O19,
+    O20, O21, O22, O23, O24, O25, O26, O27, O28, O29,
+    O30, O31, O32, O33, O34, O35, O36, O37, O38, O39,
+    O40, O41, O42, O43, O44, O45, O46, O47, O48, O49,
+    O50, O51, O52, O53, O54, O55, O56, O57, O58, O59,
+    O60, O61, O62, O63, O64, O65, O66, O67, O68, O69;
+  }
+
+  @Test
+  void of() {
+    var actual = LargeOptionSet.of(Wide.O1, Wide.O64, Wide.O69);
+    assertEquals(2, LargeOptionSet.wordCount(Wide.class), "expected 70 options to need 2 words");
+    assertArrayEquals(new long[] {2L, 33L}, actual.words());
+    assertEquals(List.of(Wide.O1, Wide.O64, Wide.O69), actual.toOptions());
+    assertEquals(70, actual.options().size(), "expected .options() to list all 70 options");
+    assertEquals(actual, LargeOptionSet.of(Wide.class, 2L, 33L), "expected .of(type, words) to be equal");
+    assertArrayEquals(
+      new long[] {-1L, 63L},
+      LargeOptionSet.of(Wide.class, -1L, -1L).words(),
+      "expected words beyond the enum to be dropped");
+  }
+
+  @Test
+  void has() {
+    var actual = LargeOptionSet.of(Wide.O1, Wide.O64, Wide.O69);
+    assertTrue(actual.has(Wide.O64), "expected actual.has(O64) to be true");
+    assertTrue(actual.has(Wide.O1, Wide.O69), "expected actual.has(O1,O69) to be true");
+    assertFalse(actual.has(Wide.O1, Wide.O65), "expected actual.has(O1,O65) to be false");
+    assertTrue(actual.hasAny(Wide.O0, Wide.O69), "expected actual.hasAny(O0,O69) to be true");
+    assertFalse(actual.hasAny(Wide.O0, Wide.O65), "expected actual.hasAny(O0,O65) to be false");
+    assertTrue(actual.has(LargeOptionSet.of(Wide.O1, Wide.O69)), "expected actual.has({O1,O69}) to be true");
+    assertFalse(actual.has(LargeOptionSet.of(Wide.O2, Wide.O69)), "expected actual.has({O2,O69}) to be false");
+    assertTrue(actual.hasAny(LargeOptionSet.of(Wide.O2, Wide.O69)), "expected actual.hasAny({O2,O69}) to be true");
+    assertFalse(actual.hasAny(LargeOptionSet.of(Wide.O2, Wide.O68)), "expected actual.hasAny({O2,O68}) to be false");
+  }
+
+  @Test
+  void mutators() {
+    var actual = LargeOptionSet.of(Wide.O1, Wide.O64);
+    assertEquals(LargeOptionSet.of(Wide.O64), actual.and(Wide.O64));
+    assertEquals(actual, actual.and(Wide.O1, Wide.O2, Wide.O64), "expected .and() to keep the given options in the set");
+    assertEquals(LargeOptionSet.of(Wide.O1, Wide.O64, Wide.O65), actual.or(Wide.O65));
+    assertEquals(LargeOptionSet.of(Wide.O64, Wide.O65), actual.xor(Wide.O1, Wide.O65));
+    var other = LargeOptionSet.of(Wide.O1, Wide.O2, Wide.O65);
+    assertEquals(LargeOptionSet.of(Wide.O1), actual.and(other));
+    assertEquals(LargeOptionSet.of(Wide.O1, Wide.O2, Wide.O64, Wide.O65), actual.or(other));
+    assertEquals(LargeOptionSet.of(Wide.O2, Wide.O64, Wide.O65), actual.xor(other));
+    var not = actual.not();
+    assertEquals(68, not.toOptions().size(), "expected .not() to include the other 68 options");
+    assertEquals(actual, not.not(), "expected .not().not() to be the original set");
+  }
+
+  @Test
+  void singleWord() {
+    var actual = LargeOptionSet.of(Small.A, Small.C);
+    assertArrayEquals(new long[] {5L}, actual.words());
+    assertEquals(LargeOptionSet.of(Small.B), actual.not());
+    assertEquals(LargeOptionSet.of(Small.C), actual.and(LargeOptionSet.of(Small.B, Small.C)));
+    assertTrue(actual.has(LargeOptionSet.of(Small.C)), "expected actual.has({C}) to be true");
+  }
+
+  @Test
+  void optionSetRejectsWideEnums() {
+    assertThrows(RuntimeException.class, () -> OptionSet.of(Wide.O1));
+  }
+}
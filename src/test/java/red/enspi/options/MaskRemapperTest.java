@@ -0,0 +1,74 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for MaskRemapper. */
+class MaskRemapperTest {
+
+  enum V1 implements Option { A, B, C; }
+
+  enum V2 implements Option { C, X, A; }
+
+  @Test
+  void remap() {
+    var remapper = MaskRemapper.to(OptionSchema.of(V1.class), V2.class);
+    assertFalse(remapper.isIdentity(), "expected reordered options to need remapping");
+    assertEquals(Masks.of(V1.B), remapper.dropped(), "expected B to be dropped");
+    assertEquals(Masks.of(V2.A, V2.C), remapper.remap(Masks.of(V1.A, V1.B, V1.C)));
+    assertEquals(Masks.of(V2.A), remapper.remap(Masks.of(V1.A)));
+    assertEquals(0L, remapper.remap(Masks.of(V1.B)));
+    var masks = new long[] {1L, 2L, 4L, 7L};
+    remapper.remap(masks, 1, 4);
+    assertArrayEquals(new long[] {1L, 0L, 1L, 5L}, masks);
+  }
+
+  @Test
+  void identity() {
+    var remapper = MaskRemapper.to(OptionSchema.of(V1.class), V1.class);
+    assertTrue(remapper.isIdentity(), "expected the same schema to need no remapping");
+    assertEquals(5L, remapper.remap(5L));
+  }
+
+  @Test
+  void everyByte() {
+    // reverse the bits of a 64-option schema, and check against a per-bit loop
+    var names = new ArrayList<String>();
+    var from = new ArrayList<Integer>();
+    var to = new ArrayList<Integer>();
+    for (int bit = 0; bit < Long.SIZE; bit++) {
+      names.add("O" + bit);
+      from.add(bit);
+      to.add(63 - bit);
+    }
+    var remapper = MaskRemapper.between(new OptionSchema("a", names, from), new OptionSchema("b", names, to));
+    var random = new Random(3);
+    for (int i = 0; i < 1000; i++) {
+      var mask = random.nextLong();
+      assertEquals(Long.reverse(mask), remapper.remap(mask), "mask " + mask);
+    }
+  }
+}
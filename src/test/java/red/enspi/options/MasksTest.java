@@ -0,0 +1,104 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for Masks, and for the allocation-free OptionSet queries. */
+class MasksTest {
+
+  enum E implements Option { A, B, C, D; }
+
+  private static final int ITERATIONS = 1_000_000;
+
+  /** Allowance for incidental allocation (e.g., by the counters themselves); far less than one byte per call. */
+  private static final long ALLOCATION_SLACK = 4 * 1024;
+
+  private int sink;
+
+  @Test
+  void of() {
+    assertEquals(1L, Masks.of(E.A), "expected of(A) to be 1");
+    assertEquals(3L, Masks.of(E.A, E.B), "expected of(A,B) to be 3");
+    assertEquals(7L, Masks.of(E.A, E.B, E.C), "expected of(A,B,C) to be 7");
+    assertEquals(15L, Masks.of(E.A, E.B, E.C, E.D), "expected of(A,B,C,D) to be 15");
+    assertEquals(15L, Masks.of(E.values()), "expected of(values()) to be 15");
+  }
+
+  @Test
+  void has() {
+    assertTrue(Masks.has(5L, 4L), "expected has(5,4) to be true");
+    assertFalse(Masks.has(5L, 6L), "expected has(5,6) to be false");
+    assertTrue(Masks.hasAny(5L, 6L), "expected hasAny(5,6) to be true");
+    assertFalse(Masks.hasAny(5L, 2L), "expected hasAny(5,2) to be false");
+    assertTrue(Masks.hasNone(5L, 2L), "expected hasNone(5,2) to be true");
+    assertFalse(Masks.hasNone(5L, 6L), "expected hasNone(5,6) to be false");
+  }
+
+  @Test
+  void allocationFree() {
+    var threads = ManagementFactory.getThreadMXBean();
+    assumeTrue(
+      threads instanceof com.sun.management.ThreadMXBean sunThreads
+        && sunThreads.isThreadAllocatedMemorySupported()
+        && sunThreads.isThreadAllocatedMemoryEnabled(),
+      "thread allocation counters are not available on this JVM");
+    var counters = (com.sun.management.ThreadMXBean) threads;
+    var set = OptionSet.of(E.A, E.C);
+    // warm up, so the measured loop runs compiled code
+    this.query(set, ITERATIONS);
+
+    var threadId = Thread.currentThread().threadId();
+    var before = counters.getThreadAllocatedBytes(threadId);
+    this.query(set, ITERATIONS);
+    var allocated = counters.getThreadAllocatedBytes(threadId) - before;
+    assertTrue(
+      allocated <= ALLOCATION_SLACK,
+      "expected no allocation; saw " + allocated + " bytes over " + ITERATIONS + " iterations");
+  }
+
+  private void query(OptionSet<E> set, int iterations) {
+    var sink = 0;
+    for (int i = 0; i < iterations; i++) {
+      var mask = set.mask + (i & 1);
+      sink += set.has(E.A) ? 1 : 0;
+      sink += set.has(E.A, E.C) ? 1 : 0;
+      sink += set.has(E.A, E.B, E.C) ? 1 : 0;
+      sink += set.has(E.A, E.B, E.C, E.D) ? 1 : 0;
+      sink += set.hasAny(E.B) ? 1 : 0;
+      sink += set.hasAny(E.B, E.D) ? 1 : 0;
+      sink += set.hasAny(E.A, E.B, E.D) ? 1 : 0;
+      sink += set.hasAny(E.A, E.B, E.C, E.D) ? 1 : 0;
+      sink += set.hasMask(mask) ? 1 : 0;
+      sink += set.hasAnyMask(mask) ? 1 : 0;
+      sink += (set.or(E.A) == set) ? 1 : 0;
+      sink += set.xor(E.B).has(E.B) ? 1 : 0;
+      sink += set.and(E.C).size();
+      sink += (int) set.or(E.D).mask;
+      sink += Masks.has(mask, Masks.of(E.A, E.C)) ? 1 : 0;
+      sink += Masks.hasAny(mask, Masks.of(E.B, E.D)) ? 1 : 0;
+    }
+    this.sink += sink;
+  }
+}
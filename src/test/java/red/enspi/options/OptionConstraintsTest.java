@@ -0,0 +1,84 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for OptionConstraints. */
+class OptionConstraintsTest {
+
+  enum Sound implements Option { Loud, Quiet, Muted, Bass, Treble, Stereo; }
+
+  @Test
+  void atMostOne() {
+    var rules = OptionConstraints.of(Sound.class).atMostOne(Sound.Loud, Sound.Quiet, Sound.Muted);
+    assertTrue(rules.isValid(OptionSet.of(Sound.Loud, Sound.Bass)), "expected {Loud,Bass} to be valid");
+    assertTrue(rules.isValid(0L), "expected an empty set to be valid");
+    assertFalse(rules.isValid(OptionSet.of(Sound.Loud, Sound.Quiet)), "expected {Loud,Quiet} to be invalid");
+    assertFalse(rules.isValid(OptionSet.of(Sound.Quiet, Sound.Muted)), "expected {Quiet,Muted} to be invalid");
+  }
+
+  @Test
+  void excludes() {
+    var rules = OptionConstraints.of(Sound.class).excludes(Sound.Muted, Sound.Bass, Sound.Treble);
+    assertTrue(rules.isValid(OptionSet.of(Sound.Bass, Sound.Treble)), "expected {Bass,Treble} to be valid");
+    assertFalse(rules.isValid(OptionSet.of(Sound.Treble, Sound.Muted)), "expected {Treble,Muted} to be invalid");
+  }
+
+  @Test
+  void implies() {
+    var rules = OptionConstraints.of(Sound.class)
+      .implies(Sound.Bass, Sound.Stereo)
+      .implies(Sound.Stereo, Sound.Loud);
+    assertFalse(rules.isValid(OptionSet.of(Sound.Bass, Sound.Stereo)), "expected Bass to imply Loud, transitively");
+    assertTrue(rules.isValid(OptionSet.of(Sound.Bass, Sound.Stereo, Sound.Loud)), "expected {Bass,Stereo,Loud} to be valid");
+    assertSame(OptionSet.of(Sound.Bass, Sound.Stereo, Sound.Loud), rules.normalize(OptionSet.of(Sound.Bass)));
+    assertEquals(Masks.of(Sound.Quiet), rules.normalize(Masks.of(Sound.Quiet)), "expected nothing implied by Quiet");
+  }
+
+  @Test
+  void atLeastOne() {
+    var rules = OptionConstraints.of(Sound.class)
+      .atLeastOne(Sound.Loud, Sound.Quiet, Sound.Muted)
+      .atLeastOne(Sound.Stereo);
+    assertFalse(rules.isValid(0L), "expected an empty set to be invalid");
+    assertFalse(rules.isValid(OptionSet.of(Sound.Stereo)), "expected {Stereo} to be invalid");
+    assertTrue(rules.isValid(OptionSet.of(Sound.Stereo, Sound.Quiet)), "expected {Stereo,Quiet} to be valid");
+    assertThrows(RuntimeException.class, () -> rules.requireValid(OptionSet.of(Sound.Loud)));
+  }
+
+  @Test
+  void filterInvalid() {
+    var rules = OptionConstraints.of(Sound.class).atMostOne(Sound.Loud, Sound.Quiet);
+    var masks = new long[70];
+    var expected = new long[2];
+    for (int i = 0; i < masks.length; i++) {
+      masks[i] = i & 3;
+      if ((i & 3) == 3) {
+        expected[i >>> 6] |= 1L << i;
+      }
+    }
+    assertArrayEquals(expected, rules.filterInvalid(masks));
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for OptionMetadata. */
+class OptionMetadataTest {
+
+  enum E implements Option { A, B, C; }
+
+  enum Custom implements Option {
+    X { @Override public long value() { return 8L; } },
+    Y { @Override public long value() { return 2L; } };
+  }
+
+  enum Duplicate implements Option {
+    X,
+    Y { @Override public long value() { return 1L; } };
+  }
+
+  @Test
+  void of() {
+    var metadata = OptionMetadata.of(E.class);
+    assertSame(metadata, OptionMetadata.of(E.B), "expected one shared instance per enum");
+    assertSame(E.class, metadata.type);
+    assertEquals(List.of(E.A, E.B, E.C), metadata.options);
+    assertArrayEquals(new long[] {1L, 2L, 4L}, metadata.values);
+    assertEquals(7L, metadata.all, "expected all to be 7; saw " + metadata.all);
+  }
+
+  @Test
+  void option() {
+    var metadata = OptionMetadata.of(E.class);
+    assertSame(E.A, metadata.option(0));
+    assertSame(E.C, metadata.option(2));
+    assertNull(metadata.option(3), "expected no option at bit 3");
+  }
+
+  @Test
+  void customValues() {
+    var metadata = OptionMetadata.of(Custom.class);
+    assertSame(Custom.class, OptionMetadata.of(Custom.X).type, "expected constant bodies to resolve to the enum");
+    assertArrayEquals(new long[] {8L, 2L}, metadata.values);
+    assertEquals(10L, metadata.all, "expected all to be 10; saw " + metadata.all);
+    assertSame(Custom.X, metadata.option(3));
+    assertSame(Custom.Y, metadata.option(1));
+    assertNull(metadata.option(0), "expected no option at bit 0");
+  }
+
+  @Test
+  void invalidValues() {
+    assertThrows(RuntimeException.class, () -> OptionMetadata.of(Duplicate.class));
+  }
+}
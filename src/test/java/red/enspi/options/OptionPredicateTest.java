@@ -0,0 +1,148 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for OptionPredicate. */
+class OptionPredicateTest {
+
+  enum Color implements Option { Red, Blue, Yellow, Green; }
+
+  @Test
+  void parse() {
+    var predicate = OptionPredicate.parse(Color.class, "Red & !Blue & (Yellow | Green)");
+    assertEquals("Red & !Blue & (Yellow | Green)", predicate.toString());
+    assertTrue(predicate.test(OptionSet.of(Color.Red, Color.Green)), "expected {Red,Green} to match");
+    assertTrue(predicate.test(OptionSet.of(Color.Red, Color.Yellow, Color.Green)), "expected {Red,Yellow,Green} to match");
+    assertFalse(predicate.test(OptionSet.of(Color.Red)), "expected {Red} not to match");
+    assertFalse(predicate.test(OptionSet.of(Color.Red, Color.Blue, Color.Green)), "expected {Red,Blue,Green} not to match");
+    assertFalse(predicate.test(OptionSet.of(Color.Yellow, Color.Green)), "expected {Yellow,Green} not to match");
+  }
+
+  @Test
+  void fluent() {
+    var predicate = OptionPredicate.has(Color.Red)
+      .and(OptionPredicate.hasNone(Color.Blue))
+      .and(OptionPredicate.hasAny(Color.Yellow, Color.Green));
+    assertEquals(OptionPredicate.parse(Color.class, "Red & !Blue & (Yellow | Green)"), predicate);
+    assertEquals(OptionPredicate.of(Color.class, 1L, 2L, 12L), predicate);
+  }
+
+  @Test
+  void normalize() {
+    assertEquals("Red", OptionPredicate.parse(Color.class, "Red & (Red | Blue)").toString());
+    assertEquals("Red", OptionPredicate.parse(Color.class, "!!Red").toString());
+    assertEquals("(Red | Blue)", OptionPredicate.parse(Color.class, "!(!Red & !Blue)").toString());
+    assertEquals("!Red & !Blue", OptionPredicate.parse(Color.class, "!(Red | Blue)").toString());
+    assertEquals("false", OptionPredicate.parse(Color.class, "Red & !Red").toString());
+  }
+
+  @Test
+  void exhaustive() {
+    var expressions = new String[] {
+      "Red & !Blue & (Yellow | Green)",
+      "(Red & Blue) | (Yellow & !Green)",
+      "!(Red & (Blue | !Yellow)) & Green",
+      "Red | Blue & Yellow | !Green",
+    };
+    for (var expression : expressions) {
+      var predicate = OptionPredicate.parse(Color.class, expression);
+      var negated = predicate.negate();
+      for (long mask = 0; mask < 16; mask++) {
+        var expected = OptionPredicateTest.evaluate(expression, mask);
+        assertEquals(expected, predicate.test(mask), expression + " with mask " + mask);
+        assertEquals(! expected, negated.test(mask), "!(" + expression + ") with mask " + mask);
+      }
+    }
+  }
+
+  @Test
+  void batch() {
+    var predicate = OptionPredicate.parse(Color.class, "Red & !Blue");
+    var masks = new long[130];
+    var expected = new long[3];
+    for (int i = 0; i < masks.length; i++) {
+      masks[i] = i & 15;
+      if ((i & 3) == 1) {
+        expected[i >>> 6] |= 1L << i;
+      }
+    }
+    assertArrayEquals(expected, predicate.test(masks));
+  }
+
+  @Test
+  void invalid() {
+    assertThrows(RuntimeException.class, () -> OptionPredicate.parse(Color.class, "Red &"));
+    assertThrows(RuntimeException.class, () -> OptionPredicate.parse(Color.class, "(Red | Blue"));
+    assertThrows(RuntimeException.class, () -> OptionPredicate.parse(Color.class, "Red Blue"));
+    assertThrows(RuntimeException.class, () -> OptionPredicate.parse(Color.class, "Purple"));
+  }
+
+  /** Naive evaluation: substitutes each option's presence and evaluates the expression with plain booleans. */
+  private static boolean evaluate(String expression, long mask) {
+    for (var color : Color.values()) {
+      expression = expression.replace(color.name(), ((mask & color.value()) != 0) ? "T" : "F");
+    }
+    return new Object() {
+      int position = 0;
+      String source;
+
+      boolean eval(String source) {
+        this.source = source.replace(" ", "");
+        return this.or();
+      }
+
+      boolean or() {
+        var value = this.and();
+        while (this.position < this.source.length() && this.source.charAt(this.position) == '|') {
+          this.position++;
+          value |= this.and();
+        }
+        return value;
+      }
+
+      boolean and() {
+        var value = this.not();
+        while (this.position < this.source.length() && this.source.charAt(this.position) == '&') {
+          this.position++;
+          value &= this.not();
+        }
+        return value;
+      }
+
+      boolean not() {
+        var c = this.source.charAt(this.position++);
+        if (c == '!') {
+          return ! this.not();
+        }
+        if (c == '(') {
+          var value = this.or();
+          this.position++;
+          return value;
+        }
+        return c == 'T';
+      }
+    }.eval(expression);
+  }
+}
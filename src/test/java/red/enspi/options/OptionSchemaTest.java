@@ -0,0 +1,51 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for OptionSchema. */
+class OptionSchemaTest {
+
+  enum E implements Option {
+    A,
+    B { @Override public long value() { return 8L; } },
+    C;
+  }
+
+  @Test
+  void of() {
+    var schema = OptionSchema.of(E.class);
+    assertEquals(E.class.getName(), schema.type());
+    assertEquals(List.of("A", "B", "C"), schema.names());
+    assertEquals(List.of(0, 3, 2), schema.bits());
+  }
+
+  @Test
+  void roundTrip() {
+    var schema = OptionSchema.of(E.class);
+    var buffer = ByteBuffer.allocate(schema.encodedSize());
+    schema.write(buffer);
+    assertEquals(0, buffer.remaining(), "expected .encodedSize() to match what .write() wrote");
+    assertEquals(schema, OptionSchema.read(buffer.flip()), "expected the schema to survive a round trip");
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for OptionSetArray, and the narrow columns (ByteOptionSet, ShortOptionSet, IntOptionSet). */
+class OptionSetArrayTest {
+
+  enum Eight implements Option { A, B, C, D, E, F, G, H; }
+
+  enum Nine implements Option { A, B, C, D, E, F, G, H, I; }
+
+  enum High implements Option {
+    A,
+    B { @Override public long value() { return 1L << 31; } };
+  }
+
+  enum Wide implements Option {
+    A,
+    B { @Override public long value() { return 1L << 40; } };
+  }
+
+  @Test
+  void of() {
+    assertInstanceOf(ByteOptionSet.class, OptionSetArray.of(Eight.class, 1));
+    assertInstanceOf(ShortOptionSet.class, OptionSetArray.of(Nine.class, 1));
+    assertInstanceOf(IntOptionSet.class, OptionSetArray.of(High.class, 1));
+    assertInstanceOf(OptionSetColumn.class, OptionSetArray.of(Wide.class, 1));
+    assertThrows(RuntimeException.class, () -> new ByteOptionSet<>(Nine.class, 1));
+  }
+
+  @Test
+  void staticMasks() {
+    var mask = ByteOptionSet.of(Eight.A, Eight.H);
+    assertEquals((byte) 0x81, mask, "expected the mask to be 0x81; saw " + mask);
+    assertTrue(ByteOptionSet.has(mask, ByteOptionSet.of(Eight.H)), "expected the mask to have H");
+    assertTrue(ByteOptionSet.hasNone(mask, ByteOptionSet.of(Eight.B)), "expected the mask not to have B");
+    assertSame(OptionSet.of(Eight.A, Eight.H), ByteOptionSet.toOptionSet(Eight.class, mask));
+    assertSame(OptionSet.of(Nine.I), ShortOptionSet.toOptionSet(Nine.class, ShortOptionSet.of(Nine.I)));
+    assertSame(OptionSet.of(High.B), IntOptionSet.toOptionSet(High.class, IntOptionSet.of(High.B)));
+  }
+
+  @Test
+  void matchesColumn() {
+    OptionSetArrayTest.matchesColumn(Eight.class, new ByteOptionSet<>(Eight.class, 300));
+    OptionSetArrayTest.matchesColumn(Nine.class, new ShortOptionSet<>(Nine.class, 300));
+    OptionSetArrayTest.matchesColumn(High.class, new IntOptionSet<>(High.class, 300));
+  }
+
+  private static <T extends Enum<?> & Option> void matchesColumn(Class<T> type, OptionSetArray<T> array) {
+    var all = OptionMetadata.of(type).all;
+    var column = new OptionSetColumn<>(type, array.size());
+    var random = new Random(7);
+    for (int row = 0; row < array.size(); row++) {
+      var mask = random.nextLong() & all;
+      array.set(row, mask);
+      column.set(row, mask);
+      assertEquals(mask, array.get(row), "expected row " + row + " to read back unchanged");
+    }
+    var name = array.getClass().getSimpleName();
+    for (var mask : new long[] {0L, all, all & - all, Long.highestOneBit(all), all & 0x5555_5555L, 1L << 50}) {
+      assertArrayEquals(column.filterAll(mask), array.filterAll(mask), name + ".filterAll(" + mask + ")");
+      assertArrayEquals(column.filterAny(mask), array.filterAny(mask), name + ".filterAny(" + mask + ")");
+      assertArrayEquals(column.filterNone(mask), array.filterNone(mask), name + ".filterNone(" + mask + ")");
+      assertEquals(column.countAll(mask), array.countAll(mask), name + ".countAll(" + mask + ")");
+      assertEquals(column.countAny(mask), array.countAny(mask), name + ".countAny(" + mask + ")");
+      assertEquals(column.countNone(mask), array.countNone(mask), name + ".countNone(" + mask + ")");
+    }
+    var high = Long.highestOneBit(all);
+    array.orAll(high);
+    column.orAll(high);
+    array.andAll(~ 1L);
+    column.andAll(~ 1L);
+    for (int row = 0; row < array.size(); row++) {
+      assertEquals(column.get(row), array.get(row), name + " row " + row + " after orAll/andAll");
+      assertSame(column.getSet(row), array.getSet(row), name + " set at row " + row);
+      assertTrue(array.has(row, high), name + " row " + row + " should have the highest option");
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for OptionSetCache. */
+class OptionSetCacheTest {
+
+  enum Small implements Option { A, B, C; }
+
+  enum Custom implements Option {
+    X { @Override public long value() { return 16L; } },
+    Y { @Override public long value() { return 4L; } };
+  }
+
+  enum Large implements Option { A, B, C, D, E, F, G, H, I, J, K, L, M, N, O, P; }
+
+  @Test
+  void small() {
+    var ac = OptionSet.of(Small.A, Small.C);
+    assertSame(ac, OptionSet.of(Small.C, Small.A), "expected .of() to return the canonical set");
+    assertSame(ac, OptionSet.of(Small.A).or(Small.C), "expected .or() to return the canonical set");
+    assertSame(ac, OptionSet.of(Small.class, 5L), "expected .of(type, mask) to return the canonical set");
+    assertSame(OptionSet.of(Small.A), ac.xor(Small.C), "expected .xor() to return the canonical set");
+    assertSame(OptionSet.of(Small.C), new OptionSet<Small>() {}.or(Small.C), "expected .or() to return the canonical set");
+    assertEquals(List.of(Small.A, Small.C), OptionSet.of(Small.class, 5L).toOptions());
+  }
+
+  @Test
+  void customValues() {
+    var xy = OptionSet.of(Custom.X, Custom.Y);
+    assertEquals(20L, xy.mask, "expected .of(X,Y) to be 20; saw " + xy.mask);
+    assertSame(xy, OptionSet.of(Custom.Y).or(Custom.X), "expected .or() to return the canonical set");
+    assertEquals(List.of(Custom.Y, Custom.X), xy.toOptions(), "expected .toOptions() in bit order");
+  }
+
+  @Test
+  void outOfRange() {
+    var not = OptionSet.of(Small.A).not();
+    assertEquals(-2L, not.mask, "expected .not() to keep every bit; saw " + not.mask);
+    assertSame(not, OptionSet.of(Small.class, -2L), "expected a strongly-held set to stay cached");
+  }
+
+  @Test
+  void large() {
+    var ap = OptionSet.of(Large.A, Large.P);
+    assertEquals(0x8001L, ap.mask, "expected .of(A,P) to be 0x8001; saw " + ap.mask);
+    assertSame(ap, OptionSet.of(Large.A).or(Large.P), "expected a strongly-held set to stay cached");
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import red.enspi.options.OptionSetCodec.Encoding;
+
+/** Tests for OptionSetCodec. */
+class OptionSetCodecTest {
+
+  enum V1 implements Option { A, B, C, D, E, F, G, H, I; }
+
+  enum V2 implements Option { I, A, C, New; }
+
+  @Test
+  void varint() {
+    var buffer = ByteBuffer.allocate(64);
+    for (var value : new long[] {0L, 1L, 127L, 128L, 300L, -1L}) {
+      buffer.clear();
+      OptionSetCodec.writeVarint(buffer, value);
+      assertEquals(OptionSetCodec.varintSize(value), buffer.position(), "size of " + value);
+      buffer.flip();
+      assertEquals(value, OptionSetCodec.readVarint(buffer));
+    }
+    assertEquals(1, OptionSetCodec.varintSize(0L));
+    assertEquals(10, OptionSetCodec.varintSize(-1L));
+    var bad = ByteBuffer.wrap(new byte[11]);
+    Arrays.fill(bad.array(), (byte) 0x80);
+    assertThrows(RuntimeException.class, () -> OptionSetCodec.readVarint(bad));
+    var overflow = ByteBuffer.wrap(new byte[10]);
+    Arrays.fill(overflow.array(), (byte) 0xFF);
+    overflow.put(9, (byte) 0x02);
+    assertThrows(
+      RuntimeException.class,
+      () -> OptionSetCodec.readVarint(overflow),
+      "expected a 10th byte with bits above bit 63 to be rejected");
+  }
+
+  @Test
+  void single() {
+    for (var encoding : Encoding.values()) {
+      var codec = OptionSetCodec.of(V1.class, encoding);
+      var buffer = ByteBuffer.allocate(16);
+      codec.write(buffer, OptionSet.of(V1.A, V1.I));
+      assertEquals(2, buffer.position(), encoding + ": expected {A,I} to take 2 bytes");
+      assertEquals(codec.encodedSize(Masks.of(V1.A, V1.I)), buffer.position());
+      buffer.flip();
+      assertSame(OptionSet.of(V1.A, V1.I), codec.readSet(buffer));
+    }
+  }
+
+  @Test
+  void stream() {
+    var masks = new long[1000];
+    for (int i = 0; i < masks.length; i++) {
+      masks[i] = (i * 37L) & 0x1FF;
+    }
+    for (var encoding : Encoding.values()) {
+      var codec = OptionSetCodec.of(V1.class, encoding);
+      var buffer = ByteBuffer.allocate(codec.headerSize() + masks.length * 2);
+      codec.writeHeader(buffer);
+      assertEquals(codec.headerSize(), buffer.position(), "expected headerSize to match what was written");
+      codec.writeAll(buffer, masks, 0, masks.length);
+      buffer.flip();
+      var reader = OptionSetCodec.readHeader(buffer, V1.class);
+      assertFalse(reader.isRemapping(), "expected the same enum to need no remapping");
+      var read = new long[masks.length + 10];
+      assertEquals(masks.length, reader.readAll(buffer, read, 0, read.length), encoding + ": expected every mask");
+      assertArrayEquals(masks, Arrays.copyOf(read, masks.length), encoding + ": expected masks to round-trip");
+    }
+  }
+
+  @Test
+  void remapping() {
+    var writer = OptionSetCodec.of(V1.class, Encoding.FIXED);
+    var buffer = ByteBuffer.allocate(256);
+    writer.writeHeader(buffer);
+    writer.write(buffer, Masks.of(V1.A, V1.B, V1.I));
+    writer.write(buffer, Masks.of(V1.C));
+    buffer.flip();
+    var reader = OptionSetCodec.readHeader(buffer, V2.class);
+    assertTrue(reader.isRemapping(), "expected a changed enum to need remapping");
+    assertSame(OptionSet.of(V2.A, V2.I), reader.readSet(buffer));
+    var rest = new long[4];
+    assertEquals(1, reader.readAll(buffer, rest, 0, rest.length));
+    assertEquals(Masks.of(V2.C), rest[0]);
+  }
+
+  @Test
+  void truncated() {
+    var writer = OptionSetCodec.of(V1.class, Encoding.VARINT);
+    var buffer = ByteBuffer.allocate(256);
+    writer.writeHeader(buffer);
+    writer.write(buffer, Masks.of(V1.A, V1.B, V1.I));
+    writer.write(buffer, Masks.of(V1.C));
+    writer.write(buffer, Masks.of(V1.I));
+    buffer.position(buffer.position() - 1);
+    buffer.flip();
+    var reader = OptionSetCodec.readHeader(buffer, V2.class);
+    var partial = buffer.position() + 3;
+    var read = new long[4];
+    assertEquals(2, reader.readAll(buffer, read, 0, read.length), "expected to stop before the partial mask");
+    assertEquals(Masks.of(V2.A, V2.I), read[0], "expected the masks read to be remapped");
+    assertEquals(Masks.of(V2.C), read[1], "expected the masks read to be remapped");
+    assertEquals(partial, buffer.position(), "expected the partial mask to be left unread");
+    buffer.limit(buffer.limit() + 1);
+    assertEquals(1, reader.readAll(buffer, read, 0, read.length), "expected to resume with the rest of the mask");
+    assertEquals(Masks.of(V2.I), read[0], "expected the resumed mask to be remapped");
+  }
+
+  @Test
+  void invalidHeader() {
+    assertThrows(RuntimeException.class, () -> OptionSetCodec.readHeader(ByteBuffer.allocate(16), V1.class));
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for OptionSetColumn. */
+class OptionSetColumnTest {
+
+  enum E implements Option { A, B, C, D; }
+
+  @Test
+  void rows() {
+    var column = new OptionSetColumn<>(E.class, 3);
+    column.set(0, OptionSet.of(E.A, E.C));
+    column.set(1, 2L);
+    assertEquals(3, column.size(), "expected 3 rows");
+    assertEquals(5L, column.get(0), "expected row 0 to be 5");
+    assertSame(OptionSet.of(E.B), column.getSet(1), "expected row 1 to be the canonical {B}");
+    assertSame(OptionSet.of(E.class, 0L), column.getSet(2), "expected row 2 to be empty");
+  }
+
+  @Test
+  void small() {
+    var column = new OptionSetColumn<>(E.class, new long[] {0b0101L, 0b0011L, 0b1000L, 0b0111L});
+    assertArrayEquals(new long[] {0b1001L}, column.filterAll(E.A, E.C), "expected rows 0 and 3 to have A,C");
+    assertArrayEquals(new long[] {0b1011L}, column.filterAny(E.A), "expected rows 0, 1 and 3 to have A");
+    assertArrayEquals(new long[] {0b0100L}, column.filterNone(E.A, E.B), "expected row 2 to have neither A nor B");
+    assertEquals(2L, column.countAll(E.A, E.C), "expected 2 rows with A,C");
+    assertEquals(3L, column.countAny(E.B, E.C), "expected 3 rows with B or C");
+    assertEquals(1L, column.countNone(E.A), "expected 1 row without A");
+
+    column.orAll(E.D);
+    assertEquals(4L, column.countAll(E.D), "expected every row to have D after .orAll(D)");
+    column.andAll(Masks.of(E.A, E.D));
+    assertArrayEquals(new long[] {0b1011L}, column.filterAll(E.A, E.D), "expected rows 0, 1 and 3 to have A,D");
+  }
+
+  @Test
+  void parallel() {
+    var rows = OptionSetColumn.PARALLEL_THRESHOLD * 3 + 17;
+    var masks = new long[rows];
+    var random = new SplittableRandom(42);
+    for (int i = 0; i < rows; i++) {
+      masks[i] = random.nextLong(16);
+    }
+    var column = new OptionSetColumn<>(E.class, masks.clone());
+
+    var all = Masks.of(E.A, E.C);
+    var expectedBitmap = new long[(rows + 63) / 64];
+    var expectedAll = 0L;
+    var expectedAny = 0L;
+    for (int i = 0; i < rows; i++) {
+      if ((masks[i] & all) == all) {
+        expectedBitmap[i / 64] |= 1L << i;
+        expectedAll++;
+      }
+      if ((masks[i] & all) != 0) {
+        expectedAny++;
+      }
+    }
+    assertArrayEquals(expectedBitmap, column.filterAll(all), "expected the parallel filter to match a plain scan");
+    assertEquals(expectedAll, column.countAll(all), "expected the parallel count to match a plain scan");
+    assertEquals(expectedAny, column.countAny(all), "expected the parallel count to match a plain scan");
+    assertEquals(rows - expectedAny, column.countNone(all), "expected the parallel count to match a plain scan");
+
+    column.orAll(E.D);
+    assertEquals((long) rows, column.countAll(E.D), "expected every row to have D after .orAll(D)");
+  }
+}
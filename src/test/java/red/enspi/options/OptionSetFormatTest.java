@@ -0,0 +1,86 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for OptionSetFormat. */
+class OptionSetFormatTest {
+
+  enum Color implements Option { Red, Blue, Yellow, Green, Grün; }
+
+  enum Clash implements Option { red, RED; }
+
+  @Test
+  void parse() {
+    var format = OptionSetFormat.of(Color.class);
+    assertSame(OptionSet.of(Color.Red, Color.Blue, Color.Yellow), format.parseSet("Red,Blue|Yellow"));
+    assertSame(OptionSet.of(Color.Red, Color.Blue, Color.Yellow), format.parseSet("Red,Blue|Yellow"), "expected a cache hit");
+    assertEquals(Masks.of(Color.Green, Color.Blue), format.parse(" Green , ,Blue "));
+    assertEquals(0L, format.parse(""), "expected an empty string to parse to an empty mask");
+    assertEquals(Masks.of(Color.Grün), format.parse("Grün"));
+    assertEquals(Masks.of(Color.Blue), format.parse(new StringBuilder("x=Blue;"), 2, 6), "expected a slice to parse");
+    assertThrows(RuntimeException.class, () -> format.parse("Red,Purple"));
+    assertThrows(RuntimeException.class, () -> format.parse("red"));
+  }
+
+  @Test
+  void parseBytes() {
+    var format = OptionSetFormat.of(Color.class).withSeparators(";");
+    var bytes = "q=Red; Grün;Green&".getBytes(StandardCharsets.UTF_8);
+    assertEquals(Masks.of(Color.Red, Color.Grün, Color.Green), format.parse(bytes, 2, bytes.length - 1));
+    assertThrows(RuntimeException.class, () -> format.parse(bytes, 0, bytes.length));
+  }
+
+  @Test
+  void ignoringCase() {
+    var format = OptionSetFormat.of(Color.class).ignoringCase();
+    assertEquals(Masks.of(Color.Red, Color.Yellow), format.parse("RED|yellow"));
+    var bytes = "bLuE,GRüN".getBytes(StandardCharsets.UTF_8);
+    assertEquals(Masks.of(Color.Blue, Color.Grün), format.parse(bytes, 0, bytes.length));
+    assertThrows(RuntimeException.class, () -> OptionSetFormat.of(Clash.class).ignoringCase());
+    assertEquals(Masks.of(Clash.RED), OptionSetFormat.of(Clash.class).parse("RED"));
+  }
+
+  @Test
+  void format() {
+    var format = OptionSetFormat.of(Color.class);
+    assertEquals("Red,Yellow,Grün", format.format(OptionSet.of(Color.Grün, Color.Red, Color.Yellow)));
+    assertEquals("", format.format(0L));
+    assertEquals("x: Blue|Green", format.withSeparators("|,").format(Masks.of(Color.Blue, Color.Green), new StringBuilder("x: ")).toString());
+    var buffer = format.format(OptionSet.of(Color.Blue, Color.Grün), ByteBuffer.allocate(32));
+    var expected = "Blue,Grün".getBytes(StandardCharsets.UTF_8);
+    assertArrayEquals(expected, Arrays.copyOf(buffer.array(), buffer.position()));
+  }
+
+  @Test
+  void roundTrip() {
+    var format = OptionSetFormat.of(Color.class);
+    for (long mask = 0; mask < 32; mask++) {
+      assertEquals(mask, format.parse(format.format(mask)), "mask " + mask);
+    }
+  }
+}
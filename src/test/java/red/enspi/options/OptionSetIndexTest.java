@@ -0,0 +1,91 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for OptionSetIndex. */
+class OptionSetIndexTest {
+
+  enum E implements Option { A, B, C, D; }
+
+  @Test
+  void rows() {
+    var index = new OptionSetIndex<>(E.class);
+    index.put(1, OptionSet.of(E.A, E.B));
+    index.put(2, OptionSet.of(E.B));
+    index.put(3, 0L);
+    assertEquals(3L, index.size(), "expected 3 rows");
+    assertEquals(3L, index.get(1), "expected row 1 to be 3");
+    assertTrue(index.contains(3), "expected row 3 to be indexed");
+
+    index.put(1, OptionSet.of(E.C));
+    assertEquals(4L, index.get(1), "expected row 1 to be 4 after the update");
+    assertArrayEquals(new int[] {2}, index.rows(E.B).toArray());
+
+    index.remove(2);
+    assertFalse(index.contains(2), "expected row 2 to be removed");
+    assertArrayEquals(new int[0], index.rows(E.B).toArray());
+  }
+
+  @Test
+  void query() {
+    var index = new OptionSetIndex<>(E.class);
+    var masks = new long[10_000];
+    var random = new SplittableRandom(3);
+    for (int row = 0; row < masks.length; row++) {
+      masks[row] = random.nextLong(16);
+      index.put(row, masks[row]);
+    }
+    index.runOptimize();
+
+    var all = Masks.of(E.A, E.B);
+    var any = Masks.of(E.C, E.D);
+    var none = Masks.of(E.D);
+    var expected = IntStream.range(0, masks.length)
+      .filter(row -> (masks[row] & all) == all && (masks[row] & any) != 0 && (masks[row] & none) == 0)
+      .toArray();
+    assertArrayEquals(expected, index.query(all, any, none).toArray(), "expected A & B & (C | D) & !D");
+
+    assertArrayEquals(
+      IntStream.range(0, masks.length).filter(row -> (masks[row] & 1L) != 0).toArray(),
+      index.allOf(E.A).toArray(),
+      "expected rows with A");
+    assertArrayEquals(
+      IntStream.range(0, masks.length).filter(row -> (masks[row] & 5L) != 0).toArray(),
+      index.anyOf(E.A, E.C).toArray(),
+      "expected rows with A or C");
+    assertArrayEquals(
+      IntStream.range(0, masks.length).filter(row -> (masks[row] & 5L) == 0).toArray(),
+      index.noneOf(E.A, E.C).toArray(),
+      "expected rows with neither A nor C");
+    assertTrue(index.query(1L << 40, 0L, 0L).isEmpty(), "expected no rows to have a bit outside the enum");
+    assertTrue(index.query(0L, 1L << 40, 0L).isEmpty(), "expected no rows to have any bit outside the enum");
+    assertArrayEquals(
+      IntStream.range(0, masks.length).filter(row -> (masks[row] & 1L) != 0).toArray(),
+      index.query(0L, 1L | (1L << 40), 0L).toArray(),
+      "expected bits outside the enum not to widen an 'any' constraint");
+  }
+}
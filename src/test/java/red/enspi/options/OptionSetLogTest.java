@@ -0,0 +1,235 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for OptionSetLog. */
+class OptionSetLogTest {
+
+  enum E implements Option { A, B, C, D; }
+
+  enum Wide implements Option {
+    O0, O1, O2, O3, O4, O5, O6, O7, O8, O9, O10, O11, O12, O13, O14, O15, O16, O17, O18, O19;
+  }
+
+  /** E, reordered (so masks must be remapped). */
+  enum Reordered implements Option { D, C, B, A; }
+
+  @Test
+  void recovers() throws IOException {
+    var directory = Files.createTempDirectory("options");
+    try {
+      var expected = new HashMap<Long, Long>();
+      var random = new Random(23);
+      try (var log = OptionSetLog.open(directory, E.class, OptionSetLog.Durability.NONE)) {
+        for (int i = 0; i < 100_000; i++) {
+          var key = (long) random.nextInt(5_000);
+          var mask = random.nextLong() & 15;
+          switch (random.nextInt(4)) {
+            case 0 -> log.put(key, mask);
+            case 1 -> log.orMask(key, mask);
+            case 2 -> log.andNotMask(key, mask);
+            default -> log.remove(key);
+          }
+          var current = log.get(key, 0L);
+          if (current == 0) {
+            expected.remove(key);
+          } else {
+            expected.put(key, current);
+          }
+        }
+      }
+      try (var log = OptionSetLog.open(directory, E.class, OptionSetLog.Durability.NONE)) {
+        assertEquals(expected.size(), log.size(), "expected every non-empty entry to be recovered");
+        expected.forEach((key, mask) -> assertEquals((long) mask, log.get(key, 0L), "key " + key));
+      }
+    } finally {
+      OptionSetLogTest.delete(directory);
+    }
+  }
+
+  @Test
+  void compacts() throws IOException {
+    var directory = Files.createTempDirectory("options");
+    try {
+      try (var log = OptionSetLog.open(directory, E.class, OptionSetLog.Durability.WRITE)) {
+        log.put(1L, OptionSet.of(E.A, E.B));
+        log.put(2L, OptionSet.of(E.C));
+        log.compact();
+        log.xorMask(1L, Masks.of(E.B, E.D));
+        log.remove(2L);
+        log.compact();
+        log.orMask(3L, Masks.of(E.A));
+      }
+      try (var files = Files.list(directory)) {
+        assertEquals(
+          1L,
+          files.filter(f -> f.getFileName().toString().startsWith("snapshot-")).count(),
+          "expected older snapshots to be deleted");
+      }
+      try (var log = OptionSetLog.open(directory, E.class, OptionSetLog.Durability.WRITE)) {
+        assertSame(OptionSet.of(E.A, E.D), log.getSet(1L));
+        assertFalse(log.containsKey(2L), "expected key 2 to stay removed");
+        assertSame(OptionSet.of(E.A), log.getSet(3L));
+      }
+    } finally {
+      OptionSetLogTest.delete(directory);
+    }
+  }
+
+  @Test
+  void truncatesTornFrames() throws IOException {
+    var directory = Files.createTempDirectory("options");
+    try {
+      try (var log = OptionSetLog.open(directory, E.class, OptionSetLog.Durability.FSYNC)) {
+        log.put(1L, Masks.of(E.C));
+      }
+      Path last;
+      try (var files = Files.list(directory)) {
+        last = files.max(Comparator.naturalOrder()).orElseThrow();
+      }
+      var size = Files.size(last);
+      Files.write(last, new byte[] {0, 0, 1, 0, 7, 7, 7}, StandardOpenOption.APPEND);
+      try (var log = OptionSetLog.open(directory, E.class, OptionSetLog.Durability.FSYNC)) {
+        assertEquals(Masks.of(E.C), log.get(1L, 0L), "expected the intact frame to be recovered");
+      }
+      assertEquals(size, Files.size(last), "expected the torn frame to be truncated");
+    } finally {
+      OptionSetLogTest.delete(directory);
+    }
+  }
+
+  @Test
+  void remaps() throws IOException {
+    var directory = Files.createTempDirectory("options");
+    try {
+      try (var log = OptionSetLog.open(directory, E.class, OptionSetLog.Durability.NONE)) {
+        log.put(1L, OptionSet.of(E.A, E.B));
+      }
+      try (var log = OptionSetLog.open(directory, Reordered.class, OptionSetLog.Durability.NONE)) {
+        assertSame(OptionSet.of(Reordered.A, Reordered.B), log.getSet(1L));
+      }
+      try (var log = OptionSetLog.open(directory, Reordered.class, OptionSetLog.Durability.NONE)) {
+        assertSame(OptionSet.of(Reordered.A, Reordered.B), log.getSet(1L), "expected remapped data to be rewritten");
+      }
+    } finally {
+      OptionSetLogTest.delete(directory);
+    }
+  }
+
+  @Test
+  void groupCommit() throws IOException, InterruptedException {
+    var directory = Files.createTempDirectory("options");
+    try {
+      try (var log = OptionSetLog.open(directory, E.class, OptionSetLog.Durability.FSYNC)) {
+        var pool = Executors.newFixedThreadPool(4);
+        for (var option : E.values()) {
+          pool.execute(() -> {
+            for (long key = 0; key < 500; key++) {
+              log.orMask(key, option.value());
+            }
+          });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS), "expected writers to finish");
+      }
+      try (var log = OptionSetLog.open(directory, E.class, OptionSetLog.Durability.FSYNC)) {
+        assertEquals(500, log.size(), "expected 500 entries; saw " + log.size());
+        for (long key = 0; key < 500; key++) {
+          assertEquals(15L, log.get(key, 0L), "expected every option on key " + key);
+        }
+      }
+    } finally {
+      OptionSetLogTest.delete(directory);
+    }
+  }
+
+  @Test
+  void recoversHeldMasks() throws IOException, InterruptedException {
+    var directory = Files.createTempDirectory("options");
+    try {
+      var held = ConcurrentHashMap.<Long>newKeySet();
+      held.add(0L);
+      try (var log = OptionSetLog.open(directory, Wide.class, OptionSetLog.Durability.WRITE)) {
+        var pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+          var random = new Random(t);
+          pool.execute(() -> {
+            for (int i = 0; i < 2_000; i++) {
+              var mask = random.nextLong() & 0xFFFFFL;
+              held.add(mask);
+              log.put(1L, mask);
+            }
+          });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS), "expected writers to finish");
+      }
+      // every frame boundary is somewhere a crash could cut the log
+      var last = directory.resolve("log-1.opts");
+      var buffer = ByteBuffer.wrap(Files.readAllBytes(last));
+      var codec = OptionSetCodec.readHeader(buffer, Wide.class);
+      var mask = 0L;
+      while (buffer.hasRemaining()) {
+        var end = buffer.position() + 8 + buffer.getInt();
+        buffer.getInt();
+        while (buffer.position() < end) {
+          assertEquals(1L, OptionSetCodec.readVarint(buffer), "expected only key 1");
+          mask ^= codec.read(buffer);
+        }
+        assertTrue(held.contains(mask), "expected every prefix of the log to give a mask key 1 had; saw " + mask);
+      }
+      try (var channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+        channel.truncate(channel.size() / 2);
+      }
+      try (var log = OptionSetLog.open(directory, Wide.class, OptionSetLog.Durability.WRITE)) {
+        var recovered = log.get(1L, 0L);
+        assertTrue(held.contains(recovered), "expected a mask key 1 actually had; saw " + recovered);
+      }
+    } finally {
+      OptionSetLogTest.delete(directory);
+    }
+  }
+
+  private static void delete(Path directory) throws IOException {
+    try (var files = Files.list(directory)) {
+      for (var file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for OptionSetMap. */
+class OptionSetMapTest {
+
+  enum Small implements Option { A, B, C; }
+
+  enum Wide implements Option {
+    O0, O1, O2, O3, O4, O5, O6, O7, O8, O9, O10, O11, O12, O13, O14, O15,
+    O16, O17, O18, O19, O20, O21, O22, O23, O24, O25, O26, O27, O28, O29, O30, O31;
+  }
+
+  @Test
+  void dense() {
+    var map = new OptionSetMap<Small, String>(Small.class);
+    assertNull(map.put(OptionSet.of(Small.A, Small.C), "AC"));
+    assertEquals("AC", map.put(5L, "ac"), "expected put to return the previous value");
+    assertNull(map.put(0L, "none"));
+    assertNull(map.put(8L, "outside"), "expected masks outside the enum to be stored too");
+    assertEquals(3, map.size(), "expected size to be 3; saw " + map.size());
+    assertEquals("ac", map.get(OptionSet.of(Small.A, Small.C)));
+    assertEquals("none", map.get(0L));
+    assertEquals("outside", map.get(8L));
+    assertNull(map.get(OptionSet.of(Small.B)), "expected no value for {B}");
+    assertEquals("ac", map.remove(5L));
+    assertFalse(map.containsKey(5L), "expected {A,C} to be removed");
+    assertEquals(2, map.size(), "expected size to be 2; saw " + map.size());
+    var seen = new HashMap<OptionSet<Small>, String>();
+    map.forEach(seen::put);
+    assertEquals(2, seen.size(), "expected forEach to visit 2 entries");
+    assertEquals("none", seen.get(OptionSet.of(Small.class, 0L)));
+  }
+
+  @Test
+  void table() {
+    var map = new OptionSetMap<Wide, Long>(Wide.class);
+    var expected = new HashMap<Long, Long>();
+    var random = new Random(42);
+    for (int i = 0; i < 20_000; i++) {
+      var mask = random.nextLong() & 0xFFFFL;
+      switch (random.nextInt(3)) {
+        case 0, 1 -> assertEquals(expected.put(mask, (long) i), map.put(mask, (long) i));
+        default -> assertEquals(expected.remove(mask), map.remove(mask));
+      }
+    }
+    assertEquals(expected.size(), map.size(), "expected sizes to match");
+    for (long mask = 0; mask <= 0xFFFFL; mask++) {
+      assertEquals(expected.get(mask), map.get(mask), "mask " + mask);
+    }
+  }
+
+  @Test
+  void lru() {
+    var map = new OptionSetMap<Wide, String>(Wide.class, 3);
+    map.put(1L, "1");
+    map.put(2L, "2");
+    map.put(3L, "3");
+    map.get(1L);
+    map.put(4L, "4");
+    assertEquals(3, map.size(), "expected size to stay at 3; saw " + map.size());
+    assertFalse(map.containsKey(2L), "expected the least recently used entry to be evicted");
+    assertTrue(map.containsKey(1L), "expected a recently read entry to be kept");
+    for (long mask = 5; mask < 1000; mask++) {
+      map.put(mask, Long.toString(mask));
+      map.remove(mask - 2);
+    }
+    assertEquals(2, map.size(), "expected size to be 2; saw " + map.size());
+    assertEquals("999", map.get(999L));
+    assertEquals("998", map.get(998L));
+  }
+
+  @Test
+  void computeIfAbsent() {
+    var map = new OptionSetMap<Wide, String>(Wide.class);
+    var set = OptionSet.of(Wide.O3, Wide.O30);
+    assertEquals(set.toString(), map.computeIfAbsent(set, Object::toString));
+    assertEquals(set.toString(), map.computeIfAbsent(set, s -> "recomputed"), "expected the stored value");
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for OptionSetReport. */
+class OptionSetReportTest {
+
+  enum Small implements Option { A, B, C, D, E; }
+
+  enum Wide implements Option {
+    O0, O1, O2, O3, O4, O5, O6, O7, O8, O9, O10, O11, O12, O13, O14, O15,
+    O16, O17, O18, O19, O20, O21, O22, O23, O24, O25, O26, O27, O28, O29, O30, O31,
+    O32, O33, O34, O35, O36, O37, O38, O39, O40, O41, O42, O43, O44, O45, O46, O47,
+    O48, O49, O50, O51, O52, O53, O54, O55, O56, O57, O58, O59, O60, O61, O62, O63;
+  }
+
+  @Test
+  void small() {
+    var masks = new long[] {
+      Masks.of(Small.A, Small.B),
+      Masks.of(Small.A, Small.B),
+      Masks.of(Small.A, Small.C),
+      0L,
+      Masks.of(Small.E) | (1L << 40),
+    };
+    var report = OptionSetReport.of(Small.class, masks);
+    assertEquals(5L, report.rows(), "expected 5 rows; saw " + report.rows());
+    assertArrayEquals(new long[] {3L, 2L, 1L, 0L, 1L}, report.histogram());
+    assertEquals(2L, report.count(Small.A, Small.B), "expected A and B together twice");
+    assertEquals(2L, report.count(Small.B, Small.A), "expected the matrix to be symmetric");
+    assertEquals(0L, report.count(Small.B, Small.C), "expected B and C never together");
+    assertEquals(3L, report.count(Small.A), "expected A three times");
+    assertTrue(report.isDistinctExact(), "expected an exact distinct count for a small enum");
+    assertEquals(4L, report.distinct(), "expected 4 distinct combinations; saw " + report.distinct());
+  }
+
+  @Test
+  void largeParallel() {
+    // enough masks to overflow a 16-bit sliced counter, and to run in parallel
+    var random = new Random(11);
+    var masks = new long[300_000];
+    for (int i = 0; i < masks.length; i++) {
+      masks[i] = random.nextLong() & random.nextLong() & random.nextLong();
+    }
+    var report = OptionSetReport.of(Wide.class, masks);
+    var expected = new long[64][64];
+    for (var mask : masks) {
+      for (int a = 0; a < 64; a++) {
+        if ((mask & (1L << a)) != 0) {
+          for (int b = 0; b < 64; b++) {
+            expected[a][b] += (mask >>> b) & 1;
+          }
+        }
+      }
+    }
+    var actual = report.coOccurrence();
+    for (int a = 0; a < 64; a++) {
+      assertArrayEquals(expected[a], actual[a], "co-occurrence row " + a);
+    }
+    assertFalse(report.isDistinctExact(), "expected a distinct estimate for a 64-option enum");
+    var distinct = new HashSet<Long>();
+    Arrays.stream(masks).forEach(distinct::add);
+    var error = Math.abs(report.distinct() - distinct.size()) / (double) distinct.size();
+    assertTrue(error < 0.03, "expected the distinct estimate within 3%; saw " + report.distinct() + " vs " + distinct.size());
+  }
+
+  @Test
+  void collector() {
+    var random = new Random(5);
+    var masks = new long[10_000];
+    for (int i = 0; i < masks.length; i++) {
+      masks[i] = random.nextLong() & 31;
+    }
+    var expected = OptionSetReport.of(Small.class, masks);
+    var actual = Arrays.stream(masks)
+      .parallel()
+      .mapToObj(mask -> OptionSet.of(Small.class, mask))
+      .collect(OptionSetReport.collector(Small.class));
+    assertEquals(expected.rows(), actual.rows());
+    assertArrayEquals(expected.histogram(), actual.histogram());
+    assertEquals(32L, actual.distinct(), "expected all 32 combinations; saw " + actual.distinct());
+    for (int a = 0; a < 5; a++) {
+      assertArrayEquals(expected.coOccurrence()[a], actual.coOccurrence()[a], "co-occurrence row " + a);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for OptionSetStore. */
+class OptionSetStoreTest {
+
+  enum E implements Option { A, B, C; }
+
+  enum Other implements Option { A, B, C; }
+
+  @Test
+  void persists() throws IOException {
+    var path = Files.createTempFile("options", ".store");
+    try {
+      try (var store = OptionSetStore.open(path, E.class)) {
+        assertEquals(0L, store.size(), "expected a new store to be empty");
+        store.set(0, OptionSet.of(E.A, E.C));
+        store.set(5_000, 2L);
+        assertEquals(5_001L, store.size(), "expected the store to grow to 5001 rows");
+        assertEquals(0L, store.get(4_999), "expected unwritten rows to be 0");
+      }
+      try (var store = OptionSetStore.open(path, E.class)) {
+        assertEquals(5_001L, store.size(), "expected the row count to persist");
+        assertSame(OptionSet.of(E.A, E.C), store.getSet(0), "expected row 0 to persist");
+        assertEquals(2L, store.getAcquire(5_000), "expected row 5000 to persist");
+        assertThrows(IndexOutOfBoundsException.class, () -> store.get(5_001));
+      }
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  @Test
+  void atomicUpdates() throws IOException {
+    var path = Files.createTempFile("options", ".store");
+    try (var store = OptionSetStore.open(path, E.class)) {
+      assertEquals(0L, store.getAndOr(3, 1L), "expected .getAndOr() to return the previous mask");
+      assertEquals(1L, store.getAndXor(3, 6L), "expected .getAndXor() to return the previous mask");
+      assertEquals(7L, store.getAndAnd(3, 5L), "expected .getAndAnd() to return the previous mask");
+      assertFalse(store.compareAndSet(3, 0L, 2L), "expected CAS with the wrong mask to fail");
+      assertTrue(store.compareAndSet(3, 5L, 2L), "expected CAS with the right mask to succeed");
+      assertEquals(2L, store.get(3), "expected row 3 to be 2");
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  @Test
+  void schemaMismatch() throws IOException {
+    var path = Files.createTempFile("options", ".store");
+    try {
+      OptionSetStore.open(path, E.class).close();
+      assertThrows(RuntimeException.class, () -> OptionSetStore.open(path, Other.class));
+      Files.write(path, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+      assertThrows(RuntimeException.class, () -> OptionSetStore.open(path, E.class));
+    } finally {
+      Files.delete(path);
+    }
+  }
+}
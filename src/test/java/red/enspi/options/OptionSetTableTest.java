@@ -0,0 +1,108 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for OptionSetTable. */
+class OptionSetTableTest {
+
+  enum E implements Option { A, B, C, D; }
+
+  @Test
+  void entries() {
+    var table = new OptionSetTable<>(E.class);
+    assertEquals(0L, table.put(0L, OptionSet.of(E.A)), "expected no previous mask");
+    assertEquals(Masks.of(E.A), table.put(0L, Masks.of(E.B)), "expected the previous mask");
+    assertSame(OptionSet.of(E.B), table.getSet(0L));
+    assertEquals(Masks.of(E.B, E.C), table.or(42L, E.B, E.C), "expected or to add a missing key");
+    assertEquals(Masks.of(E.C), table.andNot(42L, E.B));
+    assertEquals(Masks.of(E.A, E.C), table.xor(42L, E.A));
+    assertEquals(0L, table.andNot(7L, E.A), "expected andNot on a missing key to be empty");
+    assertFalse(table.containsKey(7L), "expected andNot not to add a missing key");
+    assertEquals(2, table.size(), "expected 2 entries; saw " + table.size());
+    assertTrue(table.remove(42L), "expected 42 to be removed");
+    assertFalse(table.remove(42L), "expected 42 to be gone");
+    assertNull(table.getSet(42L), "expected no set for a removed key");
+    assertEquals(-1L, table.get(42L, -1L), "expected the default for a removed key");
+    table.or(42L, E.D);
+    assertEquals(Masks.of(E.D), table.get(42L, -1L), "expected a re-added key to start empty");
+  }
+
+  @Test
+  void matchesHashMap() {
+    var table = new OptionSetTable<>(E.class);
+    var expected = new HashMap<Long, Long>();
+    var random = new Random(9);
+    for (int i = 0; i < 200_000; i++) {
+      var key = (long) random.nextInt(20_000);
+      var mask = random.nextLong() & 15;
+      switch (random.nextInt(4)) {
+        case 0 -> assertEquals((long) Objects.requireNonNullElse(expected.put(key, mask), 0L), table.put(key, mask));
+        case 1 -> assertEquals((long) expected.merge(key, mask, (a, b) -> a | b), table.orMask(key, mask));
+        case 2 -> assertEquals(expected.remove(key) != null, table.remove(key));
+        default -> assertEquals((long) expected.merge(key, mask, (a, b) -> a ^ b), table.xorMask(key, mask));
+      }
+    }
+    assertEquals(expected.size(), table.size(), "expected sizes to match");
+    var snapshot = table.snapshot();
+    assertEquals(expected.size(), snapshot.size(), "expected the snapshot to have every entry");
+    for (int i = 0; i < snapshot.size(); i++) {
+      assertEquals((long) expected.get(snapshot.keys()[i]), snapshot.masks()[i], "key " + snapshot.keys()[i]);
+    }
+    var withA = expected.entrySet().stream()
+      .filter(e -> (e.getValue() & Masks.of(E.A)) != 0)
+      .mapToLong(e -> e.getKey())
+      .sorted()
+      .toArray();
+    var actual = table.filter(mask -> (mask & Masks.of(E.A)) != 0);
+    Arrays.sort(actual);
+    assertArrayEquals(withA, actual);
+    assertEquals(withA.length, table.count(OptionPredicate.has(E.A)::test));
+  }
+
+  @Test
+  void concurrentOr() throws InterruptedException {
+    var table = new OptionSetTable<>(E.class);
+    var pool = Executors.newFixedThreadPool(4);
+    for (var option : E.values()) {
+      pool.execute(() -> {
+        for (long key = 0; key < 10_000; key++) {
+          table.or(key, option);
+        }
+      });
+    }
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS), "expected writers to finish");
+    assertEquals(10_000, table.size(), "expected 10000 entries; saw " + table.size());
+    assertEquals(10_000L, table.count(mask -> mask == 15L), "expected every option on every key");
+  }
+}
@@ -16,12 +16,20 @@
  */
 package red.enspi.options;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
 
@@ -210,4 +218,162 @@ class OptionSetTest {
     assertFalse(xor.hasAny(E.A, E.B), "expected xor.hasAny(A,B) to be false");
     assertTrue(xor.hasAny(E.A, E.B, E.C), "expected xor.hasAny(A,B,C) to be true");
   }
+
+  @Test
+  void fixedArity() {
+    var actual = OptionSet.of(E.A, E.C);
+    assertTrue(actual.has(E.A, E.C), "expected actual.has(A,C) to be true");
+    assertFalse(actual.has(E.A, E.B, E.C), "expected actual.has(A,B,C) to be false");
+    assertTrue(actual.hasAny(E.B, E.C), "expected actual.hasAny(B,C) to be true");
+    assertFalse(actual.hasAny(E.B, E.B, E.B, E.B), "expected actual.hasAny(B,B,B,B) to be false");
+    assertEquals(7L, actual.or(E.A, E.B).mask, "expected .or(A,B) to be 7");
+    assertEquals(3L, actual.xor(E.B, E.C).mask, "expected .xor(B,C) to be 3");
+    assertEquals(1L, actual.and(E.A, E.A).mask, "expected .and(A,A) to be 1");
+    assertSame(actual, actual.or(E.A), "expected a no-op .or() to return the same set");
+  }
+
+  @Test
+  void masks() {
+    var actual = OptionSet.of(E.A, E.C);
+    assertTrue(actual.hasMask(5L), "expected actual.hasMask(5) to be true");
+    assertFalse(actual.hasMask(3L), "expected actual.hasMask(3) to be false");
+    assertTrue(actual.hasAnyMask(3L), "expected actual.hasAnyMask(3) to be true");
+    assertFalse(actual.hasAnyMask(2L), "expected actual.hasAnyMask(2) to be false");
+    assertEquals(7L, actual.orMask(2L).mask, "expected .orMask(2) to be 7");
+    assertEquals(1L, actual.andMask(3L).mask, "expected .andMask(3) to be 1");
+    assertEquals(4L, actual.xorMask(1L).mask, "expected .xorMask(1) to be 4");
+  }
+
+  @Test
+  void mutatorsKeepType() {
+    var actual = new OptionSet<E>() {}.or(E.B);
+    assertEquals(List.of(E.A, E.B, E.C), actual.options(), "expected .options() to survive a mutation");
+    assertEquals(List.of(E.B), actual.toOptions(), "expected .toOptions() to be [B]");
+  }
+
+  @Test
+  void traversal() {
+    var actual = OptionSet.of(E.A, E.C);
+    assertEquals(2, actual.size(), "expected .size() to be 2");
+    assertEquals(1, actual.not().size(), "expected .not().size() to ignore bits outside the enum");
+
+    var forEach = new ArrayList<E>();
+    actual.forEach(forEach::add);
+    assertEquals(List.of(E.A, E.C), forEach, "expected .forEach() to visit [A,C]");
+
+    var iterated = new ArrayList<E>();
+    for (var option : actual) {
+      iterated.add(option);
+    }
+    assertEquals(List.of(E.A, E.C), iterated, "expected iteration to visit [A,C]");
+
+    var cursor = new ArrayList<E>();
+    for (int bit = actual.nextBit(0); bit >= 0; bit = actual.nextBit(bit + 1)) {
+      cursor.add(actual.optionAt(bit));
+    }
+    assertEquals(List.of(E.A, E.C), cursor, "expected the cursor to visit [A,C]");
+    assertEquals(-1, actual.nextBit(64), "expected .nextBit(64) to be -1");
+
+    assertArrayEquals(new int[] {0, 2}, actual.ordinals().toArray());
+    assertEquals(List.of(E.B), actual.not().stream().toList(), "expected .not().stream() to be [B]");
+  }
+
+  @Test
+  void parallelStream() {
+    var all = OptionSet.of(Wide.class, -1L);
+    assertEquals(64L, all.stream().parallel().count(), "expected 64 options");
+    assertEquals(
+      List.of(Wide.values()),
+      all.stream().parallel().toList(),
+      "expected parallel traversal to keep bit order");
+
+    var spliterator = all.spliterator();
+    var prefix = spliterator.trySplit();
+    assertEquals(32L, prefix.estimateSize(), "expected the first split to take the low 32 bits");
+    assertEquals(32L, spliterator.estimateSize(), "expected the first split to leave the high 32 bits");
+  }
+
+  @Test
+  void asSet() {
+    var actual = OptionSet.of(E.A, E.C).asSet();
+    assertEquals(Set.of(E.A, E.C), actual, "expected .asSet() to equal {A,C}");
+    assertEquals(2, actual.size(), "expected .asSet().size() to be 2");
+    assertTrue(actual.contains(E.C), "expected .asSet() to contain C");
+    assertFalse(actual.contains(E.B), "expected .asSet() not to contain B");
+    assertFalse(actual.contains(Wide.O0), "expected .asSet() not to contain options of another enum");
+    assertThrows(UnsupportedOperationException.class, () -> actual.add(E.B));
+  }
+
+  @Test
+  void enumSet() {
+    assertSame(OptionSet.of(E.A, E.C), OptionSet.of(EnumSet.of(E.A, E.C)), "expected .of(EnumSet) to be {A,C}");
+    assertSame(OptionSet.of(E.class, 0L), OptionSet.of(EnumSet.noneOf(E.class)), "expected .of(empty EnumSet) to be empty");
+    assertEquals(EnumSet.of(E.A, E.C), OptionSet.toEnumSet(OptionSet.of(E.A, E.C)));
+    assertEquals(EnumSet.allOf(E.class), OptionSet.toEnumSet(OptionSet.of(E.class, -1L)));
+    assertEquals(EnumSet.noneOf(E.class), OptionSet.toEnumSet(OptionSet.of(E.class, 0L)));
+  }
+
+  @Test
+  void toOptionSet() {
+    assertSame(
+      OptionSet.of(E.A, E.C),
+      Stream.of(E.C, E.A, E.C).collect(OptionSet.toOptionSet(E.class)),
+      "expected the collector to OR options together");
+    assertSame(
+      OptionSet.of(Wide.O1, Wide.O63),
+      Stream.of(Wide.O1, Wide.O63).parallel().collect(OptionSet.toOptionSet(Wide.class)),
+      "expected the collector to combine parallel results");
+  }
+
+  @Test
+  void valueSemantics() {
+    var a = new OptionSet<E>(5L) {};
+    var b = OptionSet.of(E.A, E.C);
+    assertEquals(a, b, "expected sets of the same enum and mask to be equal");
+    assertEquals(a.hashCode(), b.hashCode(), "expected equal sets to have equal hashes");
+    assertNotEquals(b, OptionSet.of(E.A), "expected sets with different masks not to be equal");
+    assertNotEquals(OptionSet.of(Wide.O0), OptionSet.of(E.A), "expected sets of different enums not to be equal");
+    assertNotEquals(Masks.hash(1L) >>> 32, Masks.hash(2L) >>> 32, "expected high bits of the hash to be mixed");
+  }
+
+  @Test
+  void setAlgebra() {
+    var ab = OptionSet.of(E.A, E.B);
+    var bc = OptionSet.of(E.B, E.C);
+    assertSame(OptionSet.of(E.A, E.B, E.C), ab.union(bc));
+    assertSame(OptionSet.of(E.B), ab.intersect(bc));
+    assertSame(OptionSet.of(E.A), ab.difference(bc));
+    assertSame(OptionSet.of(E.A, E.C), ab.symmetricDifference(bc));
+    assertSame(OptionSet.of(E.C), ab.complement(), "expected .complement() to only include E's options");
+    assertEquals(~ 3L, ab.not().mask, "expected .not() to flip every bit");
+    assertTrue(ab.intersects(bc), "expected {A,B} to intersect {B,C}");
+    assertFalse(ab.intersects(OptionSet.of(E.C)), "expected {A,B} not to intersect {C}");
+    assertTrue(ab.containsAll(OptionSet.of(E.B)), "expected {A,B} to contain {B}");
+    assertFalse(ab.containsAll(bc), "expected {A,B} not to contain {B,C}");
+    assertTrue(OptionSet.of(E.B).isSubsetOf(bc), "expected {B} to be a subset of {B,C}");
+    assertFalse(ab.isSubsetOf(bc), "expected {A,B} not to be a subset of {B,C}");
+    assertSame(OptionSet.of(E.A, E.B, E.C), OptionSet.unionOf(E.class, ab, bc, OptionSet.of(E.C)));
+    assertSame(OptionSet.of(E.B), OptionSet.intersectionOf(E.class, List.of(ab, bc)));
+    assertSame(
+      OptionSet.of(E.A, E.B, E.C),
+      OptionSet.intersectionOf(E.class),
+      "expected an empty intersection to be every option");
+    assertEquals(6L, Masks.union(2L, 4L), "expected Masks.union(2,4) to be 6");
+    assertEquals(2L, Masks.intersection(3L, 6L, 7L), "expected Masks.intersection(3,6,7) to be 2");
+  }
+
+  @Test
+  void andIntersects() {
+    var actual = OptionSet.of(E.A, E.C);
+    assertSame(OptionSet.of(E.A, E.C), actual.and(E.A, E.B, E.C), "expected .and(A,B,C) to keep A and C");
+    assertSame(OptionSet.of(E.A), actual.and(E.A, E.B), "expected .and(A,B) to keep A");
+    assertSame(OptionSet.of(E.C), actual.and(new E[] {E.B, E.C}), "expected varargs .and(B,C) to keep C");
+  }
+
+  enum Wide implements Option {
+    O0, O1, O2, O3, O4, O5, O6, O7, O8, O9, O10, O11, O12, O13, O14, O15,
+    O16, O17, O18, O19, O20, O21, O22, O23, O24, O25, O26, O27, O28, O29, O30, O31,
+    O32, O33, O34, O35, O36, O37, O38, O39, O40, O41, O42, O43, O44, O45, O46, O47,
+    O48, O49, O50, O51, O52, O53, O54, O55, O56, O57, O58, O59, O60, O61, O62, O63;
+  }
 }
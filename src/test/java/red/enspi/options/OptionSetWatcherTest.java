@@ -0,0 +1,129 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for OptionSetWatcher. */
+class OptionSetWatcherTest {
+
+  enum E implements Option { A, B, C, D; }
+
+  @Test
+  void coalesces() {
+    var queue = new ArrayDeque<Runnable>();
+    var watcher = new OptionSetWatcher<>(E.class, queue::add);
+    var changes = new ArrayList<OptionSetWatcher.Change<E>>();
+    watcher.subscribe(changes::add, E.A, E.B);
+    watcher.publish(0L, Masks.of(E.A));
+    watcher.publish(Masks.of(E.A), Masks.of(E.A, E.B));
+    watcher.publish(Masks.of(E.A, E.B), Masks.of(E.B, E.C));
+    assertEquals(1, queue.size(), "expected a single delivery for a burst of changes; saw " + queue.size());
+    queue.poll().run();
+    assertEquals(1, changes.size(), "expected one combined change; saw " + changes.size());
+    var change = changes.get(0);
+    assertSame(OptionSet.of(E.B, E.C), change.to());
+    assertEquals(Masks.of(E.B, E.C), change.added());
+    assertEquals(0L, change.removed());
+    assertTrue(change.added(E.B), "expected B to be added");
+    assertFalse(change.changed(E.A), "expected A's flips to cancel out");
+  }
+
+  @Test
+  void filtersUninterested() {
+    var queue = new ArrayDeque<Runnable>();
+    var watcher = new OptionSetWatcher<>(E.class, queue::add);
+    var changes = new ArrayList<OptionSetWatcher.Change<E>>();
+    var subscription = watcher.subscribe(changes::add, E.A);
+    watcher.publish(0L, Masks.of(E.B, E.C));
+    assertTrue(queue.isEmpty(), "expected no delivery for options the subscriber doesn't watch");
+    watcher.publish(Masks.of(E.B), Masks.of(E.A, E.B));
+    watcher.publish(Masks.of(E.A, E.B), Masks.of(E.B));
+    queue.poll().run();
+    assertTrue(changes.isEmpty(), "expected no callback when watched options end where they started");
+    subscription.close();
+    watcher.publish(0L, Masks.of(E.A));
+    assertTrue(queue.isEmpty(), "expected no delivery after close");
+  }
+
+  @Test
+  void recoversFromRejection() {
+    var queue = new ArrayDeque<Runnable>();
+    var reject = new boolean[] {true};
+    var watcher = new OptionSetWatcher<>(E.class, task -> {
+      if (reject[0]) {
+        throw new RejectedExecutionException();
+      }
+      queue.add(task);
+    });
+    var changes = new ArrayList<OptionSetWatcher.Change<E>>();
+    watcher.subscribe(changes::add, E.A, E.B);
+    assertThrows(RejectedExecutionException.class, () -> watcher.publish(0L, Masks.of(E.A)));
+    reject[0] = false;
+    watcher.publish(Masks.of(E.A), Masks.of(E.A, E.B));
+    assertEquals(1, queue.size(), "expected the next change to be scheduled after a rejection");
+    queue.poll().run();
+    assertEquals(Masks.of(E.A, E.B), changes.get(0).added(), "expected the rejected change to be delivered too");
+  }
+
+  @Test
+  void recoversFromErrors() {
+    var queue = new ArrayDeque<Runnable>();
+    var watcher = new OptionSetWatcher<>(E.class, queue::add);
+    var calls = new int[1];
+    watcher.subscribe(
+      change -> {
+        if (calls[0]++ == 0) {
+          throw new AssertionError("first delivery fails");
+        }
+      },
+      E.A);
+    watcher.publish(0L, Masks.of(E.A));
+    assertThrows(AssertionError.class, () -> queue.poll().run());
+    watcher.publish(Masks.of(E.A), 0L);
+    assertEquals(1, queue.size(), "expected a new delivery after a subscriber threw an Error");
+    queue.poll().run();
+    assertEquals(2, calls[0], "expected the subscriber to be called again");
+  }
+
+  @Test
+  void virtualThreads() throws InterruptedException {
+    var watcher = new OptionSetWatcher<>(E.class);
+    var latch = new CountDownLatch(1);
+    watcher.subscribe(
+      change -> {
+        if (change.to().has(E.D)) {
+          latch.countDown();
+        }
+      },
+      E.D);
+    watcher.publish(OptionSet.of(E.A), OptionSet.of(E.A, E.D));
+    assertTrue(latch.await(10, TimeUnit.SECONDS), "expected the change to be delivered");
+  }
+}
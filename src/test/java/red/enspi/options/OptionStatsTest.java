@@ -0,0 +1,59 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for OptionStats (the counters are exercised directly, since the switches are off in tests). */
+class OptionStatsTest {
+
+  enum E implements Option { A, B, C, D; }
+
+  enum Untouched implements Option { A, B; }
+
+  @Test
+  void disabledByDefault() {
+    assertFalse(OptionStats.ENABLED, "expected stats to be disabled unless the system property is set");
+    assertFalse(OptionStats.EVENTS, "expected events to be disabled unless the system property is set");
+    var set = OptionSet.of(Untouched.A);
+    set.has(Untouched.A, Untouched.B);
+    set.or(Untouched.B);
+    assertEquals(List.of(Untouched.A, Untouched.B), OptionStats.snapshot(Untouched.class).unused());
+  }
+
+  @Test
+  void counts() {
+    var metadata = OptionMetadata.of(E.class);
+    OptionStats.reset(E.class);
+    OptionStats.checked(E.A);
+    OptionStats.checked(metadata, Masks.of(E.A, E.C));
+    OptionStats.changed(metadata, Masks.of(E.A), Masks.of(E.C));
+    var snapshot = OptionStats.snapshot(E.class);
+    assertEquals(2L, snapshot.checks(E.A), "expected A to be checked twice");
+    assertEquals(1L, snapshot.checks(E.C), "expected C to be checked once");
+    assertEquals(1L, snapshot.changes(E.A), "expected A to be changed once");
+    assertEquals(1L, snapshot.changes(E.C), "expected C to be changed once");
+    assertEquals(List.of(E.B, E.D), snapshot.unused());
+    OptionStats.reset(E.class);
+    assertEquals(List.of(E.A, E.B, E.C, E.D), OptionStats.snapshot(E.class).unused());
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * author     Adrian <adrian@enspi.red>
+ * copyright  2024
+ * license    GPL-3.0 (only)
+ *
+ *  This program is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU General Public License, version 3.
+ *  The right to apply the terms of later versions of the GPL is RESERVED.
+ *
+ *  This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with this program.
+ *  If not, see <http://www.gnu.org/licenses/gpl-3.0.txt>.
+ */
+package red.enspi.options;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for RowBitmap. */
+class RowBitmapTest {
+
+  @Test
+  void addRemove() {
+    var bitmap = RowBitmap.of(3, 1, 70_000, 1);
+    assertArrayEquals(new int[] {1, 3, 70_000}, bitmap.toArray());
+    assertTrue(bitmap.contains(70_000), "expected .contains(70000) to be true");
+    assertFalse(bitmap.contains(2), "expected .contains(2) to be false");
+    bitmap.remove(70_000);
+    bitmap.remove(4);
+    assertArrayEquals(new int[] {1, 3}, bitmap.toArray());
+    assertEquals(2L, bitmap.cardinality(), "expected 2 rows");
+    bitmap.remove(1);
+    bitmap.remove(3);
+    assertTrue(bitmap.isEmpty(), "expected the bitmap to be empty");
+  }
+
+  @Test
+  void containers() {
+    // dense enough to need a bitmap container, then sparse enough to go back to an array
+    var bitmap = new RowBitmap();
+    for (int row = 0; row < 10_000; row++) {
+      bitmap.add(row * 2);
+    }
+    assertEquals(10_000L, bitmap.cardinality(), "expected 10000 rows");
+    for (int row = 0; row < 9_000; row++) {
+      bitmap.remove(row * 2);
+    }
+    assertEquals(1_000L, bitmap.cardinality(), "expected 1000 rows");
+    assertTrue(bitmap.contains(19_998), "expected .contains(19998) to be true");
+
+    // a long range compacts to a run, and stays correct when edited
+    var range = new RowBitmap();
+    for (int row = 100; row < 60_000; row++) {
+      range.add(row);
+    }
+    range.runOptimize();
+    assertTrue(range.contains(100) && range.contains(59_999), "expected the run ends to be included");
+    assertFalse(range.contains(99) || range.contains(60_000), "expected rows outside the run to be excluded");
+    assertEquals(59_900L, range.cardinality(), "expected 59900 rows");
+    range.remove(5_000);
+    range.add(70_000);
+    assertEquals(59_900L, range.cardinality(), "expected 59900 rows");
+    assertFalse(range.contains(5_000), "expected .contains(5000) to be false");
+  }
+
+  @Test
+  void operations() {
+    var random = new SplittableRandom(7);
+    var a = new RowBitmap();
+    var b = new RowBitmap();
+    var expectedA = new BitSet();
+    var expectedB = new BitSet();
+    for (int i = 0; i < 50_000; i++) {
+      // a mix of sparse rows, dense clusters, and ranges
+      var row = switch (i % 3) {
+        case 0 -> random.nextInt(1 << 22);
+        case 1 -> 200_000 + random.nextInt(8_000);
+        default -> 400_000 + i;
+      };
+      if (random.nextBoolean()) {
+        a.add(row);
+        expectedA.set(row);
+      } else {
+        b.add(row);
+        expectedB.set(row);
+      }
+    }
+    a.runOptimize();
+
+    var and = (BitSet) expectedA.clone();
+    and.and(expectedB);
+    assertArrayEquals(and.stream().toArray(), a.and(b).toArray(), "expected .and() to match BitSet");
+    var or = (BitSet) expectedA.clone();
+    or.or(expectedB);
+    assertArrayEquals(or.stream().toArray(), a.or(b).toArray(), "expected .or() to match BitSet");
+    var andNot = (BitSet) expectedA.clone();
+    andNot.andNot(expectedB);
+    assertArrayEquals(andNot.stream().toArray(), a.andNot(b).toArray(), "expected .andNot() to match BitSet");
+    assertArrayEquals(expectedA.stream().toArray(), a.toArray(), "expected operations not to modify operands");
+  }
+}